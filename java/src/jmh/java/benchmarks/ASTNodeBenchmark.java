@@ -0,0 +1,30 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Walks a tree built once per trial, isolating evaluation and rendering from lexing and parsing
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ASTNodeBenchmark {
+
+    @Benchmark
+    public int evaluate(ExpressionState state) {
+        return Calculator.evaluate(state.ast);
+    }
+
+    @Benchmark
+    public String render(ExpressionState state) {
+        return Calculator.render(state.ast);
+    }
+}
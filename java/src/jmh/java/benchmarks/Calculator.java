@@ -0,0 +1,201 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.math.BigInteger;
+
+/**
+ * Bridge from the benchmarks to the calculator classes.
+ *
+ * JMH refuses benchmarks in the default package, and Java source in a named
+ * package cannot refer to classes in the default package, which is where the
+ * calculator lives. The calls therefore go through method handles held in
+ * static finals: the JIT treats those as constants and inlines straight
+ * through them, so the bridge adds no measurable cost.
+ */
+final class Calculator {
+    private static final MethodType TO_OBJECT = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodHandle NEW_LEXER;
+    private static final MethodHandle TOKENIZE;
+    private static final MethodHandle NEW_PARSER;
+    private static final MethodHandle PARSE;
+    private static final MethodHandle EVALUATE;
+    private static final MethodHandle RENDER;
+    private static final MethodHandle NEW_INTERPRETER;
+    private static final MethodHandle INTERPRET;
+    private static final MethodHandle PARSE_EXPRESSION;
+    private static final MethodHandle EVALUATE_FRAME;
+    private static final MethodHandle EVALUATE_COLUMNS;
+    private static final MethodHandle FACTORIAL;
+    private static final MethodHandle FACTORIAL_BY_RUNS;
+    private static final MethodHandle FACTORIAL_BY_SPLITTING;
+    private static final MethodHandle POWER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> lexer = Class.forName("Lexer");
+            Class<?> tokenBuffer = Class.forName("TokenBuffer");
+            Class<?> parser = Class.forName("Parser");
+            Class<?> astNode = Class.forName("ASTNode");
+            Class<?> interpreter = Class.forName("Interpreter");
+            Class<?> parsedExpression = Class.forName("ParsedExpression");
+            Class<?> exactArithmetic = Class.forName("ExactArithmetic");
+
+            NEW_LEXER = lookup.unreflectConstructor(lexer.getConstructor(String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            // The packed path is what Interpreter uses, so that is what we measure
+            TOKENIZE = lookup.unreflect(accessible(lexer.getDeclaredMethod("tokenizePacked"))).asType(TO_OBJECT);
+            NEW_PARSER = lookup.unreflectConstructor(accessible(parser.getDeclaredConstructor(tokenBuffer))).asType(TO_OBJECT);
+            PARSE = lookup.unreflect(parser.getMethod("parse")).asType(TO_OBJECT);
+            EVALUATE = lookup.unreflect(astNode.getMethod("evaluate"))
+                    .asType(MethodType.methodType(int.class, Object.class));
+            RENDER = lookup.unreflect(astNode.getMethod("render"))
+                    .asType(MethodType.methodType(String.class, Object.class));
+            NEW_INTERPRETER = lookup.unreflectConstructor(interpreter.getConstructor(int.class))
+                    .asType(MethodType.methodType(Object.class, int.class));
+            INTERPRET = lookup.unreflect(interpreter.getMethod("interpret", String.class))
+                    .asType(MethodType.methodType(String.class, Object.class, String.class));
+            PARSE_EXPRESSION = lookup.unreflect(interpreter.getMethod("parse", String.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class));
+            EVALUATE_FRAME = lookup.unreflect(interpreter.getMethod("evaluate", parsedExpression, int[].class))
+                    .asType(MethodType.methodType(int.class, Object.class, Object.class, int[].class));
+            EVALUATE_COLUMNS = lookup.unreflect(interpreter.getMethod("evaluateColumns", parsedExpression, int[][].class, int[].class))
+                    .asType(MethodType.methodType(Object.class, Object.class, Object.class, int[][].class, int[].class));
+            FACTORIAL = lookup.unreflect(exactArithmetic.getMethod("factorial", BigInteger.class));
+            FACTORIAL_BY_RUNS = lookup.unreflect(accessible(exactArithmetic.getDeclaredMethod("factorialByRuns", int.class)));
+            FACTORIAL_BY_SPLITTING = lookup.unreflect(accessible(exactArithmetic.getDeclaredMethod("factorialBySplitting", int.class)));
+            POWER = lookup.unreflect(exactArithmetic.getMethod("power", BigInteger.class, BigInteger.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Calculator() {
+    }
+
+    static Object tokenize(String expression) {
+        try {
+            return (Object) TOKENIZE.invokeExact((Object) NEW_LEXER.invokeExact(expression));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object parse(Object tokens) {
+        try {
+            return (Object) PARSE.invokeExact((Object) NEW_PARSER.invokeExact(tokens));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int evaluate(Object ast) {
+        try {
+            return (int) EVALUATE.invokeExact(ast);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static String render(Object ast) {
+        try {
+            return (String) RENDER.invokeExact(ast);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newInterpreter(int cacheSize) {
+        try {
+            return (Object) NEW_INTERPRETER.invokeExact(cacheSize);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static String interpret(Object interpreter, String expression) {
+        try {
+            return (String) INTERPRET.invokeExact(interpreter, expression);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // A ParsedExpression, for evaluating against frames or columns
+    static Object parseExpression(Object interpreter, String expression) {
+        try {
+            return (Object) PARSE_EXPRESSION.invokeExact(interpreter, expression);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int evaluate(Object interpreter, Object parsed, int[] frame) {
+        try {
+            return (int) EVALUATE_FRAME.invokeExact(interpreter, parsed, frame);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // Returns the error bitmap
+    static Object evaluateColumns(Object interpreter, Object parsed, int[][] columns, int[] results) {
+        try {
+            return (Object) EVALUATE_COLUMNS.invokeExact(interpreter, parsed, columns, results);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // ExactArithmetic.factorial, with its table, thresholds and cache
+    static BigInteger factorial(BigInteger n) {
+        try {
+            return (BigInteger) FACTORIAL.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static BigInteger factorialByRuns(int n) {
+        try {
+            return (BigInteger) FACTORIAL_BY_RUNS.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static BigInteger factorialBySplitting(int n) {
+        try {
+            return (BigInteger) FACTORIAL_BY_SPLITTING.invokeExact(n);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static BigInteger power(BigInteger base, BigInteger exponent) {
+        try {
+            return (BigInteger) POWER.invokeExact(base, exponent);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
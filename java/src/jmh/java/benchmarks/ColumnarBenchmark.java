@@ -0,0 +1,80 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One formula over many rows of bindings: a frame per row against whole
+ * columns at a time. The vector variant forks with the Vector API module
+ * added, so it needs JDK 17 or later; the plain one uses the scalar kernels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnarBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int rows;
+
+    // a, b and c take slots 0, 1 and 2 in order of appearance
+    @Param({"a * b + c * 3 - a", "(a + b) / (c % 7 + 1)"})
+    public String expression;
+
+    private Object interpreter;
+    private Object parsed;
+    private int[][] columns;
+    private int[] results;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        interpreter = Calculator.newInterpreter(16);
+        parsed = Calculator.parseExpression(interpreter, expression);
+        Random random = new Random(42);
+        columns = new int[3][rows];
+        for (int[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                column[row] = random.nextInt(1000);
+            }
+        }
+        results = new int[rows];
+    }
+
+    @Benchmark
+    public int[] perRow() {
+        int[] frame = new int[3];
+        for (int row = 0; row < rows; row++) {
+            frame[0] = columns[0][row];
+            frame[1] = columns[1][row];
+            frame[2] = columns[2][row];
+            results[row] = Calculator.evaluate(interpreter, parsed, frame);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Object columns() {
+        return Calculator.evaluateColumns(interpreter, parsed, columns, results);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+    public Object columnsVector() {
+        return Calculator.evaluateColumns(interpreter, parsed, columns, results);
+    }
+}
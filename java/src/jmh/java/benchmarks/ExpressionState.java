@@ -0,0 +1,99 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Generated input shared by every benchmark, so results for the lexer, parser,
+ * evaluator and interpreter line up parameter for parameter.
+ *
+ * Expressions are built from a fixed seed so every build measures the same
+ * input, and they never raise errors: divisors and exponents are small
+ * positive literals, powers are never chained and factorials only see 0..6.
+ */
+@State(Scope.Benchmark)
+public class ExpressionState {
+
+    public enum Mix {
+        ADDITIVE("+-"),
+        MULTIPLICATIVE("*/%"),
+        MIXED("+-*/%^!");
+
+        final String operators;
+
+        Mix(String operators) {
+            this.operators = operators;
+        }
+    }
+
+    // Binary operators per nesting level
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    // Levels of parenthesized nesting wrapped around the operator chain
+    @Param({"1", "10", "100"})
+    public int depth;
+
+    @Param({"ADDITIVE", "MULTIPLICATIVE", "MIXED"})
+    public Mix mix;
+
+    public String expression;
+    public Object tokens;
+    public Object ast;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        expression = generate(size, depth, mix, new Random(42));
+        tokens = Calculator.tokenize(expression);
+        ast = Calculator.parse(tokens);
+    }
+
+    static String generate(int size, int depth, Mix mix, Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            sb.append(term(mix, random)).append(" + (");
+        }
+        sb.append(term(mix, random));
+        char previous = ' ';
+        for (int i = 0; i < size; i++) {
+            previous = appendOperation(sb, mix, random, previous);
+        }
+        for (int level = 0; level < depth; level++) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private static char appendOperation(StringBuilder sb, Mix mix, Random random, char previous) {
+        char op = mix.operators.charAt(random.nextInt(mix.operators.length()));
+        // Chained powers grow fast enough to wrap to zero, which would turn a divisor into a division by zero
+        if (op == '^' && previous == '^') {
+            op = '+';
+        }
+        switch (op) {
+            case '/':
+            case '%':
+                sb.append(' ').append(op).append(' ').append(1 + random.nextInt(9));
+                break;
+            case '^':
+                sb.append(" ^ ").append(random.nextInt(3));
+                break;
+            case '!':
+                sb.append(" + !").append(random.nextInt(7));
+                break;
+            default:
+                sb.append(' ').append(op).append(' ').append(term(mix, random));
+        }
+        return op;
+    }
+
+    private static String term(Mix mix, Random random) {
+        int value = 1 + random.nextInt(99);
+        return mix == Mix.MIXED && random.nextBoolean() ? "(" + value + " - " + random.nextInt(value) + ")" : String.valueOf(value);
+    }
+}
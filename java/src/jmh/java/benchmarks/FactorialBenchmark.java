@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact factorials by each method, to place ExactArithmetic's thresholds:
+ * the running product against binary splitting for every n, and factorial()
+ * itself, which from CACHED_FACTORIAL_MIN on answers repeats from its cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FactorialBenchmark {
+
+    @Param({"32", "64", "128", "256", "512", "1024", "5000", "20000"})
+    public int n;
+
+    private BigInteger boxed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boxed = BigInteger.valueOf(n);
+    }
+
+    @Benchmark
+    public BigInteger runs() {
+        return Calculator.factorialByRuns(n);
+    }
+
+    @Benchmark
+    public BigInteger splitting() {
+        return Calculator.factorialBySplitting(n);
+    }
+
+    @Benchmark
+    public BigInteger factorial() {
+        return Calculator.factorial(boxed);
+    }
+}
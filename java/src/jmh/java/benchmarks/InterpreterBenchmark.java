@@ -0,0 +1,49 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of a request: lex, parse, optimize and evaluate.
+ *
+ * Measured both without a cache, which is what a server sees for
+ * never-repeated input, and with one, which is the steady state for clients
+ * that resend the same expressions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+    private Object uncached;
+    private Object cached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        uncached = Calculator.newInterpreter(0);
+        cached = Calculator.newInterpreter(16);
+    }
+
+    @Benchmark
+    public String interpretUncached(ExpressionState state) {
+        return Calculator.interpret(uncached, state.expression);
+    }
+
+    @Benchmark
+    public String interpretCached(ExpressionState state) {
+        return Calculator.interpret(cached, state.expression);
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact powers by squaring, as ExactArithmetic.power does them, against
+ * multiplying by the base exponent times, for a small and a wide base.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PowerBenchmark {
+
+    @Param({"3", "123456789012345678901234567890"})
+    public String base;
+
+    @Param({"2", "8", "64", "1000", "10000"})
+    public int exponent;
+
+    private BigInteger bigBase;
+    private BigInteger bigExponent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bigBase = new BigInteger(base);
+        bigExponent = BigInteger.valueOf(exponent);
+    }
+
+    @Benchmark
+    public BigInteger repeatedMultiplication() {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 0; i < exponent; i++) {
+            result = result.multiply(bigBase);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public BigInteger squaring() {
+        return Calculator.power(bigBase, bigExponent);
+    }
+}
@@ -1,12 +1,42 @@
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class ASTNode {
-    public abstract int evaluate();
+    // The frame of a tree without variables
+    static final int[] NO_VARIABLES = new int[0];
+    static final double[] NO_DOUBLE_VARIABLES = new double[0];
+    
+    public int evaluate() {
+        return evaluate(NO_VARIABLES);
+    }
+    
+    // Same result as evaluate(), charging meter once per node so a runaway evaluation is stopped
+    public int evaluate(EvaluationBudget.Meter meter) {
+        return evaluate(NO_VARIABLES, meter);
+    }
+    
+    // Variables read and assign their slot in frame, so one tree can be evaluated against many frames
+    public abstract int evaluate(int[] frame);
+    public abstract int evaluate(int[] frame, EvaluationBudget.Meter meter);
+    
+    public double evaluateDouble() {
+        return evaluateDouble(NO_DOUBLE_VARIABLES);
+    }
+    
+    // The double numeric mode: real-number results on primitive doubles, with DoubleArithmetic's rules
+    public abstract double evaluateDouble(double[] frame);
+    public abstract double evaluateDouble(double[] frame, EvaluationBudget.Meter meter);
     public abstract String renderTree(String prefix, boolean isLast);
     
+    // Iterative so that rendering a very deep tree cannot overflow the stack
     public String render() {
-        return renderTree("", true);
+        return IterativeTreeWalker.render(this);
+    }
+    
+    // Nodes in this subtree, fixed when the tree is built so evaluators can size up work without walking it
+    public int size() {
+        return 1;
     }
 }
 
@@ -18,43 +48,180 @@ class NumberNode extends ASTNode {
     }
     
     @Override
-    public int evaluate() {
+    public int evaluate(int[] frame) {
+        return value;
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        meter.charge();
+        return value;
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        return value;
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        meter.charge();
+        return value;
+    }
+    
+    @Override
+    public String renderTree(String prefix, boolean isLast) {
+        String connector = isLast ? "└── " : "├── ";
+        return prefix + connector + "Number(" + value + ")\n";
+    }
+    
+    public int getValue() {
         return value;
     }
+}
+
+// A literal too large for an int, so only exact and double evaluation can use it
+class BigNumberNode extends ASTNode {
+    private final BigInteger value;
+    // Converted once, since BigInteger.doubleValue() is far from free
+    private final double doubleValue;
+    
+    public BigNumberNode(BigInteger value) {
+        this.value = value;
+        this.doubleValue = value.doubleValue();
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
+        throw new NumberFormatException("Number too large: " + value);
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        return evaluate(frame);
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        return doubleValue;
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        meter.charge();
+        return doubleValue;
+    }
     
     @Override
     public String renderTree(String prefix, boolean isLast) {
         String connector = isLast ? "└── " : "├── ";
         return prefix + connector + "Number(" + value + ")\n";
     }
+    
+    public BigInteger getValue() {
+        return value;
+    }
+}
+
+// A literal with a decimal point, so only double evaluation can use it
+class DecimalNode extends ASTNode {
+    private final double value;
+    
+    public DecimalNode(double value) {
+        this.value = value;
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
+        throw new NumberFormatException("Not an integer: " + value);
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        return evaluate(frame);
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        return value;
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        meter.charge();
+        return value;
+    }
+    
+    @Override
+    public String renderTree(String prefix, boolean isLast) {
+        String connector = isLast ? "└── " : "├── ";
+        return prefix + connector + "Number(" + value + ")\n";
+    }
+    
+    public double getValue() {
+        return value;
+    }
 }
 
 class UnaryOpNode extends ASTNode {
     private final ASTNode operand;
     private final char operator;
+    private final int size;
     
     public UnaryOpNode(char operator, ASTNode operand) {
         this.operator = operator;
         this.operand = operand;
+        this.size = operand.size() + 1;
     }
     
     @Override
-    public int evaluate() {
-        int val = operand.evaluate();
-        
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
+        return apply(operator, operand.evaluate(frame));
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        int val = operand.evaluate(frame, meter);
+        meter.charge();
+        return apply(operator, val);
+    }
+    
+    // Shared with evaluators that walk the tree themselves
+    static int apply(char operator, int val) {
+        switch (operator) {
+            case '!':
+                return Arithmetic.factorial(val);
+            case '-':
+                return -val;
+            default:
+                throw new IllegalArgumentException("Unknown unary operator: " + operator);
+        }
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        return apply(operator, operand.evaluateDouble(frame));
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        double val = operand.evaluateDouble(frame, meter);
+        meter.charge();
+        return apply(operator, val);
+    }
+    
+    static double apply(char operator, double val) {
         switch (operator) {
             case '!':
-                if (val < 0) {
-                    throw new ArithmeticException("Factorial of negative number");
-                }
-                if (val > 12) {
-                    throw new ArithmeticException("Factorial too large for int");
-                }
-                int result = 1;
-                for (int i = 2; i <= val; i++) {
-                    result *= i;
-                }
-                return result;
+                return DoubleArithmetic.factorial(val);
+            case '-':
+                // The 0 - x the parser writes, which -val is not for signed zeros: 0 - 0.0 is 0.0, not -0.0
+                return 0.0 - val;
             default:
                 throw new IllegalArgumentException("Unknown unary operator: " + operator);
         }
@@ -70,24 +237,51 @@ class UnaryOpNode extends ASTNode {
         sb.append(operand.renderTree(prefix + extension, true));
         return sb.toString();
     }
+    
+    public char getOperator() {
+        return operator;
+    }
+    
+    public ASTNode getOperand() {
+        return operand;
+    }
 }
 
 class BinaryOpNode extends ASTNode {
     private final ASTNode left;
     private final ASTNode right;
     private final char operator;
+    private final int size;
     
     public BinaryOpNode(ASTNode left, char operator, ASTNode right) {
         this.left = left;
         this.operator = operator;
         this.right = right;
+        this.size = left.size() + right.size() + 1;
     }
     
     @Override
-    public int evaluate() {
-        int leftVal = left.evaluate();
-        int rightVal = right.evaluate();
-        
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
+        int leftVal = left.evaluate(frame);
+        int rightVal = right.evaluate(frame);
+        return apply(operator, leftVal, rightVal);
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        int leftVal = left.evaluate(frame, meter);
+        int rightVal = right.evaluate(frame, meter);
+        meter.charge();
+        return apply(operator, leftVal, rightVal);
+    }
+    
+    // Shared with evaluators that walk the tree themselves
+    static int apply(char operator, int leftVal, int rightVal) {
         switch (operator) {
             case '+':
                 return leftVal + rightVal;
@@ -96,24 +290,45 @@ class BinaryOpNode extends ASTNode {
             case '*':
                 return leftVal * rightVal;
             case '/':
-                if (rightVal == 0) {
-                    throw new ArithmeticException("Division by zero");
-                }
-                return leftVal / rightVal;
+                return Arithmetic.divide(leftVal, rightVal);
             case '%':
-                if (rightVal == 0) {
-                    throw new ArithmeticException("Modulo by zero");
-                }
-                return leftVal % rightVal;
+                return Arithmetic.modulo(leftVal, rightVal);
             case '^':
-                if (rightVal < 0) {
-                    throw new ArithmeticException("Negative exponent not supported for integers");
-                }
-                int power = 1;
-                for (int i = 0; i < rightVal; i++) {
-                    power *= leftVal;
-                }
-                return power;
+                return Arithmetic.power(leftVal, rightVal);
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        double leftVal = left.evaluateDouble(frame);
+        double rightVal = right.evaluateDouble(frame);
+        return apply(operator, leftVal, rightVal);
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        double leftVal = left.evaluateDouble(frame, meter);
+        double rightVal = right.evaluateDouble(frame, meter);
+        meter.charge();
+        return apply(operator, leftVal, rightVal);
+    }
+    
+    static double apply(char operator, double leftVal, double rightVal) {
+        switch (operator) {
+            case '+':
+                return leftVal + rightVal;
+            case '-':
+                return leftVal - rightVal;
+            case '*':
+                return leftVal * rightVal;
+            case '/':
+                return DoubleArithmetic.divide(leftVal, rightVal);
+            case '%':
+                return DoubleArithmetic.modulo(leftVal, rightVal);
+            case '^':
+                return Math.pow(leftVal, rightVal);
             default:
                 throw new IllegalArgumentException("Unknown operator: " + operator);
         }
@@ -130,6 +345,161 @@ class BinaryOpNode extends ASTNode {
         sb.append(right.renderTree(prefix + extension, true));
         return sb.toString();
     }
+    
+    public ASTNode getLeft() {
+        return left;
+    }
+    
+    public char getOperator() {
+        return operator;
+    }
+    
+    public ASTNode getRight() {
+        return right;
+    }
+}
+
+// A variable read, resolved by the parser to its slot in the frame
+class VariableNode extends ASTNode {
+    private final String name;
+    private final int slot;
+    
+    public VariableNode(String name, int slot) {
+        this.name = name;
+        this.slot = slot;
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
+        if (slot >= frame.length) {
+            throw unbound(name);
+        }
+        return frame[slot];
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        meter.charge();
+        return evaluate(frame);
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        if (slot >= frame.length) {
+            throw unbound(name);
+        }
+        return frame[slot];
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        meter.charge();
+        return evaluateDouble(frame);
+    }
+    
+    // Shared with evaluators that read frames themselves
+    static IllegalStateException unbound(String name) {
+        return new IllegalStateException("Variable " + name + " is not bound");
+    }
+    
+    @Override
+    public String renderTree(String prefix, boolean isLast) {
+        String connector = isLast ? "└── " : "├── ";
+        return prefix + connector + "Variable(" + name + ")\n";
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getSlot() {
+        return slot;
+    }
+}
+
+// name = value: stores the value in the variable's slot and evaluates to it
+class AssignNode extends ASTNode {
+    private final String name;
+    private final int slot;
+    private final ASTNode value;
+    private final int size;
+    
+    public AssignNode(String name, int slot, ASTNode value) {
+        this.name = name;
+        this.slot = slot;
+        this.value = value;
+        this.size = value.size() + 1;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
+        int val = value.evaluate(frame);
+        if (slot >= frame.length) {
+            throw VariableNode.unbound(name);
+        }
+        frame[slot] = val;
+        return val;
+    }
+    
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        int val = value.evaluate(frame, meter);
+        meter.charge();
+        if (slot >= frame.length) {
+            throw VariableNode.unbound(name);
+        }
+        frame[slot] = val;
+        return val;
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        double val = value.evaluateDouble(frame);
+        if (slot >= frame.length) {
+            throw VariableNode.unbound(name);
+        }
+        frame[slot] = val;
+        return val;
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        double val = value.evaluateDouble(frame, meter);
+        meter.charge();
+        if (slot >= frame.length) {
+            throw VariableNode.unbound(name);
+        }
+        frame[slot] = val;
+        return val;
+    }
+    
+    @Override
+    public String renderTree(String prefix, boolean isLast) {
+        String connector = isLast ? "└── " : "├── ";
+        String extension = isLast ? "    " : "│   ";
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(prefix).append(connector).append("Assign(").append(name).append(")\n");
+        sb.append(value.renderTree(prefix + extension, true));
+        return sb.toString();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getSlot() {
+        return slot;
+    }
+    
+    public ASTNode getValue() {
+        return value;
+    }
 }
 
 class RenderNode extends ASTNode {
@@ -140,11 +510,31 @@ class RenderNode extends ASTNode {
     }
     
     @Override
-    public int evaluate() {
+    public int size() {
+        return expression.size() + 1;
+    }
+    
+    @Override
+    public int evaluate(int[] frame) {
         // RenderNode doesn't evaluate to a number, it renders the tree
         throw new UnsupportedOperationException("RenderNode cannot be evaluated to an integer");
     }
     
+    @Override
+    public int evaluate(int[] frame, EvaluationBudget.Meter meter) {
+        return evaluate(frame);
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame) {
+        throw new UnsupportedOperationException("RenderNode cannot be evaluated to a number");
+    }
+    
+    @Override
+    public double evaluateDouble(double[] frame, EvaluationBudget.Meter meter) {
+        return evaluateDouble(frame);
+    }
+    
     @Override
     public String renderTree(String prefix, boolean isLast) {
         return expression.renderTree(prefix, isLast);
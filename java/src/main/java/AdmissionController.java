@@ -0,0 +1,197 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how many /mcp requests run at once, so a flooding client gets fast
+ * rejections instead of raising latency for every caller.
+ *
+ * A request beyond the limit waits in a short bounded queue. If the queue is
+ * full or the wait times out, it is rejected immediately and the server
+ * answers 503 with Retry-After.
+ *
+ * The limit itself adapts by AIMD. Each request that finishes within the
+ * target latency raises it by 1/limit, about one per round of requests. Each
+ * one that runs over cuts it by a tenth. Healthy load therefore probes
+ * upwards slowly, while a slowdown sheds concurrency within a few requests.
+ *
+ * Environment variables:
+ *   MCP_ADMISSION_LIMIT              starting concurrency limit, default 64
+ *   MCP_ADMISSION_MIN_LIMIT          floor for the adaptive limit, default 4
+ *   MCP_ADMISSION_MAX_LIMIT          ceiling for the adaptive limit, default 512
+ *   MCP_ADMISSION_QUEUE              requests that may wait for a slot, default 128
+ *   MCP_ADMISSION_QUEUE_TIMEOUT_MS   longest wait for a slot, default 250
+ *   MCP_ADMISSION_TARGET_LATENCY_MS  latency above which the limit shrinks, default 100
+ */
+public final class AdmissionController {
+    static final double DECREASE_FACTOR = 0.9;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueCapacity;
+    private final long queueTimeoutNanos;
+    private final long targetLatencyNanos;
+    private final LongSupplier clock;
+
+    // Guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long accepted;
+    private long rejectedQueueFull;
+    private long rejectedTimeout;
+
+    AdmissionController(int initialLimit, int minLimit, int maxLimit, int queueCapacity,
+                        long queueTimeoutMs, long targetLatencyMs, LongSupplier clock) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Admission limits need 1 <= min <= initial <= max");
+        }
+        if (queueCapacity < 0 || queueTimeoutMs < 0 || targetLatencyMs < 1) {
+            throw new IllegalArgumentException("Queue settings must not be negative and the target latency must be positive");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        this.clock = clock;
+    }
+
+    public static AdmissionController fromEnvironment() {
+        return fromEnvironment(System.getenv());
+    }
+
+    static AdmissionController fromEnvironment(Map<String, String> env) {
+        return new AdmissionController(
+                ServerExecutor.intSetting(env, "MCP_ADMISSION_LIMIT", 64),
+                ServerExecutor.intSetting(env, "MCP_ADMISSION_MIN_LIMIT", 4),
+                ServerExecutor.intSetting(env, "MCP_ADMISSION_MAX_LIMIT", 512),
+                ServerExecutor.intSetting(env, "MCP_ADMISSION_QUEUE", 128),
+                ServerExecutor.intSetting(env, "MCP_ADMISSION_QUEUE_TIMEOUT_MS", 250),
+                ServerExecutor.intSetting(env, "MCP_ADMISSION_TARGET_LATENCY_MS", 100),
+                System::nanoTime);
+    }
+
+    /**
+     * Waits briefly for a slot.
+     *
+     * @return the slot, to be released when the request is done, or null if
+     *         the request should be rejected
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                return admit();
+            }
+            if (queued >= queueCapacity) {
+                rejectedQueueFull++;
+                return null;
+            }
+
+            queued++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        rejectedTimeout++;
+                        return null;
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+                return admit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectedTimeout++;
+                return null;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Seconds a rejected client should wait before retrying
+    public int retryAfterSeconds() {
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(queueTimeoutNanos + targetLatencyNanos));
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // What /health reports
+    public Map<String, Object> describe() {
+        lock.lock();
+        try {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("limit", currentLimit());
+            info.put("inFlight", inFlight);
+            info.put("queued", queued);
+            info.put("queueCapacity", queueCapacity);
+            info.put("accepted", accepted);
+            info.put("rejectedQueueFull", rejectedQueueFull);
+            info.put("rejectedTimeout", rejectedTimeout);
+            return info;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private Permit admit() {
+        inFlight++;
+        accepted++;
+        return new Permit(clock.getAsLong());
+    }
+
+    private void release(long latencyNanos) {
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= currentLimit() / 2;
+            inFlight--;
+            if (latencyNanos > targetLatencyNanos) {
+                limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+            } else if (saturated) {
+                // Only grow while the limit is actually being used, or it drifts up without bound when idle
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            slotFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public final class Permit {
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        // Frees the slot and feeds the request's latency to the limit; only the first call counts
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            AdmissionController.this.release(clock.getAsLong() - startNanos);
+        }
+    }
+}
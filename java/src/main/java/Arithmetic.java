@@ -0,0 +1,58 @@
+/**
+ * The checked integer operations shared by every evaluator.
+ *
+ * The tree-walker and the generated bytecode from ExpressionCompiler must raise
+ * exactly the same errors, so the rules live here once instead of being copied
+ * into each evaluator. The class is public because compiled expressions are
+ * defined in their own class loader and can only call public members.
+ */
+public final class Arithmetic {
+
+    private Arithmetic() {
+    }
+
+    public static int divide(int left, int right) {
+        if (right == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return left / right;
+    }
+
+    public static int modulo(int left, int right) {
+        if (right == 0) {
+            throw new ArithmeticException("Modulo by zero");
+        }
+        return left % right;
+    }
+
+    public static int power(int base, int exponent) {
+        if (exponent < 0) {
+            throw new ArithmeticException("Negative exponent not supported for integers");
+        }
+        // Squaring takes log2(exponent) steps instead of exponent multiplications.
+        // Products wrap modulo 2^32 either way, so overflowing results are unchanged
+        int power = 1;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                power *= base;
+            }
+            base *= base;
+            exponent >>>= 1;
+        }
+        return power;
+    }
+
+    public static int factorial(int n) {
+        if (n < 0) {
+            throw new ArithmeticException("Factorial of negative number");
+        }
+        if (n > 12) {
+            throw new ArithmeticException("Factorial too large for int");
+        }
+        int result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+}
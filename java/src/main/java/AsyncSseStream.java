@@ -0,0 +1,197 @@
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * A session's GET /mcp event stream, written with non-blocking servlet I/O.
+ *
+ * The request goes async and its thread returns to the pool at once, so an
+ * idle stream holds no thread. Frames are queued and written only while the
+ * container says the connection can take more; the container calls back when
+ * a stalled write drains. A client that falls more than maxQueued frames
+ * behind is cut off and can resume from its last event id.
+ *
+ * With a FrameEncoder every frame is compressed on the way into the queue,
+ * so the stream stays one compressed stream whose events can each be decoded
+ * on arrival. Closing queues the end of the compressed stream before the
+ * exchange completes.
+ *
+ * Lock order is session, then stream. Callbacks from the container take only
+ * the stream's lock and tell the session afterwards, never while holding it.
+ */
+final class AsyncSseStream implements McpSession.EventStream, WriteListener, AsyncListener {
+    private final McpSession session;
+    private final int maxQueued;
+    private final ResponseCompression.FrameEncoder encoder;
+
+    // Guarded by this
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private AsyncContext context;
+    private ServletOutputStream out;
+    private boolean unflushed;
+    private boolean closed;
+    private boolean completed;
+
+    private AsyncSseStream(McpSession session, int maxQueued, ResponseCompression.FrameEncoder encoder) {
+        this.session = session;
+        this.maxQueued = maxQueued;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Takes over the exchange and attaches it to the session, replaying the
+     * events after lastEventId. The caller sets status and headers first,
+     * Content-Encoding included when encoder is not null, and must not write
+     * to the response afterwards.
+     */
+    static AsyncSseStream open(McpSession session, int maxQueued, ResponseCompression.FrameEncoder encoder,
+                               HttpServletRequest request, HttpServletResponse response, String lastEventId) throws IOException {
+        AsyncSseStream stream = new AsyncSseStream(session, maxQueued, encoder);
+        synchronized (stream) {
+            stream.context = request.startAsync();
+            // Streams live until the client leaves or the session ends
+            stream.context.setTimeout(0);
+            stream.context.addListener(stream);
+        }
+        // Attached before the headers go out, so a client that sees the stream open can rely on its POSTs landing
+        // there; until then events, replayed ones included, wait in the queue
+        session.attach(stream, lastEventId);
+        synchronized (stream) {
+            // Commit the headers now, so the client sees the stream open before the first event
+            response.flushBuffer();
+            stream.out = response.getOutputStream();
+            stream.out.setWriteListener(stream);
+            if (!stream.completed) {
+                stream.drain();
+            }
+        }
+        return stream;
+    }
+
+    @Override
+    public boolean write(byte[] frame) {
+        synchronized (this) {
+            if (!closed) {
+                if (queue.size() < maxQueued) {
+                    queue.addLast(encoder == null ? frame : encoder.encode(frame));
+                    drain();
+                } else {
+                    shutDown();
+                }
+            }
+            return !closed;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                shutDown();
+            }
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        synchronized (this) {
+            if (!completed) {
+                drain();
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        ended();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        ended();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        ended();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        ended();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    // Pending events are dropped, since a client that comes back can replay them; only the end of the compressed stream is sent
+    private void shutDown() {
+        closed = true;
+        queue.clear();
+        if (encoder != null) {
+            queue.addLast(encoder.finish());
+        }
+        drain();
+    }
+
+    /**
+     * Writes queued frames until the connection pushes back; isReady() false
+     * means the container will call onWritePossible. A closed stream completes
+     * once everything is out, since completing with a write pending is not
+     * allowed.
+     */
+    private void drain() {
+        if (out == null) {
+            // Not connected yet; open() drains once it is
+            return;
+        }
+        try {
+            while (out.isReady()) {
+                byte[] frame = queue.pollFirst();
+                if (frame != null) {
+                    out.write(frame);
+                    unflushed = true;
+                } else if (unflushed) {
+                    unflushed = false;
+                    out.flush();
+                } else {
+                    if (closed) {
+                        complete();
+                    }
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            closed = true;
+            queue.clear();
+            complete();
+        }
+    }
+
+    private void complete() {
+        if (!completed) {
+            completed = true;
+            context.complete();
+        }
+    }
+
+    private void ended() {
+        synchronized (this) {
+            closed = true;
+            completed = true;
+            queue.clear();
+            if (encoder != null) {
+                // Releases the compressor's native memory
+                encoder.finish();
+            }
+        }
+        session.detach(this);
+    }
+}
@@ -0,0 +1,127 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs the elements of a JSON-RPC 2.0 batch concurrently.
+ *
+ * Agents send dozens of calculations back to back, and sending them as one
+ * batch saves a round trip per expression. Elements run on a small shared
+ * pool. When the pool and its queue are full, the request thread runs the
+ * element itself, so one large batch slows its sender rather than everyone.
+ *
+ * Follows the batch rules of the JSON-RPC spec. Responses keep the order of
+ * the requests. Notifications get no response. A malformed element gets its
+ * own error. An empty or oversized batch gets a single error.
+ *
+ * Environment variables:
+ *   MCP_BATCH_MAX_SIZE  largest accepted batch, default 100
+ *   MCP_BATCH_THREADS   pool size, default the number of processors
+ */
+public final class BatchExecutor {
+    static final int DEFAULT_MAX_SIZE = 100;
+
+    private final ObjectMapper mapper;
+    private final int maxSize;
+    private final ThreadPoolExecutor pool;
+
+    BatchExecutor(ObjectMapper mapper, int maxSize, int threads) {
+        if (maxSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("Batch size and thread count must be positive");
+        }
+        this.mapper = mapper;
+        this.maxSize = maxSize;
+        AtomicInteger created = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                job -> {
+                    Thread thread = new Thread(job, "mcp-batch-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static BatchExecutor fromEnvironment(ObjectMapper mapper) {
+        return fromEnvironment(mapper, System.getenv());
+    }
+
+    static BatchExecutor fromEnvironment(ObjectMapper mapper, Map<String, String> env) {
+        return new BatchExecutor(mapper,
+                ServerExecutor.intSetting(env, "MCP_BATCH_MAX_SIZE", DEFAULT_MAX_SIZE),
+                ServerExecutor.intSetting(env, "MCP_BATCH_THREADS", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Answers a batch by handing each request to handler.
+     *
+     * @return the responses in request order, a single error object for an
+     *         empty or oversized batch, or null when every element was a
+     *         notification and there is nothing to send back
+     */
+    public JsonNode execute(ArrayNode batch, Function<JsonNode, JsonNode> handler) {
+        if (batch.size() == 0) {
+            return error(null, -32600, "Invalid Request: empty batch");
+        }
+        if (batch.size() > maxSize) {
+            return error(null, -32600, "Invalid Request: batch of " + batch.size() + " exceeds the maximum of " + maxSize);
+        }
+
+        List<CompletableFuture<JsonNode>> pending = new ArrayList<>(batch.size());
+        for (JsonNode element : batch) {
+            if (!element.isObject()) {
+                pending.add(CompletableFuture.completedFuture(error(null, -32600, "Invalid Request: batch element must be an object")));
+            } else if (batch.size() == 1) {
+                pending.add(CompletableFuture.completedFuture(handle(element, handler)));
+            } else {
+                pending.add(CompletableFuture.supplyAsync(() -> handle(element, handler), pool));
+            }
+        }
+
+        ArrayNode responses = mapper.createArrayNode();
+        for (int i = 0; i < pending.size(); i++) {
+            JsonNode element = batch.get(i);
+            // Notifications are still executed but never answered
+            if (element.isObject() && !element.has("id")) {
+                continue;
+            }
+            responses.add(pending.get(i).join());
+        }
+        return responses.size() == 0 ? null : responses;
+    }
+
+    private JsonNode handle(JsonNode request, Function<JsonNode, JsonNode> handler) {
+        try {
+            return handler.apply(request);
+        } catch (RuntimeException e) {
+            return error(request.get("id"), -32603, "Internal error: " + e.getMessage());
+        }
+    }
+
+    private ObjectNode error(JsonNode id, int code, String message) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id == null ? mapper.nullNode() : id);
+        ObjectNode error = mapper.createObjectNode();
+        error.put("code", code);
+        error.put("message", message);
+        response.set("error", error);
+        return response;
+    }
+}
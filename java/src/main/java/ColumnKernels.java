@@ -0,0 +1,82 @@
+/**
+ * The element-wise loops of ColumnarEvaluator that SIMD hardware can do
+ * several lanes at a time: wrapping int arithmetic, and long addition and
+ * subtraction that only need to know whether anything overflowed.
+ *
+ * Scalar is the portable version. On JDK 17 and later the build adds
+ * VectorColumnKernels, written against the incubating Vector API; it is used
+ * when the JVM runs with --add-modules jdk.incubator.vector and Scalar
+ * otherwise. Division, powers and factorials stay scalar in both, since
+ * every lane needs its own check.
+ */
+interface ColumnKernels {
+
+    // left[i] = left[i] + right[i] for i below length, wrapping like int arithmetic
+    void add(int[] left, int[] right, int length);
+
+    void subtract(int[] left, int[] right, int length);
+
+    void multiply(int[] left, int[] right, int length);
+
+    void negate(int[] values, int length);
+
+    // Stores the wrapped sums in left and returns whether any of them overflowed
+    boolean addExact(long[] left, long[] right, int length);
+
+    boolean subtractExact(long[] left, long[] right, int length);
+
+    // Plain loops, which the JIT may still unroll or auto-vectorize
+    final class Scalar implements ColumnKernels {
+
+        @Override
+        public void add(int[] left, int[] right, int length) {
+            for (int i = 0; i < length; i++) {
+                left[i] += right[i];
+            }
+        }
+
+        @Override
+        public void subtract(int[] left, int[] right, int length) {
+            for (int i = 0; i < length; i++) {
+                left[i] -= right[i];
+            }
+        }
+
+        @Override
+        public void multiply(int[] left, int[] right, int length) {
+            for (int i = 0; i < length; i++) {
+                left[i] *= right[i];
+            }
+        }
+
+        @Override
+        public void negate(int[] values, int length) {
+            for (int i = 0; i < length; i++) {
+                values[i] = -values[i];
+            }
+        }
+
+        @Override
+        public boolean addExact(long[] left, long[] right, int length) {
+            long overflow = 0;
+            for (int i = 0; i < length; i++) {
+                long sum = left[i] + right[i];
+                // The sign bit is set when both operands differ in sign from the sum
+                overflow |= (left[i] ^ sum) & (right[i] ^ sum);
+                left[i] = sum;
+            }
+            return overflow < 0;
+        }
+
+        @Override
+        public boolean subtractExact(long[] left, long[] right, int length) {
+            long overflow = 0;
+            for (int i = 0; i < length; i++) {
+                long difference = left[i] - right[i];
+                overflow |= (left[i] ^ right[i]) & (left[i] ^ difference);
+                left[i] = difference;
+            }
+            return overflow < 0;
+        }
+    }
+}
@@ -0,0 +1,560 @@
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Evaluates one expression over many rows of variable bindings, held as one
+ * primitive array per input variable.
+ *
+ * The tree is flattened into postfix instructions once, as for StackProgram,
+ * but each instruction works on a whole chunk of rows: the stack holds one
+ * array per entry, and ADD adds two of them element by element through
+ * ColumnKernels. Dispatch is paid once per chunk rather than once per row,
+ * and the inner loops are plain array loops the JIT or the Vector API can
+ * run several lanes at a time.
+ *
+ * A row that fails does not stop the batch. Its bit is set in the error
+ * bitmap, its result is 0, and the other rows carry on. Assignments hold
+ * their value for later uses in the same row; the columns are only read.
+ */
+final class ColumnarEvaluator {
+    private static final int PUSH = 0;
+    // Reads a caller column, for variables read before anything assigns them
+    private static final int LOAD_COLUMN = 1;
+    // Reads the value an earlier assignment in the same row stored
+    private static final int LOAD_LOCAL = 2;
+    private static final int STORE = 3;
+    private static final int ADD = 4;
+    private static final int SUB = 5;
+    private static final int MUL = 6;
+    private static final int DIV = 7;
+    private static final int MOD = 8;
+    private static final int POW = 9;
+    private static final int FACT = 10;
+    private static final int NEG = 11;
+    // A literal outside the long range; only exact columns accept it, and every row redoes it exactly
+    private static final int PUSH_BIG = 12;
+
+    // Rows per chunk: enough to amortize dispatch, small enough that the stack stays in cache
+    static final int CHUNK = 1024;
+    // Deep trees need a tall stack, so their chunks shrink to keep the scratch space bounded
+    private static final int MAX_SCRATCH = CHUNK * 64;
+
+    static final ColumnKernels KERNELS = loadKernels();
+
+    private final ASTNode ast;
+    private final Variables variables;
+    private final ColumnKernels kernels;
+    private final int[] code;
+    private final long[] constants;
+    private final int maxStack;
+    private final boolean[] stored;
+
+    ColumnarEvaluator(ASTNode ast, Variables variables) {
+        this(ast, variables, KERNELS);
+    }
+
+    ColumnarEvaluator(ASTNode ast, Variables variables, ColumnKernels kernels) {
+        if (ast instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot evaluate render expression as integer");
+        }
+        this.ast = ast;
+        this.variables = variables;
+        this.kernels = kernels;
+        this.stored = new boolean[variables.size()];
+        Emitter emitter = new Emitter(stored);
+        emitter.emit(ast);
+        this.code = Arrays.copyOf(emitter.code, emitter.length);
+        this.constants = Arrays.copyOf(emitter.constants, emitter.constantCount);
+        this.maxStack = emitter.maxDepth;
+    }
+
+    // The Vector API kernels when the build has them and the JVM has the module, otherwise the scalar loops
+    private static ColumnKernels loadKernels() {
+        try {
+            return (ColumnKernels) Class.forName("VectorColumnKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError unavailable) {
+            return new ColumnKernels.Scalar();
+        }
+    }
+
+    /**
+     * Int semantics, as Interpreter.evaluate: results wrap, and the rows
+     * where evaluation would throw are set in the returned bitmap.
+     * columns[slot] holds one value per row for each input slot; the
+     * entries for other slots are not read and may be null.
+     */
+    BitSet evaluate(int[][] columns, int[] results) {
+        int rows = results.length;
+        requireColumns(columns.length, rows, columns, null);
+        long[] errors = new long[(rows + 63) >>> 6];
+        int chunk = chunkSize();
+        int[][] stack = new int[maxStack][chunk];
+        int[][] locals = new int[stored.length][];
+        for (int slot = 0; slot < stored.length; slot++) {
+            if (stored[slot]) {
+                locals[slot] = new int[chunk];
+            }
+        }
+
+        for (int base = 0; base < rows; base += chunk) {
+            int length = Math.min(chunk, rows - base);
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                switch (code[pc]) {
+                    case PUSH:
+                        Arrays.fill(stack[sp++], 0, length, (int) constants[code[++pc]]);
+                        break;
+                    case LOAD_COLUMN:
+                        System.arraycopy(columns[code[++pc]], base, stack[sp++], 0, length);
+                        break;
+                    case LOAD_LOCAL:
+                        System.arraycopy(locals[code[++pc]], 0, stack[sp++], 0, length);
+                        break;
+                    case STORE:
+                        System.arraycopy(stack[sp - 1], 0, locals[code[++pc]], 0, length);
+                        break;
+                    case ADD:
+                        sp--;
+                        kernels.add(stack[sp - 1], stack[sp], length);
+                        break;
+                    case SUB:
+                        sp--;
+                        kernels.subtract(stack[sp - 1], stack[sp], length);
+                        break;
+                    case MUL:
+                        sp--;
+                        kernels.multiply(stack[sp - 1], stack[sp], length);
+                        break;
+                    case DIV:
+                        sp--;
+                        divide(stack[sp - 1], stack[sp], length, errors, base);
+                        break;
+                    case MOD:
+                        sp--;
+                        modulo(stack[sp - 1], stack[sp], length, errors, base);
+                        break;
+                    case POW:
+                        sp--;
+                        power(stack[sp - 1], stack[sp], length, errors, base);
+                        break;
+                    case FACT:
+                        factorial(stack[sp - 1], length, errors, base);
+                        break;
+                    case NEG:
+                        kernels.negate(stack[sp - 1], length);
+                        break;
+                    default:
+                        throw new IllegalStateException("Corrupt program at " + pc);
+                }
+            }
+            System.arraycopy(stack[0], 0, results, base, length);
+        }
+
+        BitSet failed = BitSet.valueOf(errors);
+        for (int row = failed.nextSetBit(0); row >= 0; row = failed.nextSetBit(row + 1)) {
+            results[row] = 0;
+        }
+        return failed;
+    }
+
+    /**
+     * Exact semantics, as Interpreter.evaluateExact, for results that fit in
+     * a long. Chunks run in long arithmetic; a row that overflows anywhere,
+     * or would throw, is redone alone by ExactEvaluator, so intermediate
+     * values may grow past 64 bits as long as the result comes back in
+     * range. Rows whose result does not fit, or that throw, are set in the
+     * returned bitmap.
+     */
+    BitSet evaluateExact(long[][] columns, long[] results) {
+        int rows = results.length;
+        requireColumns(columns.length, rows, null, columns);
+        // Rows to redo exactly; after the redo, the rows that failed
+        long[] redo = new long[(rows + 63) >>> 6];
+        int chunk = chunkSize();
+        long[][] stack = new long[maxStack][chunk];
+        long[][] locals = new long[stored.length][];
+        for (int slot = 0; slot < stored.length; slot++) {
+            if (stored[slot]) {
+                locals[slot] = new long[chunk];
+            }
+        }
+
+        for (int base = 0; base < rows; base += chunk) {
+            int length = Math.min(chunk, rows - base);
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                switch (code[pc]) {
+                    case PUSH:
+                        Arrays.fill(stack[sp++], 0, length, constants[code[++pc]]);
+                        break;
+                    case PUSH_BIG:
+                        Arrays.fill(stack[sp++], 0, length, 0);
+                        markAll(redo, base, length);
+                        break;
+                    case LOAD_COLUMN:
+                        System.arraycopy(columns[code[++pc]], base, stack[sp++], 0, length);
+                        break;
+                    case LOAD_LOCAL:
+                        System.arraycopy(locals[code[++pc]], 0, stack[sp++], 0, length);
+                        break;
+                    case STORE:
+                        System.arraycopy(stack[sp - 1], 0, locals[code[++pc]], 0, length);
+                        break;
+                    case ADD:
+                        sp--;
+                        if (kernels.addExact(stack[sp - 1], stack[sp], length)) {
+                            markAddOverflows(stack[sp - 1], stack[sp], length, redo, base);
+                        }
+                        break;
+                    case SUB:
+                        sp--;
+                        if (kernels.subtractExact(stack[sp - 1], stack[sp], length)) {
+                            markSubtractOverflows(stack[sp - 1], stack[sp], length, redo, base);
+                        }
+                        break;
+                    case MUL:
+                        sp--;
+                        multiplyExact(stack[sp - 1], stack[sp], length, redo, base);
+                        break;
+                    case DIV:
+                        sp--;
+                        divideExact(stack[sp - 1], stack[sp], length, redo, base);
+                        break;
+                    case MOD:
+                        sp--;
+                        moduloExact(stack[sp - 1], stack[sp], length, redo, base);
+                        break;
+                    case POW:
+                        sp--;
+                        powerExact(stack[sp - 1], stack[sp], length, redo, base);
+                        break;
+                    case FACT:
+                        factorialExact(stack[sp - 1], length, redo, base);
+                        break;
+                    case NEG:
+                        negateExact(stack[sp - 1], length, redo, base);
+                        break;
+                    default:
+                        throw new IllegalStateException("Corrupt program at " + pc);
+                }
+            }
+            System.arraycopy(stack[0], 0, results, base, length);
+        }
+
+        BitSet failed = BitSet.valueOf(redo);
+        for (int row = failed.nextSetBit(0); row >= 0; row = failed.nextSetBit(row + 1)) {
+            if (redoExactly(columns, results, row)) {
+                failed.clear(row);
+            }
+        }
+        return failed;
+    }
+
+    // Evaluates one row with ExactEvaluator; false when it throws or the result does not fit in a long
+    private boolean redoExactly(long[][] columns, long[] results, int row) {
+        long[] frame = new long[variables.size()];
+        for (int slot = 0; slot < frame.length; slot++) {
+            if (variables.isInput(slot)) {
+                frame[slot] = columns[slot][row];
+            }
+        }
+        results[row] = 0;
+        try {
+            Number result = ExactEvaluator.evaluate(ast, frame, null);
+            if (result instanceof BigInteger) {
+                return false;
+            }
+            results[row] = result.longValue();
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    // Exactly one of ints and longs is given
+    private void requireColumns(int count, int rows, int[][] ints, long[][] longs) {
+        for (int slot = 0; slot < stored.length; slot++) {
+            if (!variables.isInput(slot)) {
+                continue;
+            }
+            if (slot >= count || (ints != null ? ints[slot] == null : longs[slot] == null)) {
+                throw new IllegalArgumentException("Missing column for variable " + variables.name(slot));
+            }
+            int length = ints != null ? ints[slot].length : longs[slot].length;
+            if (length < rows) {
+                throw new IllegalArgumentException("Column " + variables.name(slot) + " has " + length
+                        + " rows, expected at least " + rows);
+            }
+        }
+    }
+
+    // A multiple of 64, so every chunk but the last fills whole bitmap words
+    private int chunkSize() {
+        return Math.max(64, Math.min(CHUNK, MAX_SCRATCH / Math.max(1, maxStack)) & ~63);
+    }
+
+    private static void mark(long[] bitmap, int row) {
+        bitmap[row >>> 6] |= 1L << row;
+    }
+
+    private static void markAll(long[] bitmap, int base, int length) {
+        for (int i = 0; i < length; i++) {
+            mark(bitmap, base + i);
+        }
+    }
+
+    // The checks mirror Arithmetic; a failed lane gets 0 so later instructions see a harmless value
+
+    private static void divide(int[] left, int[] right, int length, long[] errors, int base) {
+        for (int i = 0; i < length; i++) {
+            if (right[i] == 0) {
+                mark(errors, base + i);
+                left[i] = 0;
+            } else {
+                left[i] /= right[i];
+            }
+        }
+    }
+
+    private static void modulo(int[] left, int[] right, int length, long[] errors, int base) {
+        for (int i = 0; i < length; i++) {
+            if (right[i] == 0) {
+                mark(errors, base + i);
+                left[i] = 0;
+            } else {
+                left[i] %= right[i];
+            }
+        }
+    }
+
+    private static void power(int[] left, int[] right, int length, long[] errors, int base) {
+        for (int i = 0; i < length; i++) {
+            if (right[i] < 0) {
+                mark(errors, base + i);
+                left[i] = 0;
+            } else {
+                left[i] = Arithmetic.power(left[i], right[i]);
+            }
+        }
+    }
+
+    private static void factorial(int[] values, int length, long[] errors, int base) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] < 0 || values[i] > 12) {
+                mark(errors, base + i);
+                values[i] = 0;
+            } else {
+                values[i] = Arithmetic.factorial(values[i]);
+            }
+        }
+    }
+
+    // The kernels already stored the wrapped results; an operand is recovered from the result to find the lanes
+    private static void markAddOverflows(long[] sums, long[] right, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            long left = sums[i] - right[i];
+            if (((left ^ sums[i]) & (right[i] ^ sums[i])) < 0) {
+                mark(redo, base + i);
+            }
+        }
+    }
+
+    private static void markSubtractOverflows(long[] differences, long[] right, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            long left = differences[i] + right[i];
+            if (((left ^ right[i]) & (left ^ differences[i])) < 0) {
+                mark(redo, base + i);
+            }
+        }
+    }
+
+    private static void multiplyExact(long[] left, long[] right, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            long product = left[i] * right[i];
+            // The high half of the full product must be the sign extension of the low half
+            if (Math.multiplyHigh(left[i], right[i]) != (product >> 63)) {
+                mark(redo, base + i);
+            }
+            left[i] = product;
+        }
+    }
+
+    private static void divideExact(long[] left, long[] right, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            if (right[i] == 0 || (left[i] == Long.MIN_VALUE && right[i] == -1)) {
+                mark(redo, base + i);
+                left[i] = 0;
+            } else {
+                left[i] /= right[i];
+            }
+        }
+    }
+
+    private static void moduloExact(long[] left, long[] right, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            if (right[i] == 0) {
+                mark(redo, base + i);
+                left[i] = 0;
+            } else {
+                left[i] %= right[i];
+            }
+        }
+    }
+
+    private static void powerExact(long[] left, long[] right, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            if (right[i] >= 0) {
+                try {
+                    left[i] = ExactEvaluator.power(left[i], right[i]);
+                    continue;
+                } catch (ArithmeticException overflow) {
+                    // Redone exactly below
+                }
+            }
+            mark(redo, base + i);
+            left[i] = 0;
+        }
+    }
+
+    private static void factorialExact(long[] values, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            if (ExactArithmetic.hasSmallFactorial(values[i])) {
+                values[i] = ExactArithmetic.smallFactorial((int) values[i]);
+            } else {
+                mark(redo, base + i);
+                values[i] = 0;
+            }
+        }
+    }
+
+    private static void negateExact(long[] values, int length, long[] redo, int base) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == Long.MIN_VALUE) {
+                mark(redo, base + i);
+            }
+            values[i] = -values[i];
+        }
+    }
+
+    // Flattens the tree in evaluation order; the same walk as StackProgram's emitter
+    private static final class Emitter {
+        final boolean[] stored;
+        int[] code = new int[16];
+        int length;
+        long[] constants = new long[8];
+        int constantCount;
+        int depth;
+        int maxDepth;
+
+        Emitter(boolean[] stored) {
+            this.stored = stored;
+        }
+
+        void emit(ASTNode root) {
+            Deque<ASTNode> pending = new ArrayDeque<>();
+            Deque<ASTNode> completed = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                ASTNode node = pending.pop();
+                if (node instanceof NumberNode) {
+                    push(((NumberNode) node).getValue());
+                    continue;
+                }
+                if (node instanceof BigNumberNode) {
+                    BigInteger value = ((BigNumberNode) node).getValue();
+                    if (value.bitLength() < 64) {
+                        push(value.longValue());
+                    } else {
+                        add(PUSH_BIG);
+                        grow(1);
+                    }
+                    continue;
+                }
+                if (node instanceof VariableNode) {
+                    int slot = ((VariableNode) node).getSlot();
+                    // Evaluation order is emission order, so a store emitted earlier has run by now
+                    add(stored[slot] ? LOAD_LOCAL : LOAD_COLUMN);
+                    add(slot);
+                    grow(1);
+                    continue;
+                }
+                if (!completed.isEmpty() && completed.peek() == node) {
+                    completed.pop();
+                    if (node instanceof AssignNode) {
+                        int slot = ((AssignNode) node).getSlot();
+                        add(STORE);
+                        add(slot);
+                        stored[slot] = true;
+                    } else if (node instanceof UnaryOpNode) {
+                        add(((UnaryOpNode) node).getOperator() == '!' ? FACT : NEG);
+                    } else {
+                        add(opcode(((BinaryOpNode) node).getOperator()));
+                        depth--;
+                    }
+                    continue;
+                }
+                pending.push(node);
+                completed.push(node);
+                if (node instanceof AssignNode) {
+                    pending.push(((AssignNode) node).getValue());
+                } else if (node instanceof UnaryOpNode) {
+                    UnaryOpNode unary = (UnaryOpNode) node;
+                    if (unary.getOperator() != '!' && unary.getOperator() != '-') {
+                        throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+                    }
+                    pending.push(unary.getOperand());
+                } else if (node instanceof BinaryOpNode) {
+                    BinaryOpNode binary = (BinaryOpNode) node;
+                    pending.push(binary.getRight());
+                    pending.push(binary.getLeft());
+                } else {
+                    throw new IllegalArgumentException("Cannot evaluate node over columns: " + node.getClass().getSimpleName());
+                }
+            }
+        }
+
+        private void push(long value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            add(PUSH);
+            add(constantCount++);
+            grow(1);
+        }
+
+        private void grow(int entries) {
+            depth += entries;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void add(int word) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = word;
+        }
+
+        private static int opcode(char operator) {
+            switch (operator) {
+                case '+':
+                    return ADD;
+                case '-':
+                    return SUB;
+                case '*':
+                    return MUL;
+                case '/':
+                    return DIV;
+                case '%':
+                    return MOD;
+                case '^':
+                    return POW;
+                default:
+                    throw new IllegalArgumentException("Unknown operator: " + operator);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Handle to an expression that has been compiled ahead of time so callers that
+ * evaluate the same formula repeatedly skip lexing, parsing and tree walking.
+ * Public because generated implementations live in their own class loader.
+ */
+public interface CompiledExpression {
+    // For expressions without variables
+    default int evaluate() {
+        return evaluate(ASTNode.NO_VARIABLES);
+    }
+
+    // Variables read and assign frame, which needs a slot for each of the expression's Variables
+    int evaluate(int[] frame);
+}
@@ -0,0 +1,86 @@
+/**
+ * The operations of the double numeric mode, shared by every evaluator that
+ * supports it, on primitive doubles so no result is ever boxed.
+ *
+ * Results follow IEEE 754, so overflow gives Infinity and operations without
+ * a real result, such as (-8) ^ (1 / 3), give NaN. Division and modulo by
+ * zero still fail with the same errors as in the integer modes, so a client
+ * switching modes sees the same failures for the same expressions. Negative
+ * exponents are allowed here.
+ *
+ * Factorial extends to non-integers through the gamma function, n! being
+ * gamma(n + 1), so 0.5! is sqrt(pi) / 2. Integers come from a table, which
+ * is exact as far as a double is and reaches Infinity after 170!.
+ */
+public final class DoubleArithmetic {
+    // 170! is the largest factorial below Double.MAX_VALUE
+    private static final double[] FACTORIALS = new double[171];
+    // Lanczos coefficients for g = 7, n = 9, good to about 15 significant digits
+    private static final double LANCZOS_G = 7;
+    private static final double[] LANCZOS = {
+        0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313, -176.61502916214059,
+        12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+    };
+    private static final double SQRT_TWO_PI = Math.sqrt(2 * Math.PI);
+    // Gamma overflows a double from about here
+    private static final double MAX_GAMMA_ARGUMENT = 171.625;
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < FACTORIALS.length; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+    }
+
+    private DoubleArithmetic() {
+    }
+
+    public static double divide(double left, double right) {
+        if (right == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return left / right;
+    }
+
+    // Takes the sign of the dividend, like int %
+    public static double modulo(double left, double right) {
+        if (right == 0) {
+            throw new ArithmeticException("Modulo by zero");
+        }
+        return left % right;
+    }
+
+    public static double factorial(double n) {
+        if (!Double.isFinite(n)) {
+            // Infinity! is Infinity, and gamma has no limit at -Infinity
+            return n > 0 ? n : Double.NaN;
+        }
+        if (n == Math.rint(n)) {
+            // Gamma has a pole at every integer from 0 down, so these have no factorial at all
+            if (n < 0) {
+                throw new ArithmeticException("Factorial of negative integer");
+            }
+            return n < FACTORIALS.length ? FACTORIALS[(int) n] : Double.POSITIVE_INFINITY;
+        }
+        return gamma(n + 1);
+    }
+
+    // For non-integers only; the reflection formula takes the left half-plane to the right one
+    static double gamma(double x) {
+        if (x < 0.5) {
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        if (x > MAX_GAMMA_ARGUMENT) {
+            return Double.POSITIVE_INFINITY;
+        }
+        x -= 1;
+        double sum = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (x + i);
+        }
+        double t = x + LANCZOS_G + 0.5;
+        // t ^ (x + 0.5) alone overflows well before the result does, so it is taken in two halves around exp(-t)
+        double half = Math.pow(t, (x + 0.5) / 2);
+        return SQRT_TWO_PI * half * Math.exp(-t) * half * sum;
+    }
+}
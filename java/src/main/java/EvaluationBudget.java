@@ -0,0 +1,154 @@
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upper bound on the work one evaluation may do, as a number of operations,
+ * a wall-clock timeout, or both.
+ *
+ * Every operation is cheap, but a server evaluates untrusted input on shared
+ * threads, and a big enough expression can still pin a core. The evaluators
+ * charge the budget as they go and abort with a clean error when it runs out.
+ *
+ * Budgets are immutable policies. Each evaluation starts its own Meter from
+ * one, so a single budget can be shared across threads.
+ */
+public final class EvaluationBudget {
+    public static final EvaluationBudget UNLIMITED = new EvaluationBudget(0, 0);
+
+    // Reading the clock costs far more than an operation, so it is consulted only this often
+    static final int CLOCK_INTERVAL = 1024;
+
+    private final long maxOperations;
+    private final long timeoutMillis;
+
+    private EvaluationBudget(long maxOperations, long timeoutMillis) {
+        this.maxOperations = maxOperations;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Zero means no limit for that dimension
+    public static EvaluationBudget of(long maxOperations, long timeoutMillis) {
+        if (maxOperations < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("Budget limits must not be negative");
+        }
+        if (maxOperations == 0 && timeoutMillis == 0) {
+            return UNLIMITED;
+        }
+        return new EvaluationBudget(maxOperations, timeoutMillis);
+    }
+
+    /**
+     * The server-wide limit for MCP requests.
+     *
+     * Environment variables:
+     *   MCP_MAX_OPERATIONS   operations per evaluation, default 10000000, 0 for no limit
+     *   MCP_EVAL_TIMEOUT_MS  wall-clock time per evaluation, default 1000, 0 for no limit
+     */
+    public static EvaluationBudget fromEnvironment() {
+        return fromEnvironment(System.getenv());
+    }
+
+    static EvaluationBudget fromEnvironment(Map<String, String> env) {
+        return of(ServerExecutor.intSetting(env, "MCP_MAX_OPERATIONS", 10_000_000),
+                ServerExecutor.intSetting(env, "MCP_EVAL_TIMEOUT_MS", 1000));
+    }
+
+    public long getMaxOperations() {
+        return maxOperations;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public boolean isUnlimited() {
+        return maxOperations == 0 && timeoutMillis == 0;
+    }
+
+    // The stricter of the two in each dimension, so a caller can narrow a limit but never widen it
+    public EvaluationBudget tighten(EvaluationBudget other) {
+        return of(stricter(maxOperations, other.maxOperations), stricter(timeoutMillis, other.timeoutMillis));
+    }
+
+    public Meter start() {
+        return new Meter(this);
+    }
+
+    private static long stricter(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        return Math.min(a, b);
+    }
+
+    @Override
+    public String toString() {
+        if (isUnlimited()) {
+            return "unlimited";
+        }
+        return (maxOperations == 0 ? "" : maxOperations + " operations")
+                + (maxOperations != 0 && timeoutMillis != 0 ? ", " : "")
+                + (timeoutMillis == 0 ? "" : timeoutMillis + " ms");
+    }
+
+    /**
+     * Tracks one evaluation against its budget. Not thread-safe; an evaluation
+     * runs on one thread.
+     */
+    public static final class Meter {
+        private final EvaluationBudget budget;
+        private final long deadline;
+        private long remaining;
+        private int untilClockCheck = CLOCK_INTERVAL;
+
+        private Meter(EvaluationBudget budget) {
+            this.budget = budget;
+            this.remaining = budget.maxOperations == 0 ? Long.MAX_VALUE : budget.maxOperations;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget.timeoutMillis);
+        }
+
+        // Called once per operation
+        public void charge() {
+            if (--remaining < 0) {
+                throw operationsExceeded();
+            }
+            if (--untilClockCheck == 0) {
+                untilClockCheck = CLOCK_INTERVAL;
+                checkDeadline();
+            }
+        }
+
+        /**
+         * Called before one operation that does the work of units ordinary
+         * ones, such as arithmetic on numbers thousands of bits long. Work
+         * that would not fit in what is left is refused before it starts,
+         * and since one such operation can take milliseconds, the clock is
+         * read every time rather than every CLOCK_INTERVAL charges.
+         */
+        public void charge(long units) {
+            if (units > remaining) {
+                remaining = -1;
+                throw operationsExceeded();
+            }
+            remaining -= units;
+            checkDeadline();
+        }
+
+        /**
+         * Reads the clock without charging, for an operation already charged
+         * up front that can give up between its own steps.
+         */
+        public void checkDeadline() {
+            if (budget.timeoutMillis != 0 && System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Evaluation budget exceeded: took longer than " + budget.timeoutMillis + " ms");
+            }
+        }
+
+        private IllegalStateException operationsExceeded() {
+            return new IllegalStateException("Evaluation budget exceeded: more than " + budget.maxOperations + " operations");
+        }
+    }
+}
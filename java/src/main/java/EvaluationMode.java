@@ -0,0 +1,15 @@
+/**
+ * Which engine Interpreter uses to evaluate a parsed expression. All modes
+ * produce the same results and errors; they differ only in speed and memory.
+ */
+public enum EvaluationMode {
+    // Recursive ASTNode.evaluate(); trees too deep to recurse on switch to ITERATIVE automatically
+    TREE_WALK,
+    // IterativeTreeWalker, which has no stack-depth limit
+    ITERATIVE,
+    // Flat postfix program run by StackProgram
+    STACK_VM,
+    // ParallelEvaluator on the common ForkJoinPool for trees of ParallelEvaluator.MIN_SIZE nodes or more
+    // without assignments; everything else, and every metered evaluation, runs as TREE_WALK
+    PARALLEL
+}
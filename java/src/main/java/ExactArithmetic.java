@@ -0,0 +1,334 @@
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The operations of the exact numeric mode on BigInteger, for when a result
+ * no longer fits in a long.
+ *
+ * ExactEvaluator stays on longs with Math.*Exact and only comes here once an
+ * operation overflows, so small numbers never pay for BigInteger. The errors
+ * for bad operands match Arithmetic; the int-only limits, such as factorial
+ * stopping at 12, are gone.
+ *
+ * Results are capped at MAX_BITS. Without a cap one short expression such as
+ * 9 ^ 999999999 would try to allocate gigabytes. Within the cap an operation
+ * can still take hundreds of milliseconds, so when given a meter each one is
+ * charged a unit per 64-bit word of its operands, or of its estimated result
+ * for factorial and power, before it starts. Factorial and power also read
+ * the deadline between their multiplication steps, so a single large one can
+ * be interrupted rather than only refused.
+ *
+ * Factorials come from a table up to 20, a running product up to
+ * SPLIT_FACTORIAL_MIN, and binary splitting above that, which keeps the
+ * operands of each multiplication about the same size so BigInteger can use
+ * its Karatsuba and Toom-Cook algorithms. The largest are also cached, since
+ * clients tend to repeat them. FactorialBenchmark and PowerBenchmark
+ * measure where each method takes over.
+ */
+public final class ExactArithmetic {
+    // About 315,000 decimal digits
+    public static final int MAX_BITS = 1 << 20;
+
+    // 20! is the largest factorial that fits in a long
+    private static final long[] FACTORIALS = new long[21];
+    // The largest n whose factorial stays within MAX_BITS
+    static final int MAX_FACTORIAL;
+    // Below this the running product is faster than splitting
+    static final int SPLIT_FACTORIAL_MIN = 128;
+    // Smaller factorials are quicker to recompute than to look up and keep
+    static final int CACHED_FACTORIAL_MIN = 1024;
+    private static final int FACTORIAL_CACHE_SIZE = 8;
+    // Most recently used last; only touched under its own lock
+    private static final Map<Integer, BigInteger> FACTORIAL_CACHE = new LinkedHashMap<Integer, BigInteger>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BigInteger> eldest) {
+            return size() > FACTORIAL_CACHE_SIZE;
+        }
+    };
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < FACTORIALS.length; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+        // log2(n!) summed term by term; the exact size is still checked on the result
+        double bits = 0;
+        int n = 1;
+        while (bits + Math.log(n + 1) / Math.log(2) <= MAX_BITS) {
+            n++;
+            bits += Math.log(n) / Math.log(2);
+        }
+        MAX_FACTORIAL = n;
+    }
+
+    private ExactArithmetic() {
+    }
+
+    // Shared with evaluators that walk the tree themselves
+    public static BigInteger apply(char operator, BigInteger left, BigInteger right) {
+        return apply(operator, left, right, null);
+    }
+
+    // Charges meter, when not null, for the size of the operation first
+    public static BigInteger apply(char operator, BigInteger left, BigInteger right, EvaluationBudget.Meter meter) {
+        if (meter != null) {
+            meter.charge(operator == '^' ? powerCost(left, right) : words((long) left.bitLength() + right.bitLength()));
+        }
+        switch (operator) {
+            case '+':
+                return checked(left.add(right));
+            case '-':
+                return checked(left.subtract(right));
+            case '*':
+                return multiply(left, right);
+            case '/':
+                return divide(left, right);
+            case '%':
+                return modulo(left, right);
+            case '^':
+                return power(left, right, meter);
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    public static BigInteger apply(char operator, BigInteger operand) {
+        return apply(operator, operand, (EvaluationBudget.Meter) null);
+    }
+
+    public static BigInteger apply(char operator, BigInteger operand, EvaluationBudget.Meter meter) {
+        if (meter != null) {
+            meter.charge(operator == '!' ? factorialCost(operand) : words(operand.bitLength()));
+        }
+        switch (operator) {
+            case '!':
+                return factorial(operand, meter);
+            case '-':
+                return operand.negate();
+            default:
+                throw new IllegalArgumentException("Unknown unary operator: " + operator);
+        }
+    }
+
+    public static BigInteger multiply(BigInteger left, BigInteger right) {
+        // A product has at least this many bits, so hopeless ones are refused before the work
+        if (left.signum() != 0 && right.signum() != 0 && left.bitLength() + right.bitLength() - 1 > MAX_BITS) {
+            throw tooLarge();
+        }
+        return checked(left.multiply(right));
+    }
+
+    // Truncates toward zero, like int division
+    public static BigInteger divide(BigInteger left, BigInteger right) {
+        if (right.signum() == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return left.divide(right);
+    }
+
+    // Takes the sign of the dividend, like int %
+    public static BigInteger modulo(BigInteger left, BigInteger right) {
+        if (right.signum() == 0) {
+            throw new ArithmeticException("Modulo by zero");
+        }
+        return left.remainder(right);
+    }
+
+    public static BigInteger power(BigInteger base, BigInteger exponent) {
+        return power(base, exponent, null);
+    }
+
+    // Reads the deadline of meter, when not null, before each squaring
+    public static BigInteger power(BigInteger base, BigInteger exponent, EvaluationBudget.Meter meter) {
+        if (exponent.signum() < 0) {
+            throw new ArithmeticException("Negative exponent not supported for integers");
+        }
+        // 0, 1 and -1 stay small whatever the exponent
+        if (base.signum() == 0) {
+            return exponent.signum() == 0 ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        if (base.abs().equals(BigInteger.ONE)) {
+            return base.signum() > 0 || !exponent.testBit(0) ? BigInteger.ONE : base;
+        }
+        // The result has more than (bitLength - 1) * exponent bits
+        if (exponent.bitLength() > 31 || (long) (base.bitLength() - 1) * exponent.intValue() > MAX_BITS) {
+            throw tooLarge();
+        }
+        // BigInteger.pow squares: it shifts out factors of two, works in a long while the result fits, and then
+        // needs about log2(exponent) squarings, so 3 ^ 100000 takes 17 of them instead of 100,000 multiplications
+        if (meter == null) {
+            return checked(base.pow(exponent.intValue()));
+        }
+        return checked(powerBySquaring(base, exponent.intValue(), meter));
+    }
+
+    // The same squarings as BigInteger.pow, but with room between them to give up
+    private static BigInteger powerBySquaring(BigInteger base, int exponent, EvaluationBudget.Meter meter) {
+        int shift = base.getLowestSetBit();
+        BigInteger odd = base.shiftRight(shift);
+        BigInteger result = BigInteger.ONE;
+        for (int bit = 31 - Integer.numberOfLeadingZeros(exponent); bit >= 0; bit--) {
+            meter.checkDeadline();
+            result = result.multiply(result);
+            if ((exponent & (1 << bit)) != 0) {
+                result = result.multiply(odd);
+            }
+        }
+        return result.shiftLeft(shift * exponent);
+    }
+
+    public static BigInteger factorial(BigInteger n) {
+        return factorial(n, null);
+    }
+
+    // Reads the deadline of meter, when not null, between multiplications; an interrupted result is not cached
+    public static BigInteger factorial(BigInteger n, EvaluationBudget.Meter meter) {
+        if (n.signum() < 0) {
+            throw new ArithmeticException("Factorial of negative number");
+        }
+        if (n.compareTo(BigInteger.valueOf(MAX_FACTORIAL)) > 0) {
+            throw tooLarge();
+        }
+        int limit = n.intValue();
+        if (limit < FACTORIALS.length) {
+            return BigInteger.valueOf(FACTORIALS[limit]);
+        }
+        if (limit < SPLIT_FACTORIAL_MIN) {
+            return checked(factorialByRuns(limit, meter));
+        }
+        if (limit < CACHED_FACTORIAL_MIN) {
+            return checked(factorialBySplitting(limit, meter));
+        }
+        BigInteger cached;
+        synchronized (FACTORIAL_CACHE) {
+            cached = FACTORIAL_CACHE.get(limit);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        // Computed outside the lock; two threads missing on the same n both compute it
+        BigInteger result = checked(factorialBySplitting(limit, meter));
+        synchronized (FACTORIAL_CACHE) {
+            FACTORIAL_CACHE.put(limit, result);
+        }
+        return result;
+    }
+
+    // Runs of small factors are multiplied in a long first, which saves most of the BigInteger multiplications
+    static BigInteger factorialByRuns(int n) {
+        return factorialByRuns(n, null);
+    }
+
+    private static BigInteger factorialByRuns(int n, EvaluationBudget.Meter meter) {
+        BigInteger result = BigInteger.ONE;
+        long run = 1;
+        for (long i = 2; i <= n; i++) {
+            if (run > Long.MAX_VALUE / i) {
+                checkDeadline(meter);
+                result = result.multiply(BigInteger.valueOf(run));
+                run = 1;
+            }
+            run *= i;
+        }
+        return result.multiply(BigInteger.valueOf(run));
+    }
+
+    /**
+     * n! as its odd part shifted left by its power of two, n - bitCount(n).
+     * The odd part is the product over k of the odd numbers up to n >> k;
+     * going from the largest k down, each of those products extends the
+     * previous one, and each extension is a product tree over a range of
+     * odd numbers.
+     */
+    static BigInteger factorialBySplitting(int n) {
+        return factorialBySplitting(n, null);
+    }
+
+    private static BigInteger factorialBySplitting(int n, EvaluationBudget.Meter meter) {
+        BigInteger oddPart = BigInteger.ONE;
+        BigInteger odds = BigInteger.ONE;
+        int covered = 1;
+        for (int shift = 31 - Integer.numberOfLeadingZeros(n); shift >= 0; shift--) {
+            int limit = n >> shift;
+            // The odd numbers in (covered, limit]
+            int first = covered + 2;
+            int last = (limit & 1) == 0 ? limit - 1 : limit;
+            if (last >= first) {
+                odds = odds.multiply(oddProduct(first, (last - first) / 2 + 1, meter));
+                covered = last;
+            }
+            checkDeadline(meter);
+            oddPart = oddPart.multiply(odds);
+        }
+        return oddPart.shiftLeft(n - Integer.bitCount(n));
+    }
+
+    // The product of count odd numbers from first, halved until the pieces fit in a long
+    private static BigInteger oddProduct(int first, int count, EvaluationBudget.Meter meter) {
+        if (count <= 4 && first < (1 << 15)) {
+            // Four factors below 2^16 fit in a long
+            long product = first;
+            for (int i = 1; i < count; i++) {
+                product *= first + 2L * i;
+            }
+            return BigInteger.valueOf(product);
+        }
+        if (count == 1) {
+            return BigInteger.valueOf(first);
+        }
+        int half = count / 2;
+        BigInteger low = oddProduct(first, half, meter);
+        BigInteger high = oddProduct(first + 2 * half, count - half, meter);
+        checkDeadline(meter);
+        return low.multiply(high);
+    }
+
+    // n! for 0 <= n <= 20, the fast path for factorials that fit in a long
+    static long smallFactorial(int n) {
+        return FACTORIALS[n];
+    }
+
+    static boolean hasSmallFactorial(long n) {
+        return n >= 0 && n < FACTORIALS.length;
+    }
+
+    private static void checkDeadline(EvaluationBudget.Meter meter) {
+        if (meter != null) {
+            meter.checkDeadline();
+        }
+    }
+
+    // One unit per 64-bit word
+    private static long words(long bits) {
+        return (bits >> 6) + 1;
+    }
+
+    // The words of the result, which is what the squarings build up to; operands refused later cost one
+    private static long powerCost(BigInteger base, BigInteger exponent) {
+        if (base.bitLength() <= 1 || exponent.signum() <= 0 || exponent.bitLength() > 31) {
+            return 1;
+        }
+        return words(Math.min((long) base.bitLength() * exponent.intValue(), MAX_BITS));
+    }
+
+    // The words of n!, from Stirling's n * log2(n / e)
+    private static long factorialCost(BigInteger n) {
+        if (n.signum() <= 0 || n.compareTo(BigInteger.valueOf(MAX_FACTORIAL)) > 0) {
+            return 1;
+        }
+        double limit = n.intValue();
+        return words((long) Math.max(0, limit * (Math.log(limit) - 1) / Math.log(2)));
+    }
+
+    private static BigInteger checked(BigInteger result) {
+        if (result.bitLength() > MAX_BITS) {
+            throw tooLarge();
+        }
+        return result;
+    }
+
+    private static ArithmeticException tooLarge() {
+        return new ArithmeticException("Result too large: more than " + MAX_BITS + " bits");
+    }
+}
@@ -0,0 +1,237 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Evaluates an AST without overflow, for the EXACT numeric mode.
+ *
+ * Every value lives in a long slot while it fits, and arithmetic on longs
+ * goes through Math.*Exact; only an operation that overflows is redone in
+ * BigInteger by ExactArithmetic. The BigInteger stays in a parallel slot
+ * until a later result fits in a long again, so ordinary expressions never
+ * create one. The walk uses explicit stacks like IterativeTreeWalker, so
+ * there is no depth limit, and operands are evaluated in the same order, so
+ * an expression with several bad operations fails on the same one.
+ */
+public final class ExactEvaluator {
+    static final long[] NO_VARIABLES = new long[0];
+
+    private final long[] frame;
+    // Null when unmetered
+    private final EvaluationBudget.Meter meter;
+    private long[] smalls = new long[16];
+    // Null where the value is in smalls
+    private BigInteger[] bigs = new BigInteger[16];
+
+    private ExactEvaluator(long[] frame, EvaluationBudget.Meter meter) {
+        this.frame = frame;
+        this.meter = meter;
+    }
+
+    // A Long when the result fits in one, otherwise a BigInteger
+    public static Number evaluate(ASTNode root) {
+        return evaluate(root, null);
+    }
+
+    public static Number evaluate(ASTNode root, EvaluationBudget.Meter meter) {
+        return evaluate(root, NO_VARIABLES, meter);
+    }
+
+    /**
+     * Variables read and assign their slot in frame, and charge meter once per
+     * node when it is not null, plus the size of every BigInteger operation.
+     * Variables hold longs, so assigning a value outside the long range fails;
+     * values in between are unbounded.
+     */
+    public static Number evaluate(ASTNode root, long[] frame, EvaluationBudget.Meter meter) {
+        if (root instanceof RenderNode) {
+            throw new UnsupportedOperationException("RenderNode cannot be evaluated to a number");
+        }
+        return new ExactEvaluator(frame, meter).run(root);
+    }
+
+    // A Number from evaluate() as a BigInteger
+    public static BigInteger toBigInteger(Number value) {
+        return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf(value.longValue());
+    }
+
+    private Number run(ASTNode root) {
+        // Each node is visited twice: once to schedule its children, once to combine their values
+        ASTNode[] nodes = new ASTNode[16];
+        boolean[] expanded = new boolean[16];
+        int top = 0;
+        int valueTop = 0;
+
+        nodes[top++] = root;
+        while (top > 0) {
+            ASTNode node = nodes[--top];
+            boolean ready = expanded[top];
+            boolean leaf = !(node instanceof BinaryOpNode || node instanceof UnaryOpNode || node instanceof AssignNode);
+            if (meter != null && (ready || leaf)) {
+                meter.charge();
+            }
+
+            if (leaf) {
+                if (valueTop == smalls.length) {
+                    smalls = Arrays.copyOf(smalls, valueTop * 2);
+                    bigs = Arrays.copyOf(bigs, valueTop * 2);
+                }
+                if (node instanceof NumberNode) {
+                    smalls[valueTop++] = ((NumberNode) node).getValue();
+                } else if (node instanceof BigNumberNode) {
+                    store(valueTop++, ((BigNumberNode) node).getValue());
+                } else if (node instanceof VariableNode) {
+                    VariableNode variable = (VariableNode) node;
+                    if (variable.getSlot() >= frame.length) {
+                        throw VariableNode.unbound(variable.getName());
+                    }
+                    smalls[valueTop++] = frame[variable.getSlot()];
+                } else {
+                    // Unknown node types fall back to their own evaluation, without variables
+                    smalls[valueTop++] = meter == null ? node.evaluate() : node.evaluate(meter);
+                }
+            } else if (ready) {
+                if (node instanceof BinaryOpNode) {
+                    valueTop--;
+                    binary(((BinaryOpNode) node).getOperator(), valueTop - 1);
+                    bigs[valueTop] = null;
+                } else if (node instanceof UnaryOpNode) {
+                    unary(((UnaryOpNode) node).getOperator(), valueTop - 1);
+                } else {
+                    assign((AssignNode) node, valueTop - 1);
+                }
+            } else {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+                nodes[top] = node;
+                expanded[top++] = true;
+                if (node instanceof BinaryOpNode) {
+                    BinaryOpNode binary = (BinaryOpNode) node;
+                    // Right is pushed first so the left operand is evaluated (and fails) first
+                    nodes[top] = binary.getRight();
+                    expanded[top++] = false;
+                    nodes[top] = binary.getLeft();
+                    expanded[top++] = false;
+                } else if (node instanceof UnaryOpNode) {
+                    nodes[top] = ((UnaryOpNode) node).getOperand();
+                    expanded[top++] = false;
+                } else {
+                    nodes[top] = ((AssignNode) node).getValue();
+                    expanded[top++] = false;
+                }
+            }
+        }
+
+        return bigs[0] != null ? bigs[0] : Long.valueOf(smalls[0]);
+    }
+
+    // Combines slots slot and slot + 1 into slot
+    private void binary(char operator, int slot) {
+        if (bigs[slot] == null && bigs[slot + 1] == null) {
+            long left = smalls[slot];
+            long right = smalls[slot + 1];
+            try {
+                switch (operator) {
+                    case '+':
+                        smalls[slot] = Math.addExact(left, right);
+                        return;
+                    case '-':
+                        smalls[slot] = Math.subtractExact(left, right);
+                        return;
+                    case '*':
+                        // Two ints cannot overflow a long, which skips the overflow check on the commonest case
+                        smalls[slot] = isInt(left) && isInt(right) ? left * right : Math.multiplyExact(left, right);
+                        return;
+                    case '/':
+                        // A zero divisor and the one quotient that overflows take the BigInteger path, which raises the error
+                        if (right != 0 && (left != Long.MIN_VALUE || right != -1)) {
+                            smalls[slot] = left / right;
+                            return;
+                        }
+                        break;
+                    case '%':
+                        if (right != 0) {
+                            smalls[slot] = left % right;
+                            return;
+                        }
+                        break;
+                    case '^':
+                        if (right >= 0) {
+                            smalls[slot] = power(left, right);
+                            return;
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operator: " + operator);
+                }
+            } catch (ArithmeticException overflow) {
+                // Redone below in BigInteger
+            }
+        }
+        store(slot, ExactArithmetic.apply(operator, big(slot), big(slot + 1), meter));
+    }
+
+    private void unary(char operator, int slot) {
+        if (bigs[slot] == null) {
+            long operand = smalls[slot];
+            if (operator == '-' && operand != Long.MIN_VALUE) {
+                smalls[slot] = -operand;
+                return;
+            }
+            if (operator == '!' && ExactArithmetic.hasSmallFactorial(operand)) {
+                smalls[slot] = ExactArithmetic.smallFactorial((int) operand);
+                return;
+            }
+        }
+        store(slot, ExactArithmetic.apply(operator, big(slot), meter));
+    }
+
+    private void assign(AssignNode assign, int slot) {
+        if (bigs[slot] != null) {
+            throw new ArithmeticException("Variable " + assign.getName() + " cannot hold more than 64 bits");
+        }
+        if (assign.getSlot() >= frame.length) {
+            throw VariableNode.unbound(assign.getName());
+        }
+        frame[assign.getSlot()] = smalls[slot];
+    }
+
+    /**
+     * Squaring with checked products. The base is only squared while bits of
+     * the exponent remain, so it overflows only when the result would too.
+     */
+    static long power(long base, long exponent) {
+        long power = 1;
+        while (true) {
+            if ((exponent & 1) != 0) {
+                power = Math.multiplyExact(power, base);
+            }
+            exponent >>>= 1;
+            if (exponent == 0) {
+                return power;
+            }
+            base = Math.multiplyExact(base, base);
+        }
+    }
+
+    private BigInteger big(int slot) {
+        BigInteger value = bigs[slot];
+        return value != null ? value : BigInteger.valueOf(smalls[slot]);
+    }
+
+    // Moves a value back to the long slot whenever it fits
+    private void store(int slot, BigInteger value) {
+        // bitLength() leaves out the sign, so this includes Long.MIN_VALUE
+        if (value.bitLength() < 64) {
+            smalls[slot] = value.longValue();
+            bigs[slot] = null;
+        } else {
+            bigs[slot] = value;
+        }
+    }
+
+    private static boolean isInt(long value) {
+        return (int) value == value;
+    }
+}
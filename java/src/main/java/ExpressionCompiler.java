@@ -0,0 +1,154 @@
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns an AST into a generated class whose evaluate(int[]) is a single straight-line
+ * method. Hot formulas are evaluated millions of times, and the virtual dispatch
+ * and operator switch of the tree-walker dominate that cost; flat bytecode lets
+ * the JIT inline the whole expression.
+ *
+ * Every checked operation goes through Arithmetic so compiled and interpreted
+ * evaluation fail with the same exceptions in the same order. Variables are
+ * plain array loads and stores on the frame argument.
+ */
+public class ExpressionCompiler {
+    private static final String ARITHMETIC = "Arithmetic";
+    private static final String INT_BINARY = "(II)I";
+    // Local 1 of evaluate(int[])
+    private static final int FRAME = 1;
+    private static final AtomicLong counter = new AtomicLong();
+
+    public CompiledExpression compile(ASTNode node) {
+        if (node instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot compile render expression");
+        }
+
+        String className = "CompiledExpression$" + counter.incrementAndGet();
+        byte[] bytecode;
+        try {
+            bytecode = generate(className, node);
+        } catch (MethodTooLargeException e) {
+            // The JVM caps a method at 64KB of bytecode; huge trees keep working on the tree-walker
+            return node::evaluate;
+        }
+
+        try {
+            // One loader per expression so the class can be unloaded once the handle is dropped
+            Class<?> compiled = new DefiningClassLoader().define(className, bytecode);
+            return (CompiledExpression) compiled.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to load compiled expression", e);
+        }
+    }
+
+    private byte[] generate(String className, ASTNode node) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                className, null, "java/lang/Object", new String[]{"CompiledExpression"});
+
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor evaluate = writer.visitMethod(Opcodes.ACC_PUBLIC, "evaluate", "([I)I", null, null);
+        evaluate.visitCode();
+        emit(evaluate, node);
+        evaluate.visitInsn(Opcodes.IRETURN);
+        evaluate.visitMaxs(0, 0);
+        evaluate.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void emit(MethodVisitor mv, ASTNode node) {
+        if (node instanceof NumberNode) {
+            pushInt(mv, ((NumberNode) node).getValue());
+        } else if (node instanceof VariableNode) {
+            mv.visitVarInsn(Opcodes.ALOAD, FRAME);
+            pushInt(mv, ((VariableNode) node).getSlot());
+            mv.visitInsn(Opcodes.IALOAD);
+        } else if (node instanceof AssignNode) {
+            AssignNode assign = (AssignNode) node;
+            emit(mv, assign.getValue());
+            // value -> value value -> value frame value -> value frame slot value, stored, leaving value
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitVarInsn(Opcodes.ALOAD, FRAME);
+            mv.visitInsn(Opcodes.SWAP);
+            pushInt(mv, assign.getSlot());
+            mv.visitInsn(Opcodes.SWAP);
+            mv.visitInsn(Opcodes.IASTORE);
+        } else if (node instanceof UnaryOpNode) {
+            UnaryOpNode unary = (UnaryOpNode) node;
+            emit(mv, unary.getOperand());
+            switch (unary.getOperator()) {
+                case '!':
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, ARITHMETIC, "factorial", "(I)I", false);
+                    break;
+                case '-':
+                    mv.visitInsn(Opcodes.INEG);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+            }
+        } else if (node instanceof BinaryOpNode) {
+            BinaryOpNode binary = (BinaryOpNode) node;
+            emit(mv, binary.getLeft());
+            emit(mv, binary.getRight());
+            switch (binary.getOperator()) {
+                case '+':
+                    mv.visitInsn(Opcodes.IADD);
+                    break;
+                case '-':
+                    mv.visitInsn(Opcodes.ISUB);
+                    break;
+                case '*':
+                    mv.visitInsn(Opcodes.IMUL);
+                    break;
+                case '/':
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, ARITHMETIC, "divide", INT_BINARY, false);
+                    break;
+                case '%':
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, ARITHMETIC, "modulo", INT_BINARY, false);
+                    break;
+                case '^':
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, ARITHMETIC, "power", INT_BINARY, false);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operator: " + binary.getOperator());
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot compile node: " + node.getClass().getSimpleName());
+        }
+    }
+
+    private void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private static class DefiningClassLoader extends ClassLoader {
+        DefiningClassLoader() {
+            super(ExpressionCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import spark.Route;
+import spark.Spark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MCP over HTTP on Spark: plain JSON-RPC responses, or a single SSE event
+ * when the client accepts text/event-stream (the StreamableHttp transport).
+ *
+ * Clients that want it get a Streamable HTTP session. initialize returns an
+ * Mcp-Session-Id, GET /mcp with that header opens a long-lived event stream,
+ * and while the stream is open the answers to the session's POSTs are sent
+ * on it as events, each POST getting 202 Accepted. DELETE /mcp ends the
+ * session.
+ *
+ * Responses and event streams are compressed when the client's
+ * Accept-Encoding allows it; see ResponseCompression.
+ *
+ * The port comes from MCP_PORT, default 8080. See ServerExecutor,
+ * AdmissionController, SessionRegistry and ResponseCompression for the other
+ * settings.
+ */
+public final class HttpTransport implements McpTransport {
+    private final int port;
+    private final ServerExecutor executor;
+    private final AdmissionController admission;
+    private final SessionRegistry sessions;
+    private final ResponseCompression compression;
+
+    public HttpTransport(int port, ServerExecutor executor, AdmissionController admission, SessionRegistry sessions,
+                         ResponseCompression compression) {
+        this.port = port;
+        this.executor = executor;
+        this.admission = admission;
+        this.sessions = sessions;
+        this.compression = compression;
+    }
+
+    public static HttpTransport fromEnvironment() {
+        return new HttpTransport(Integer.parseInt(System.getenv().getOrDefault("MCP_PORT", "8080")),
+                ServerExecutor.fromEnvironment(), AdmissionController.fromEnvironment(), SessionRegistry.fromEnvironment(),
+                ResponseCompression.fromEnvironment());
+    }
+
+    @Override
+    public void serve(McpDispatcher dispatcher) {
+        // Configure Spark HTTP server
+        executor.install();
+        sessions.start();
+        Spark.port(port);
+
+        // Configure to accept all content types and enable CORS
+        Spark.before((req, res) -> {
+            // CORS headers for MCP Inspector
+            res.header("Access-Control-Allow-Origin", "*");
+            res.header("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS");
+            res.header("Access-Control-Allow-Headers", "Content-Type, Accept, Mcp-Session-Id, Last-Event-ID");
+            res.header("Access-Control-Expose-Headers", "Mcp-Session-Id");
+            res.header("Vary", "Accept, Accept-Encoding");
+        });
+
+        // Handle OPTIONS requests for CORS preflight
+        Spark.options("/*", (req, res) -> {
+            res.status(204);
+            return "";
+        });
+
+        // MCP endpoint - handles both regular JSON and SSE requests
+        Spark.post("/mcp", (req, res) -> {
+            String acceptHeader = req.headers("Accept");
+            boolean isSSE = acceptHeader != null && acceptHeader.contains("text/event-stream");
+
+            if (isSSE) {
+                // Handle SSE (Server-Sent Events) for StreamableHttp transport
+                res.type("text/event-stream");
+                res.header("Cache-Control", "no-cache");
+                res.header("Connection", "keep-alive");
+                res.header("X-Accel-Buffering", "no"); // Disable nginx buffering
+            } else {
+                res.type("application/json");
+            }
+
+            String sessionId = req.headers(SessionRegistry.SESSION_HEADER);
+            McpSession session = sessionId == null ? null : sessions.get(sessionId);
+            if (sessionId != null && session == null) {
+                // The client has to initialize again
+                res.status(404);
+                dispatcher.writeError(res.raw().getOutputStream(), isSSE, -32001, "Session not found");
+                return "";
+            }
+
+            // Shed load before reading the body, so rejecting stays cheap however large the request
+            AdmissionController.Permit permit = admission.tryAcquire();
+            if (permit == null) {
+                res.status(503);
+                res.header("Retry-After", String.valueOf(admission.retryAfterSeconds()));
+                dispatcher.writeError(res.raw().getOutputStream(), isSSE, -32000, "Server overloaded, retry later");
+                return "";
+            }
+
+            try {
+                byte[] body = req.bodyAsBytes();
+                if (session == null && "initialize".equals(dispatcher.method(body))) {
+                    // At the session limit the client is answered statelessly, without a session id, so initialize never fails
+                    session = sessions.create();
+                    if (session != null) {
+                        res.header(SessionRegistry.SESSION_HEADER, session.getId());
+                    }
+                }
+
+                if (session != null && session.hasStream()) {
+                    // Multiplexed: the answer travels as an event on the session's stream
+                    ByteArrayOutputStream response = new ByteArrayOutputStream();
+                    if (dispatcher.handle(body, response, false)) {
+                        session.send(response.toByteArray());
+                    }
+                    res.status(202);
+                    return "";
+                }
+
+                // The dispatcher writes the response itself, SSE framing included; large ones are compressed on the way
+                ResponseCompression.Body out = compression.body(res.raw().getOutputStream(),
+                        compression.negotiate(req.headers("Accept-Encoding")), encoding -> res.header("Content-Encoding", encoding));
+                if (!dispatcher.handle(body, out, isSSE)) {
+                    res.status(202);
+                }
+                out.finish();
+            } finally {
+                permit.release();
+            }
+            return "";
+        });
+
+        // GET /mcp opens a session's event stream, or describes the endpoint to a browser
+        Spark.get("/mcp", (req, res) -> {
+            String acceptHeader = req.headers("Accept");
+            if (acceptHeader != null && acceptHeader.contains("text/event-stream")) {
+                res.type("application/json");
+                String sessionId = req.headers(SessionRegistry.SESSION_HEADER);
+                McpSession session = sessionId == null ? null : sessions.get(sessionId);
+                if (session == null) {
+                    res.status(sessionId == null ? 400 : 404);
+                    dispatcher.writeError(res.raw().getOutputStream(), false, sessionId == null ? -32600 : -32001,
+                            sessionId == null ? "Missing Mcp-Session-Id header" : "Session not found");
+                    return "";
+                }
+
+                res.status(200);
+                res.type("text/event-stream");
+                res.header("Cache-Control", "no-cache");
+                res.header("Connection", "keep-alive");
+                res.header("X-Accel-Buffering", "no");
+                ResponseCompression.Encoding encoding = compression.negotiate(req.headers("Accept-Encoding"));
+                if (encoding != null) {
+                    res.header("Content-Encoding", encoding.token());
+                }
+                AsyncSseStream.open(session, sessions.getReplayCapacity(), encoding == null ? null : compression.frames(encoding),
+                        req.raw(), res.raw(), req.headers(SessionRegistry.LAST_EVENT_ID_HEADER));
+                return "";
+            }
+
+            res.type("application/json");
+            Map<String, Object> info = new HashMap<>();
+            info.put("message", "This is the MCP endpoint. Use POST with JSON-RPC 2.0 requests.");
+            info.put("methods", new String[]{"initialize", "tools/list", "tools/call"});
+            return dispatcher.getMapper().writeValueAsString(info);
+        });
+
+        // Ends a session and closes its stream
+        Spark.delete("/mcp", (req, res) -> {
+            String sessionId = req.headers(SessionRegistry.SESSION_HEADER);
+            if (sessionId == null) {
+                res.status(400);
+            } else {
+                res.status(sessions.remove(sessionId) ? 204 : 404);
+            }
+            return "";
+        });
+
+        // Health check endpoint
+        Spark.get("/health", (req, res) -> {
+            res.type("application/json");
+            Map<String, Object> health = new LinkedHashMap<>();
+            health.put("status", "healthy");
+            health.put("service", "JavaCalc MCP");
+            health.put("executor", executor.describe());
+            health.put("admission", admission.describe());
+            health.put("sessions", sessions.describe());
+            health.put("compression", compression.describe());
+            return dispatcher.getMapper().writeValueAsString(health);
+        });
+
+        // Per-phase, per-method and per-tool latencies for Prometheus
+        Spark.get("/metrics", (req, res) -> {
+            Metrics metrics = dispatcher.getMetrics();
+            if (metrics == null) {
+                res.status(404);
+                return "";
+            }
+            res.type("text/plain; version=0.0.4; charset=utf-8");
+            return metrics.toPrometheus();
+        });
+
+        // Server info endpoint - create a reusable route
+        Route serverInfoRoute = (req, res) -> {
+            res.type("application/json");
+            Map<String, Object> info = new HashMap<>();
+            info.put("name", "JavaCalc MCP Server");
+            info.put("version", "1.0.0");
+            info.put("transport", "HTTP/SSE");
+            info.put("port", port);
+            Map<String, String> endpoints = new HashMap<>();
+            endpoints.put("mcp", "/mcp");
+            endpoints.put("health", "/health");
+            endpoints.put("metrics", "/metrics");
+            info.put("endpoints", endpoints);
+            return dispatcher.getMapper().writeValueAsString(info);
+        };
+
+        // Register for specific Accept headers that clients might send
+        Spark.get("/", "application/json", serverInfoRoute);
+        Spark.get("/", "text/event-stream", serverInfoRoute);
+        Spark.get("/", "text/html", serverInfoRoute);
+        Spark.get("/", "*/*", serverInfoRoute);
+        // Catch-all for any other Accept headers
+        Spark.get("/", serverInfoRoute);
+
+        // Handle favicon.ico requests to prevent 404 errors
+        Spark.get("/favicon.ico", (req, res) -> {
+            res.status(204); // No Content
+            return "";
+        });
+
+        // Wait for server to be fully initialized
+        Spark.awaitInitialization();
+
+        System.out.println("JavaCalc MCP Server started on http://localhost:" + port);
+        System.out.println("MCP endpoint: http://localhost:" + port + "/mcp");
+        System.out.println("Request executor: " + executor.getKind().name().toLowerCase(Locale.ROOT));
+        System.out.println("Supports both JSON-RPC and SSE/StreamableHttp transports");
+    }
+}
@@ -1,38 +1,513 @@
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.BitSet;
+
 public class Interpreter {
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    // Deeper trees would risk StackOverflowError in the recursive walkers
+    private static final int MAX_RECURSIVE_DEPTH = 1000;
+    
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+    private final Optimizer optimizer = new Optimizer();
+    private final ParseCache<ParsedExpression> cache;
+    // Set from one thread while the HTTP and batch threads interpret, so each change has to be seen at once
+    private volatile boolean optimizing = true;
+    private volatile EvaluationMode evaluationMode = EvaluationMode.TREE_WALK;
+    private volatile NumericMode numericMode = NumericMode.INT;
+    private volatile EvaluationBudget budget = EvaluationBudget.UNLIMITED;
+    private volatile Metrics metrics;
+    
+    public Interpreter() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+    
+    // A cache size of 0 disables caching for workloads where every expression is unique
+    public Interpreter(int cacheSize) {
+        this.cache = cacheSize > 0 ? new ParseCache<>(cacheSize) : null;
+    }
     
     public String interpret(String expression) {
-        if (expression == null || expression.trim().isEmpty()) {
-            throw new IllegalArgumentException("Empty expression");
-        }
-        
-        Lexer lexer = new Lexer(expression);
-        Parser parser = new Parser(lexer.tokenize());
-        ASTNode ast = parser.parse();
+        return interpretParsed(parse(expression), budget, numericMode);
+    }
+    
+    // For callers that need a different limit for one expression, such as a server honouring a per-request budget
+    public String interpret(String expression, EvaluationBudget budget) {
+        return interpretParsed(parse(expression), budget, numericMode);
+    }
+    
+    // As above, also choosing the numeric mode for this expression alone
+    public String interpret(String expression, EvaluationBudget budget, NumericMode numericMode) {
+        return interpretParsed(parse(expression), budget, numericMode);
+    }
+    
+    // Streams huge inputs straight into the parser; such inputs are one-offs, so they bypass the cache
+    public String interpret(Reader input) {
+        return interpretParsed(prepare(new Parser(new StreamingLexer(input))), budget, numericMode);
+    }
+    
+    private String interpretParsed(ParsedExpression parsed, EvaluationBudget budget, NumericMode numericMode) {
+        ASTNode ast = parsed.getAst();
         
         // Check if this is a render node
         if (ast instanceof RenderNode) {
             RenderNode renderNode = (RenderNode) ast;
-            return renderNode.getExpression().render();
+            long start = startTimer();
+            try {
+                return render(renderNode.getExpression(), parsed.getDepth());
+            } finally {
+                stopTimer(Metrics.Phase.RENDER, start);
+            }
         }
         
         // Otherwise evaluate normally and return the result as a string
-        return String.valueOf(ast.evaluate());
+        Variables variables = requireNoInputs(parsed);
+        if (numericMode == NumericMode.EXACT) {
+            return String.valueOf(evaluateExact(parsed, budget, longFrame(variables)));
+        }
+        if (numericMode == NumericMode.DOUBLE) {
+            return String.valueOf(evaluateDouble(parsed, budget, doubleFrame(variables)));
+        }
+        return String.valueOf(evaluateInt(parsed, budget, intFrame(variables)));
     }
     
-    // Keep the original method for backward compatibility
+    // Keep the original method for backward compatibility; in EXACT and DOUBLE modes a result that is not an int is an error rather than wrapped
     public int interpretAsInt(String expression) {
+        ParsedExpression parsed = parse(expression);
+        
+        if (parsed.getAst() instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot evaluate render expression as integer");
+        }
+        
+        Variables variables = requireNoInputs(parsed);
+        if (numericMode == NumericMode.EXACT) {
+            return toInt(evaluateExact(parsed, budget, longFrame(variables)));
+        }
+        if (numericMode == NumericMode.DOUBLE) {
+            return toInt(evaluateDouble(parsed, budget, doubleFrame(variables)));
+        }
+        return evaluateInt(parsed, budget, intFrame(variables));
+    }
+    
+    // Always exact, whatever the numeric mode
+    public BigInteger interpretAsBigInteger(String expression) {
+        ParsedExpression parsed = parse(expression);
+        
+        if (parsed.getAst() instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot evaluate render expression as integer");
+        }
+        
+        Variables variables = requireNoInputs(parsed);
+        return ExactEvaluator.toBigInteger(evaluateExact(parsed, budget, longFrame(variables)));
+    }
+    
+    // Always double, whatever the numeric mode
+    public double interpretAsDouble(String expression) {
+        ParsedExpression parsed = parse(expression);
+        
+        if (parsed.getAst() instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot evaluate render expression as a number");
+        }
+        
+        Variables variables = requireNoInputs(parsed);
+        return evaluateDouble(parsed, budget, doubleFrame(variables));
+    }
+    
+    /**
+     * Parses, through the cache, for callers that evaluate one expression
+     * against many frames. The frame is the caller's: it has a slot for each
+     * of getVariables(), the caller binds the inputs, and assignments in the
+     * expression write back into it. Frames can be reused freely, but not
+     * shared between threads that evaluate at the same time.
+     */
+    public ParsedExpression parse(String expression) {
         if (expression == null || expression.trim().isEmpty()) {
             throw new IllegalArgumentException("Empty expression");
         }
         
-        Lexer lexer = new Lexer(expression);
-        Parser parser = new Parser(lexer.tokenize());
-        ASTNode ast = parser.parse();
+        if (cache == null) {
+            return parseUncached(expression);
+        }
+        return cache.get(expression, this::parseUncached);
+    }
+    
+    // Int semantics with this interpreter's evaluation mode and budget, whatever its numeric mode
+    public int evaluate(ParsedExpression parsed, int[] frame) {
+        requireEvaluable(parsed, frame.length);
+        return evaluateInt(parsed, budget, frame);
+    }
+    
+    // Exact semantics with this interpreter's budget; see ExactEvaluator for what variables can hold
+    public Number evaluateExact(ParsedExpression parsed, long[] frame) {
+        requireEvaluable(parsed, frame.length);
+        return evaluateExact(parsed, budget, frame);
+    }
+    
+    // Double semantics with this interpreter's budget; the int and exact entry points above share the same parsed tree
+    public double evaluateDouble(ParsedExpression parsed, double[] frame) {
+        requireEvaluable(parsed, frame.length);
+        return evaluateDouble(parsed, budget, frame);
+    }
+    
+    /**
+     * Evaluates parsed once per row, with int semantics, for callers with
+     * many rows of bindings. columns[slot] holds the value of each input
+     * slot for every row, and results receives one value per row; entries
+     * for slots that are not inputs are ignored. A row that would throw gets
+     * its bit set in the returned bitmap and 0 in results, and the other rows
+     * still run. Like compiled expressions, batches are not metered.
+     */
+    public BitSet evaluateColumns(ParsedExpression parsed, int[][] columns, int[] results) {
+        requireIntLiterals(parsed);
+        long start = startTimer();
+        try {
+            return parsed.getColumnarEvaluator().evaluate(columns, results);
+        } finally {
+            stopTimer(Metrics.Phase.EVALUATE, start);
+        }
+    }
+    
+    // As above with exact semantics; rows whose result does not fit in a long are errors
+    public BitSet evaluateColumnsExact(ParsedExpression parsed, long[][] columns, long[] results) {
+        requireIntegerLiterals(parsed);
+        long start = startTimer();
+        try {
+            return parsed.getColumnarEvaluator().evaluateExact(columns, results);
+        } finally {
+            stopTimer(Metrics.Phase.EVALUATE, start);
+        }
+    }
+    
+    // For callers that evaluate the same formula repeatedly; the handle skips parsing entirely
+    public CompiledExpression compile(String expression) {
+        ParsedExpression parsed = parse(expression);
+        ASTNode ast = parsed.getAst();
         
         if (ast instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot compile render expression");
+        }
+        
+        Variables variables = parsed.getVariables();
+        if (numericMode == NumericMode.DOUBLE) {
+            throw new IllegalStateException("Compiled expressions return ints, so they cannot use the double numeric mode");
+        }
+        if (numericMode == NumericMode.EXACT) {
+            requireIntegerLiterals(parsed);
+            return framed(variables, frame -> evaluateExact(ast, frame));
+        }
+        requireIntLiterals(parsed);
+        if (parsed.getDepth() > MAX_RECURSIVE_DEPTH) {
+            return framed(variables, frame -> IterativeTreeWalker.evaluate(ast, frame, null));
+        }
+        return framed(variables, compiler.compile(ast));
+    }
+    
+    // Null when caching is disabled
+    public ParseCache<ParsedExpression> getCache() {
+        return cache;
+    }
+    
+    public boolean isOptimizing() {
+        return optimizing;
+    }
+    
+    public EvaluationMode getEvaluationMode() {
+        return evaluationMode;
+    }
+    
+    public void setEvaluationMode(EvaluationMode evaluationMode) {
+        this.evaluationMode = evaluationMode;
+    }
+    
+    public NumericMode getNumericMode() {
+        return numericMode;
+    }
+    
+    // The default for every call that does not name its own
+    public void setNumericMode(NumericMode numericMode) {
+        this.numericMode = numericMode;
+    }
+    
+    public EvaluationBudget getBudget() {
+        return budget;
+    }
+    
+    // Applies to every evaluation that is not given its own budget; compiled expressions are never metered
+    public void setBudget(EvaluationBudget budget) {
+        this.budget = budget;
+    }
+    
+    // Null when no metrics are kept
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    
+    // Times lexing, parsing, optimizing, evaluating and rendering; with null (the default) nothing is timed
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    // Cached trees were built under the old setting, so they have to go, along with any still being parsed under it
+    public void setOptimizing(boolean optimizing) {
+        this.optimizing = optimizing;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+    
+    // Shows the tree as written, plus the tree that actually runs when the optimizer rewrote it
+    private String render(ASTNode expression, int depth) {
+        String rendered = expression.render();
+        if (!optimizing || depth > MAX_RECURSIVE_DEPTH) {
+            return rendered;
+        }
+        ASTNode optimized = optimizer.optimize(expression);
+        if (optimized == expression) {
+            return rendered;
+        }
+        return rendered + "Optimized:\n" + optimized.render();
+    }
+    
+    private int evaluateInt(ParsedExpression parsed, EvaluationBudget budget, int[] frame) {
+        requireIntLiterals(parsed);
+        Metrics metrics = this.metrics;
+        if (metrics == null) {
+            return evaluateUntimed(parsed, budget, frame);
+        }
+        long start = System.nanoTime();
+        try {
+            return evaluateUntimed(parsed, budget, frame);
+        } finally {
+            metrics.record(Metrics.Phase.EVALUATE, System.nanoTime() - start);
+        }
+    }
+    
+    private int evaluateUntimed(ParsedExpression parsed, EvaluationBudget budget, int[] frame) {
+        if (!budget.isUnlimited()) {
+            return evaluateMetered(parsed, budget.start(), frame);
+        }
+        switch (evaluationMode) {
+            case STACK_VM:
+                return parsed.getProgram().execute(frame, null);
+            case ITERATIVE:
+                return IterativeTreeWalker.evaluate(parsed.getAst(), frame, null);
+            case PARALLEL:
+                if (ParallelEvaluator.isWorthSplitting(parsed.getAst(), parsed.getVariables())) {
+                    return ParallelEvaluator.evaluate(parsed.getAst(), frame);
+                }
+                return evaluateSequentially(parsed, frame);
+            case TREE_WALK:
+            default:
+                return evaluateSequentially(parsed, frame);
+        }
+    }
+    
+    private static int evaluateSequentially(ParsedExpression parsed, int[] frame) {
+        if (parsed.getDepth() > MAX_RECURSIVE_DEPTH) {
+            return IterativeTreeWalker.evaluate(parsed.getAst(), frame, null);
+        }
+        return parsed.getAst().evaluate(frame);
+    }
+    
+    private Number evaluateExact(ParsedExpression parsed, EvaluationBudget budget, long[] frame) {
+        requireIntegerLiterals(parsed);
+        long start = startTimer();
+        try {
+            return ExactEvaluator.evaluate(parsed.getAst(), frame, budget.isUnlimited() ? null : budget.start());
+        } finally {
+            stopTimer(Metrics.Phase.EVALUATE, start);
+        }
+    }
+    
+    /**
+     * Evaluation modes are about walking int trees, so double evaluation
+     * always walks the tree itself: recursively through evaluateDouble(),
+     * or iteratively once the tree is too deep for that or ITERATIVE is
+     * chosen. Both stay on primitive doubles throughout.
+     */
+    private double evaluateDouble(ParsedExpression parsed, EvaluationBudget budget, double[] frame) {
+        long start = startTimer();
+        try {
+            EvaluationBudget.Meter meter = budget.isUnlimited() ? null : budget.start();
+            ASTNode ast = parsed.getAst();
+            if (evaluationMode == EvaluationMode.ITERATIVE || parsed.getDepth() > MAX_RECURSIVE_DEPTH) {
+                return IterativeTreeWalker.evaluateDouble(ast, frame, meter);
+            }
+            return meter == null ? ast.evaluateDouble(frame) : ast.evaluateDouble(frame, meter);
+        } finally {
+            stopTimer(Metrics.Phase.EVALUATE, start);
+        }
+    }
+    
+    // Compiled handles take int frames, so exact mode widens a copy and narrows the assignments back
+    private static int evaluateExact(ASTNode ast, int[] frame) {
+        long[] wide = new long[frame.length];
+        for (int slot = 0; slot < frame.length; slot++) {
+            wide[slot] = frame[slot];
+        }
+        int result = toInt(ExactEvaluator.evaluate(ast, wide, null));
+        for (int slot = 0; slot < frame.length; slot++) {
+            frame[slot] = toInt(wide[slot]);
+        }
+        return result;
+    }
+    
+    // The string entry points have nowhere to take inputs from, so only self-contained expressions run there
+    private static Variables requireNoInputs(ParsedExpression parsed) {
+        Variables variables = parsed.getVariables();
+        String input = variables.firstInput();
+        if (input != null) {
+            throw undefined(input);
+        }
+        return variables;
+    }
+    
+    private static void requireEvaluable(ParsedExpression parsed, int frameLength) {
+        if (parsed.getAst() instanceof RenderNode) {
             throw new IllegalArgumentException("Cannot evaluate render expression as integer");
         }
+        requireFrame(parsed.getVariables(), frameLength);
+    }
+    
+    private static void requireFrame(Variables variables, int frameLength) {
+        if (frameLength < variables.size()) {
+            throw new IllegalArgumentException("Frame has " + frameLength + " slots, the expression needs "
+                    + variables.size() + " for " + variables);
+        }
+    }
+    
+    private static IllegalArgumentException undefined(String name) {
+        return new IllegalArgumentException("Undefined variable: " + name);
+    }
+    
+    private static int[] intFrame(Variables variables) {
+        return variables.size() == 0 ? ASTNode.NO_VARIABLES : new int[variables.size()];
+    }
+    
+    private static long[] longFrame(Variables variables) {
+        return variables.size() == 0 ? ExactEvaluator.NO_VARIABLES : new long[variables.size()];
+    }
+    
+    private static double[] doubleFrame(Variables variables) {
+        return variables.size() == 0 ? ASTNode.NO_DOUBLE_VARIABLES : new double[variables.size()];
+    }
+    
+    private static CompiledExpression framed(Variables variables, CompiledExpression inner) {
+        return variables.size() == 0 ? inner : new FramedExpression(variables, inner);
+    }
+    
+    // The lexer accepts literals of any size, but the int evaluators cannot hold them
+    private static void requireIntLiterals(ParsedExpression parsed) {
+        requireIntegerLiterals(parsed);
+        if (parsed.getOversizedLiteral() != null) {
+            throw new NumberFormatException("Number too large: " + parsed.getOversizedLiteral());
+        }
+    }
+    
+    // Decimal literals only mean something to double evaluation
+    private static void requireIntegerLiterals(ParsedExpression parsed) {
+        if (parsed.getDecimalLiteral() != null) {
+            throw new NumberFormatException("Not an integer: " + parsed.getDecimalLiteral());
+        }
+    }
+    
+    private static int toInt(Number value) {
+        if (value instanceof Long) {
+            return toInt(value.longValue());
+        }
+        throw new ArithmeticException("Result does not fit in an int: " + value);
+    }
+    
+    private static int toInt(long value) {
+        if ((int) value != value) {
+            throw new ArithmeticException("Result does not fit in an int: " + value);
+        }
+        return (int) value;
+    }
+    
+    // Fractions, NaN and infinities are not ints either
+    private static int toInt(double value) {
+        if ((int) value != value) {
+            throw new ArithmeticException("Result does not fit in an int: " + value);
+        }
+        return (int) value;
+    }
+    
+    // Kept apart from evaluate so the unlimited paths pay nothing for metering
+    private int evaluateMetered(ParsedExpression parsed, EvaluationBudget.Meter meter, int[] frame) {
+        switch (evaluationMode) {
+            case STACK_VM:
+                return parsed.getProgram().execute(frame, meter);
+            case ITERATIVE:
+                return IterativeTreeWalker.evaluate(parsed.getAst(), frame, meter);
+            case TREE_WALK:
+            default:
+                if (parsed.getDepth() > MAX_RECURSIVE_DEPTH) {
+                    return IterativeTreeWalker.evaluate(parsed.getAst(), frame, meter);
+                }
+                return parsed.getAst().evaluate(frame, meter);
+        }
+    }
+    
+    private ParsedExpression parseUncached(String expression) {
+        Lexer lexer = new Lexer(expression);
+        long start = startTimer();
+        TokenBuffer tokens = lexer.tokenizePacked();
+        stopTimer(Metrics.Phase.LEX, start);
+        return prepare(new Parser(tokens));
+    }
+    
+    private ParsedExpression prepare(Parser parser) {
+        long start = startTimer();
+        ASTNode ast = parser.parse();
+        stopTimer(Metrics.Phase.PARSE, start);
+        
+        // Render keeps the tree as written; it shows the optimized form alongside.
+        // The optimizer recurses, so trees too deep for it run as written
+        if (optimizing && !(ast instanceof RenderNode) && parser.getDepth() <= MAX_RECURSIVE_DEPTH) {
+            start = startTimer();
+            ast = optimizer.optimize(ast);
+            stopTimer(Metrics.Phase.OPTIMIZE, start);
+        }
+        return new ParsedExpression(ast, parser.getDepth(), parser.getOversizedLiteral(), parser.getDecimalLiteral(),
+                parser.getVariables());
+    }
+    
+    // Reads the clock only when metrics are kept
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+    
+    // A timer started while metrics were off stays off, even if they were turned on since
+    private void stopTimer(Metrics.Phase phase, long start) {
+        Metrics metrics = this.metrics;
+        if (metrics != null && start != 0) {
+            metrics.record(phase, System.nanoTime() - start);
+        }
+    }
+    
+    // Checks frames up front, and gives evaluate() a scratch frame when no variable is an input
+    private static final class FramedExpression implements CompiledExpression {
+        private final Variables variables;
+        private final CompiledExpression inner;
         
-        return ast.evaluate();
+        FramedExpression(Variables variables, CompiledExpression inner) {
+            this.variables = variables;
+            this.inner = inner;
+        }
+        
+        @Override
+        public int evaluate() {
+            String input = variables.firstInput();
+            if (input != null) {
+                throw undefined(input);
+            }
+            return inner.evaluate(new int[variables.size()]);
+        }
+        
+        @Override
+        public int evaluate(int[] frame) {
+            requireFrame(variables, frame.length);
+            return inner.evaluate(frame);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+import java.util.Arrays;
+
+/**
+ * Evaluates and renders ASTs with explicit stacks instead of recursion.
+ *
+ * ASTNode.evaluate() recurses once per level, which is the fastest way to walk
+ * ordinary trees but throws StackOverflowError on machine-generated input that
+ * nests tens of thousands of levels deep. These walks use heap memory linear in
+ * the tree size and have no depth limit; results, errors and rendered text are
+ * identical to the recursive versions.
+ */
+public final class IterativeTreeWalker {
+
+    private IterativeTreeWalker() {
+    }
+
+    public static int evaluate(ASTNode root) {
+        return evaluate(root, null);
+    }
+
+    public static int evaluate(ASTNode root, EvaluationBudget.Meter meter) {
+        return evaluate(root, ASTNode.NO_VARIABLES, meter);
+    }
+
+    // Charges meter once per node when it is not null
+    public static int evaluate(ASTNode root, int[] frame, EvaluationBudget.Meter meter) {
+        if (root instanceof RenderNode) {
+            throw new UnsupportedOperationException("RenderNode cannot be evaluated to an integer");
+        }
+
+        // Each node is visited twice: once to schedule its children, once to combine their values
+        ASTNode[] nodes = new ASTNode[16];
+        boolean[] expanded = new boolean[16];
+        int top = 0;
+        int[] values = new int[16];
+        int valueTop = 0;
+
+        nodes[top++] = root;
+        while (top > 0) {
+            ASTNode node = nodes[--top];
+            boolean ready = expanded[top];
+            boolean leaf = node instanceof NumberNode || node instanceof VariableNode;
+            if (meter != null && (ready || leaf)) {
+                meter.charge();
+            }
+
+            if (leaf) {
+                if (valueTop == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[valueTop++] = node instanceof NumberNode ? ((NumberNode) node).getValue() : read(frame, (VariableNode) node);
+            } else if (ready) {
+                if (node instanceof BinaryOpNode) {
+                    int right = values[--valueTop];
+                    int left = values[valueTop - 1];
+                    values[valueTop - 1] = BinaryOpNode.apply(((BinaryOpNode) node).getOperator(), left, right);
+                } else if (node instanceof UnaryOpNode) {
+                    int operand = values[valueTop - 1];
+                    values[valueTop - 1] = UnaryOpNode.apply(((UnaryOpNode) node).getOperator(), operand);
+                } else {
+                    AssignNode assign = (AssignNode) node;
+                    if (assign.getSlot() >= frame.length) {
+                        throw VariableNode.unbound(assign.getName());
+                    }
+                    frame[assign.getSlot()] = values[valueTop - 1];
+                }
+            } else if (node instanceof BinaryOpNode || node instanceof UnaryOpNode || node instanceof AssignNode) {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+                nodes[top] = node;
+                expanded[top++] = true;
+                if (node instanceof BinaryOpNode) {
+                    BinaryOpNode binary = (BinaryOpNode) node;
+                    // Right is pushed first so the left operand is evaluated (and fails) first
+                    nodes[top] = binary.getRight();
+                    expanded[top++] = false;
+                    nodes[top] = binary.getLeft();
+                    expanded[top++] = false;
+                } else if (node instanceof UnaryOpNode) {
+                    nodes[top] = ((UnaryOpNode) node).getOperand();
+                    expanded[top++] = false;
+                } else {
+                    nodes[top] = ((AssignNode) node).getValue();
+                    expanded[top++] = false;
+                }
+            } else {
+                // Unknown node types fall back to their own evaluation
+                if (valueTop == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[valueTop++] = meter == null ? node.evaluate(frame) : node.evaluate(frame, meter);
+            }
+        }
+
+        return values[0];
+    }
+
+    private static int read(int[] frame, VariableNode variable) {
+        if (variable.getSlot() >= frame.length) {
+            throw VariableNode.unbound(variable.getName());
+        }
+        return frame[variable.getSlot()];
+    }
+
+    // ASTNode.evaluateDouble() without recursion, the same walk as evaluate() on a double stack
+    public static double evaluateDouble(ASTNode root, double[] frame, EvaluationBudget.Meter meter) {
+        if (root instanceof RenderNode) {
+            throw new UnsupportedOperationException("RenderNode cannot be evaluated to a number");
+        }
+
+        ASTNode[] nodes = new ASTNode[16];
+        boolean[] expanded = new boolean[16];
+        int top = 0;
+        double[] values = new double[16];
+        int valueTop = 0;
+
+        nodes[top++] = root;
+        while (top > 0) {
+            ASTNode node = nodes[--top];
+            boolean ready = expanded[top];
+            boolean leaf = node instanceof NumberNode || node instanceof VariableNode;
+            if (meter != null && (ready || leaf)) {
+                meter.charge();
+            }
+
+            if (leaf) {
+                if (valueTop == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[valueTop++] = node instanceof NumberNode ? ((NumberNode) node).getValue() : read(frame, (VariableNode) node);
+            } else if (ready) {
+                if (node instanceof BinaryOpNode) {
+                    double right = values[--valueTop];
+                    double left = values[valueTop - 1];
+                    values[valueTop - 1] = BinaryOpNode.apply(((BinaryOpNode) node).getOperator(), left, right);
+                } else if (node instanceof UnaryOpNode) {
+                    double operand = values[valueTop - 1];
+                    values[valueTop - 1] = UnaryOpNode.apply(((UnaryOpNode) node).getOperator(), operand);
+                } else {
+                    AssignNode assign = (AssignNode) node;
+                    if (assign.getSlot() >= frame.length) {
+                        throw VariableNode.unbound(assign.getName());
+                    }
+                    frame[assign.getSlot()] = values[valueTop - 1];
+                }
+            } else if (node instanceof BinaryOpNode || node instanceof UnaryOpNode || node instanceof AssignNode) {
+                if (top + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+                nodes[top] = node;
+                expanded[top++] = true;
+                if (node instanceof BinaryOpNode) {
+                    BinaryOpNode binary = (BinaryOpNode) node;
+                    nodes[top] = binary.getRight();
+                    expanded[top++] = false;
+                    nodes[top] = binary.getLeft();
+                    expanded[top++] = false;
+                } else if (node instanceof UnaryOpNode) {
+                    nodes[top] = ((UnaryOpNode) node).getOperand();
+                    expanded[top++] = false;
+                } else {
+                    nodes[top] = ((AssignNode) node).getValue();
+                    expanded[top++] = false;
+                }
+            } else {
+                // Decimal and big literals, and unknown node types, evaluate themselves
+                if (valueTop == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[valueTop++] = meter == null ? node.evaluateDouble(frame) : node.evaluateDouble(frame, meter);
+            }
+        }
+
+        return values[0];
+    }
+
+    private static double read(double[] frame, VariableNode variable) {
+        if (variable.getSlot() >= frame.length) {
+            throw VariableNode.unbound(variable.getName());
+        }
+        return frame[variable.getSlot()];
+    }
+
+    public static String render(ASTNode root) {
+        StringBuilder sb = new StringBuilder();
+        ASTNode[] nodes = new ASTNode[16];
+        String[] prefixes = new String[16];
+        boolean[] lasts = new boolean[16];
+        int top = 0;
+
+        nodes[top] = root;
+        prefixes[top] = "";
+        lasts[top++] = true;
+        while (top > 0) {
+            top--;
+            ASTNode node = nodes[top];
+            String prefix = prefixes[top];
+            boolean isLast = lasts[top];
+            nodes[top] = null;
+
+            if (top + 2 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+                lasts = Arrays.copyOf(lasts, lasts.length * 2);
+            }
+
+            if (node instanceof RenderNode) {
+                nodes[top] = ((RenderNode) node).getExpression();
+                prefixes[top] = prefix;
+                lasts[top++] = isLast;
+                continue;
+            }
+
+            String connector = isLast ? "└── " : "├── ";
+            String childPrefix = prefix + (isLast ? "    " : "│   ");
+
+            if (node instanceof NumberNode) {
+                sb.append(prefix).append(connector).append("Number(").append(((NumberNode) node).getValue()).append(")\n");
+            } else if (node instanceof UnaryOpNode) {
+                UnaryOpNode unary = (UnaryOpNode) node;
+                sb.append(prefix).append(connector).append("UnaryOp(").append(unary.getOperator()).append(")\n");
+                nodes[top] = unary.getOperand();
+                prefixes[top] = childPrefix;
+                lasts[top++] = true;
+            } else if (node instanceof VariableNode) {
+                sb.append(prefix).append(connector).append("Variable(").append(((VariableNode) node).getName()).append(")\n");
+            } else if (node instanceof AssignNode) {
+                AssignNode assign = (AssignNode) node;
+                sb.append(prefix).append(connector).append("Assign(").append(assign.getName()).append(")\n");
+                nodes[top] = assign.getValue();
+                prefixes[top] = childPrefix;
+                lasts[top++] = true;
+            } else if (node instanceof BinaryOpNode) {
+                BinaryOpNode binary = (BinaryOpNode) node;
+                sb.append(prefix).append(connector).append("BinaryOp(").append(binary.getOperator()).append(")\n");
+                nodes[top] = binary.getRight();
+                prefixes[top] = childPrefix;
+                lasts[top++] = true;
+                nodes[top] = binary.getLeft();
+                prefixes[top] = childPrefix;
+                lasts[top++] = false;
+            } else {
+                sb.append(node.renderTree(prefix, isLast));
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -1,7 +1,8 @@
-import java.util.ArrayList;
 import java.util.List;
 
 public class Lexer {
+    private static final String RENDER = "render";
+    
     private final String input;
     private int position;
     
@@ -10,8 +11,14 @@ public class Lexer {
         this.position = 0;
     }
     
+    // Materializes Token objects; the parser itself reads the packed form from tokenizePacked()
     public List<Token> tokenize() {
-        List<Token> tokens = new ArrayList<>();
+        return tokenizePacked().toTokens();
+    }
+    
+    TokenBuffer tokenizePacked() {
+        // Short inputs get an exact-ish fit; long ones grow by doubling rather than reserving for the worst case
+        TokenBuffer tokens = new TokenBuffer(input, Math.min(input.length() / 2 + 1, 1024));
         
         while (position < input.length()) {
             char current = input.charAt(position);
@@ -21,60 +28,93 @@ public class Lexer {
                 continue;
             }
             
+            int start = position;
             if (Character.isDigit(current)) {
-                tokens.add(readNumber());
-            } else if (Character.isLetter(current)) {
-                tokens.add(readKeyword());
+                int value = readNumber();
+                if (position < input.length() && input.charAt(position) == '.') {
+                    readFraction();
+                    tokens.add(TokenBuffer.DECIMAL, start, position, 0);
+                } else if (value < 0) {
+                    tokens.add(TokenBuffer.BIG_NUMBER, start, position, 0);
+                } else {
+                    tokens.add(TokenBuffer.NUMBER, start, position, value);
+                }
+                continue;
+            } else if (isIdentifierStart(current)) {
+                int type = readWord();
+                tokens.add(type, start, position, 0);
+                continue;
             } else if (current == '!') {
-                tokens.add(new Token(TokenType.FACTORIAL, "!"));
-                position++;
+                tokens.add(TokenBuffer.FACTORIAL, start, start + 1, 0);
             } else if (isOperator(current)) {
-                tokens.add(new Token(TokenType.OPERATOR, String.valueOf(current)));
-                position++;
+                tokens.add(TokenBuffer.OPERATOR, start, start + 1, current);
             } else if (current == '(') {
-                tokens.add(new Token(TokenType.LPAREN, "("));
-                position++;
+                tokens.add(TokenBuffer.LPAREN, start, start + 1, 0);
             } else if (current == ')') {
-                tokens.add(new Token(TokenType.RPAREN, ")"));
-                position++;
+                tokens.add(TokenBuffer.RPAREN, start, start + 1, 0);
             } else {
                 throw new IllegalArgumentException("Unexpected character: " + current);
             }
+            position++;
         }
         
-        tokens.add(new Token(TokenType.EOF, ""));
+        tokens.add(TokenBuffer.EOF, position, position, 0);
         return tokens;
     }
     
-    private Token readNumber() {
-        StringBuilder number = new StringBuilder();
+    // Accumulates digit by digit so no String is cut out just to be handed to Integer.parseInt.
+    // Returns -1 for a literal too large for an int, whose digits the parser reads from the source
+    private int readNumber() {
+        int value = 0;
         
         while (position < input.length() && Character.isDigit(input.charAt(position))) {
-            number.append(input.charAt(position));
+            int digit = Character.digit(input.charAt(position), 10);
+            if (value >= 0) {
+                value = value > (Integer.MAX_VALUE - digit) / 10 ? -1 : value * 10 + digit;
+            }
             position++;
         }
         
-        return new Token(TokenType.NUMBER, number.toString());
+        return value;
     }
     
-    private Token readKeyword() {
-        StringBuilder keyword = new StringBuilder();
+    // The point and at least one digit after it; like an operator, a lone point is an unexpected character
+    private void readFraction() {
+        position++;
+        if (position == input.length() || !Character.isDigit(input.charAt(position))) {
+            throw new IllegalArgumentException("Unexpected character: .");
+        }
+        while (position < input.length() && Character.isDigit(input.charAt(position))) {
+            position++;
+        }
+    }
+    
+    // The render keyword, or an identifier whose name the parser reads from the source
+    private int readWord() {
+        int start = position;
         
-        while (position < input.length() && Character.isLetter(input.charAt(position))) {
-            keyword.append(input.charAt(position));
+        while (position < input.length() && isIdentifierPart(input.charAt(position))) {
             position++;
         }
         
-        String word = keyword.toString();
-        if (word.equals("render")) {
-            return new Token(TokenType.RENDER, word);
-        } else {
-            throw new IllegalArgumentException("Unknown keyword: " + word);
+        int length = position - start;
+        if (length == RENDER.length() && input.regionMatches(start, RENDER, 0, length)) {
+            return TokenBuffer.RENDER;
         }
+        return TokenBuffer.IDENTIFIER;
+    }
+    
+    // Shared with StreamingLexer so both accept the same names
+    static boolean isIdentifierStart(int c) {
+        return Character.isLetter(c) || c == '_';
+    }
+    
+    static boolean isIdentifierPart(int c) {
+        return Character.isLetterOrDigit(c) || c == '_';
     }
     
     private boolean isOperator(char c) {
-        return c == '+' || c == '-' || c == '*' || c == '/' || c == '%' || c == '^';
+        return Operator.binary(c) != null;
     }
 }
 
@@ -85,7 +125,13 @@ enum TokenType {
     LPAREN,
     RPAREN,
     RENDER,
-    EOF
+    EOF,
+    // A number too large for an int
+    BIG_NUMBER,
+    // A variable name
+    IDENTIFIER,
+    // A number with a decimal point
+    DECIMAL
 }
 
 class Token {
@@ -0,0 +1,211 @@
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The calculator's MCP method handling, independent of how messages arrive.
+ *
+ * Every transport hands over raw request bytes and an output stream. Single
+ * requests take the streaming path in StreamingMcpHandler. Batches come back
+ * here as trees and fan out through BatchExecutor. Both paths build their
+ * tool results with calculate(), so the answers are the same either way.
+ */
+public final class McpDispatcher {
+    private final ObjectMapper mapper;
+    private final Interpreter calculator;
+    private final ResponseTemplates templates;
+    private final BatchExecutor batches;
+    private final StreamingMcpHandler streaming;
+
+    public McpDispatcher(ObjectMapper mapper, Interpreter calculator, ResponseTemplates templates, BatchExecutor batches) {
+        this.mapper = mapper;
+        this.calculator = calculator;
+        this.templates = templates;
+        this.batches = batches;
+        this.streaming = new StreamingMcpHandler(mapper, calculator, templates, this::dispatch);
+    }
+
+    // The calculator server as configured by the MCP_* environment variables
+    public static McpDispatcher fromEnvironment() {
+        ObjectMapper mapper = new ObjectMapper();
+        Interpreter calculator = new Interpreter();
+        calculator.setBudget(EvaluationBudget.fromEnvironment());
+        calculator.setNumericMode(NumericMode.fromEnvironment());
+        calculator.setMetrics(new Metrics());
+        return new McpDispatcher(mapper, calculator, ResponseTemplates.standard(mapper), BatchExecutor.fromEnvironment(mapper));
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    // The calculator's metrics, which the handlers add decode, encode, method and tool timings to; null when off
+    public Metrics getMetrics() {
+        return calculator.getMetrics();
+    }
+
+    /**
+     * Answers one message, a single request or a batch, by writing to out.
+     *
+     * @return false when nothing was written because the message held only
+     *         notifications
+     */
+    public boolean handle(byte[] body, OutputStream out, boolean sse) throws IOException {
+        return streaming.handle(body, 0, body.length, out, sse);
+    }
+
+    public boolean handle(byte[] body, int offset, int length, OutputStream out, boolean sse) throws IOException {
+        return streaming.handle(body, offset, length, out, sse);
+    }
+
+    // Lets a transport act on the method, such as opening a session on initialize, before the request is answered
+    public String method(byte[] body) {
+        return streaming.method(body);
+    }
+
+    // For errors raised by the transport itself, such as shedding load
+    public void writeError(OutputStream out, boolean sse, int code, String message) throws IOException {
+        streaming.writeError(out, sse, code, message);
+    }
+
+    // Tree form, used for batches; null means there is nothing to send back
+    public JsonNode dispatch(JsonNode request) {
+        if (request.isArray()) {
+            return batches.execute((ArrayNode) request, this::handleRequest);
+        }
+        return handleRequest(request);
+    }
+
+    JsonNode handleRequest(JsonNode request) {
+        Metrics metrics = calculator.getMetrics();
+        if (metrics == null) {
+            return answer(request);
+        }
+        long start = System.nanoTime();
+        JsonNode response = answer(request);
+        metrics.recordMethod(request.has("method") ? request.get("method").asText() : StreamingMcpHandler.INVALID,
+                System.nanoTime() - start, response.has("error") || response.path("result").has("error"));
+        return response;
+    }
+
+    private JsonNode answer(JsonNode request) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+
+        // Copy request ID if present
+        if (request.has("id")) {
+            response.set("id", request.get("id"));
+        }
+
+        // Check for method
+        if (!request.has("method")) {
+            response.set("error", createError(-32600, "Invalid Request: missing method"));
+            return response;
+        }
+
+        String method = request.get("method").asText();
+
+        // Static results are spliced in as pre-serialized bytes
+        SerializableString cached = templates.result(method);
+        if (cached != null) {
+            response.putRawValue("result", new RawValue(cached));
+            return response;
+        }
+
+        switch (method) {
+            case "tools/call":
+                response.set("result", handleToolCall(request.get("params")));
+                break;
+            default:
+                response.set("error", createError(-32601, "Method not found: " + method));
+        }
+
+        return response;
+    }
+
+    private JsonNode handleToolCall(JsonNode params) {
+        if (params == null || !params.has("name")) {
+            ObjectNode error = mapper.createObjectNode();
+            error.set("error", createError(-32602, "Invalid params: missing tool name"));
+            return error;
+        }
+
+        String toolName = params.get("name").asText();
+
+        if (!"calculate".equals(toolName)) {
+            ObjectNode error = mapper.createObjectNode();
+            error.set("error", createError(-32602, "Unknown tool: " + toolName));
+            return error;
+        }
+
+        JsonNode arguments = params.get("arguments");
+        ToolResult outcome = arguments == null || !arguments.has("expression")
+                ? calculate(calculator, null, 0, 0, null)
+                : calculate(calculator, arguments.get("expression").asText(),
+                        arguments.path("maxOperations").asLong(0), arguments.path("timeoutMs").asLong(0),
+                        arguments.has("numeric") ? arguments.get("numeric").asText() : null);
+
+        ObjectNode result = mapper.createObjectNode();
+        ArrayNode content = mapper.createArrayNode();
+        ObjectNode textContent = mapper.createObjectNode();
+        textContent.put("type", "text");
+        textContent.put("text", outcome.text);
+        content.add(textContent);
+        result.set("content", content);
+        result.put("isError", outcome.isError);
+        return result;
+    }
+
+    private ObjectNode createError(int code, String message) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("code", code);
+        error.put("message", message);
+        return error;
+    }
+
+    /**
+     * Runs the calculate tool. A null expression means the argument was
+     * missing. The request's limits can tighten the calculator's budget but
+     * never loosen it. A null numeric mode means the calculator's own.
+     */
+    static ToolResult calculate(Interpreter calculator, String expression, long maxOperations, long timeoutMs, String numeric) {
+        Metrics metrics = calculator.getMetrics();
+        if (metrics == null) {
+            return calculateUntimed(calculator, expression, maxOperations, timeoutMs, numeric);
+        }
+        long start = System.nanoTime();
+        ToolResult result = calculateUntimed(calculator, expression, maxOperations, timeoutMs, numeric);
+        metrics.recordTool("calculate", System.nanoTime() - start, result.isError);
+        return result;
+    }
+
+    private static ToolResult calculateUntimed(Interpreter calculator, String expression, long maxOperations, long timeoutMs,
+                                               String numeric) {
+        try {
+            if (expression == null) {
+                throw new IllegalArgumentException("Missing expression argument");
+            }
+            EvaluationBudget budget = calculator.getBudget().tighten(EvaluationBudget.of(maxOperations, timeoutMs));
+            NumericMode mode = numeric == null ? calculator.getNumericMode() : NumericMode.parse(numeric);
+            return new ToolResult(calculator.interpret(expression, budget, mode), false);
+        } catch (Exception e) {
+            return new ToolResult("Error evaluating expression: " + e.getMessage(), true);
+        }
+    }
+
+    static final class ToolResult {
+        final String text;
+        final boolean isError;
+
+        ToolResult(String text, boolean isError) {
+            this.text = text;
+            this.isError = isError;
+        }
+    }
+}
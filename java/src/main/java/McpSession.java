@@ -0,0 +1,166 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.function.LongSupplier;
+
+/**
+ * One Streamable HTTP session, identified to the client by Mcp-Session-Id.
+ *
+ * A session owns at most one server-to-client event stream, opened with
+ * GET /mcp. Every message sent on the session gets the next event id and is
+ * kept in a short replay buffer. A client that loses its stream can reopen it
+ * with Last-Event-ID and receive whatever it missed, as long as the buffer
+ * still holds it.
+ *
+ * Messages are numbered and written under the session's lock, so they reach
+ * the stream in id order whichever request thread produced them.
+ */
+public final class McpSession {
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Where a session's events go. Writes must not block: an implementation
+     * queues what it cannot send yet, and reports a dead or hopelessly
+     * backed-up client by returning false.
+     */
+    interface EventStream {
+        boolean write(byte[] frame);
+
+        void close();
+    }
+
+    private final String id;
+    private final int replayCapacity;
+    private final LongSupplier clock;
+
+    // Guarded by this
+    private final ArrayDeque<Event> replay = new ArrayDeque<>();
+    private long nextEventId = 1;
+    private EventStream stream;
+
+    private volatile long lastActiveNanos;
+
+    McpSession(String id, int replayCapacity, LongSupplier clock) {
+        this.id = id;
+        this.replayCapacity = replayCapacity;
+        this.clock = clock;
+        this.lastActiveNanos = clock.getAsLong();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized boolean hasStream() {
+        return stream != null;
+    }
+
+    /**
+     * Sends one JSON-RPC message as the next event.
+     *
+     * @return the event id; the event is kept for replay even when no
+     *         stream is open to receive it now
+     */
+    public synchronized long send(byte[] json) {
+        long eventId = nextEventId++;
+        byte[] frame = frame(eventId, json);
+        replay.addLast(new Event(eventId, frame));
+        if (replay.size() > replayCapacity) {
+            replay.removeFirst();
+        }
+        if (stream != null && !stream.write(frame)) {
+            dropStream();
+        }
+        return eventId;
+    }
+
+    /**
+     * Makes stream the session's event stream, closing any earlier one, and
+     * replays the buffered events after lastEventId. A null or unreadable
+     * lastEventId means a fresh stream, which gets no replay.
+     */
+    synchronized void attach(EventStream next, String lastEventId) {
+        if (stream != null) {
+            stream.close();
+        }
+        stream = next;
+        long after = parseEventId(lastEventId);
+        if (after < 0) {
+            return;
+        }
+        for (Event event : replay) {
+            if (event.id > after && !next.write(event.frame)) {
+                dropStream();
+                return;
+            }
+        }
+    }
+
+    // Called by a stream that has ended on its own, such as when the client disconnects
+    synchronized void detach(EventStream ended) {
+        if (stream == ended) {
+            stream = null;
+            // The idle timeout runs from here, giving the client time to reconnect and resume
+            touch();
+        }
+    }
+
+    // Keeps proxies from timing out an idle stream; comments carry no event id
+    synchronized void heartbeat() {
+        if (stream != null && !stream.write(HEARTBEAT)) {
+            dropStream();
+        }
+    }
+
+    synchronized void close() {
+        if (stream != null) {
+            dropStream();
+        }
+    }
+
+    void touch() {
+        lastActiveNanos = clock.getAsLong();
+    }
+
+    // A session with an open stream is never idle; one without is idle once nothing has used it for timeoutNanos
+    synchronized boolean isIdle(long timeoutNanos) {
+        return stream == null && clock.getAsLong() - lastActiveNanos > timeoutNanos;
+    }
+
+    private void dropStream() {
+        EventStream dropped = stream;
+        stream = null;
+        touch();
+        dropped.close();
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] frame(long eventId, byte[] json) {
+        byte[] head = ("id: " + eventId + "\ndata: ").getBytes(StandardCharsets.US_ASCII);
+        byte[] frame = new byte[head.length + json.length + 2];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        System.arraycopy(json, 0, frame, head.length, json.length);
+        frame[frame.length - 2] = '\n';
+        frame[frame.length - 1] = '\n';
+        return frame;
+    }
+
+    private static final class Event {
+        final long id;
+        final byte[] frame;
+
+        Event(long id, byte[] frame) {
+            this.id = id;
+            this.frame = frame;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+import java.io.IOException;
+
+/**
+ * A way of carrying MCP messages to and from the dispatcher. Transports own
+ * the framing and nothing else, so every transport answers identically.
+ */
+public interface McpTransport {
+    // Returns once the transport is ready (HTTP) or once its input is exhausted (stdio)
+    void serve(McpDispatcher dispatcher) throws IOException;
+}
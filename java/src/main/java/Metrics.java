@@ -0,0 +1,172 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time goes in the calculator and its MCP server: one latency
+ * histogram per phase, plus call counts, error counts and latency per
+ * JSON-RPC method and per tool. /metrics serves them in the Prometheus text
+ * format.
+ *
+ * Method and tool names come from clients, so only the first MAX_LABELS of
+ * each get their own series; the rest are counted under "other".
+ */
+public final class Metrics {
+    public enum Phase {
+        // Reading the JSON-RPC request
+        DECODE,
+        // Lexer.tokenizePacked; with a Reader the lexer runs inside PARSE
+        LEX,
+        PARSE,
+        OPTIMIZE,
+        EVALUATE,
+        RENDER,
+        // Writing the JSON-RPC response
+        ENCODE
+    }
+
+    static final int MAX_LABELS = 64;
+    static final String OTHER = "other";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    private final Map<String, Calls> methods = new ConcurrentHashMap<>();
+    private final Map<String, Calls> tools = new ConcurrentHashMap<>();
+
+    public Metrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    // One JSON-RPC request; error means it was answered with a JSON-RPC error
+    public void recordMethod(String method, long nanos, boolean error) {
+        calls(methods, method).record(nanos, error);
+    }
+
+    // One tool call; error means the tool result had isError set
+    public void recordTool(String tool, long nanos, boolean error) {
+        calls(tools, tool).record(nanos, error);
+    }
+
+    public LatencyHistogram getPhase(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    // Null if the method was never seen
+    public LatencyHistogram getMethod(String method) {
+        Calls calls = methods.get(method);
+        return calls == null ? null : calls.latency;
+    }
+
+    public long getMethodErrors(String method) {
+        Calls calls = methods.get(method);
+        return calls == null ? 0 : calls.errors.sum();
+    }
+
+    // Null if the tool was never called
+    public LatencyHistogram getTool(String tool) {
+        Calls calls = tools.get(tool);
+        return calls == null ? null : calls.latency;
+    }
+
+    public long getToolErrors(String tool) {
+        Calls calls = tools.get(tool);
+        return calls == null ? 0 : calls.errors.sum();
+    }
+
+    // Everything, in the Prometheus text exposition format
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP calc_phase_seconds Time spent in each phase of handling a request\n");
+        out.append("# TYPE calc_phase_seconds summary\n");
+        for (Phase phase : Phase.values()) {
+            summary(out, "calc_phase_seconds", "phase", phase.name().toLowerCase(Locale.ROOT), phases[phase.ordinal()]);
+        }
+        calls(out, "mcp_request", "JSON-RPC requests", "method", methods);
+        calls(out, "mcp_tool_call", "tool calls", "tool", tools);
+        return out.toString();
+    }
+
+    private static Calls calls(Map<String, Calls> byName, String name) {
+        Calls calls = byName.get(name);
+        if (calls != null) {
+            return calls;
+        }
+        if (byName.size() >= MAX_LABELS) {
+            return byName.computeIfAbsent(OTHER, ignored -> new Calls());
+        }
+        return byName.computeIfAbsent(name, ignored -> new Calls());
+    }
+
+    private static void calls(StringBuilder out, String prefix, String what, String label, Map<String, Calls> byName) {
+        out.append("# HELP ").append(prefix).append("s_total Number of ").append(what).append('\n');
+        out.append("# TYPE ").append(prefix).append("s_total counter\n");
+        for (Map.Entry<String, Calls> entry : byName.entrySet()) {
+            sample(out, prefix + "s_total", label, entry.getKey(), null, entry.getValue().latency.getCount());
+        }
+        out.append("# HELP ").append(prefix).append("_errors_total Number of ").append(what).append(" that failed\n");
+        out.append("# TYPE ").append(prefix).append("_errors_total counter\n");
+        for (Map.Entry<String, Calls> entry : byName.entrySet()) {
+            sample(out, prefix + "_errors_total", label, entry.getKey(), null, entry.getValue().errors.sum());
+        }
+        out.append("# HELP ").append(prefix).append("_seconds Latency of ").append(what).append('\n');
+        out.append("# TYPE ").append(prefix).append("_seconds summary\n");
+        for (Map.Entry<String, Calls> entry : byName.entrySet()) {
+            summary(out, prefix + "_seconds", label, entry.getKey(), entry.getValue().latency);
+        }
+    }
+
+    private static void summary(StringBuilder out, String name, String label, String value, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            sample(out, name, label, value, quantile, seconds(histogram.valueAtQuantile(quantile)));
+        }
+        sample(out, name + "_sum", label, value, null, seconds(histogram.getSum()));
+        sample(out, name + "_count", label, value, null, histogram.getCount());
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String value, Double quantile, Object sample) {
+        out.append(name).append('{').append(label).append("=\"");
+        escape(out, value);
+        out.append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ").append(sample).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    // Label values escape backslash, double quote and newline
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static final class Calls {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean error) {
+            latency.record(nanos);
+            if (error) {
+                errors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Which numbers Interpreter computes with. Independent of EvaluationMode,
+ * and one parsed tree serves both, so switching costs nothing.
+ */
+public enum NumericMode {
+    // 32-bit ints that wrap on overflow; factorials stop at 12 and literals must fit in an int
+    INT,
+    // Exact integers of any size, on longs until a result overflows and BigInteger after; always run by ExactEvaluator
+    EXACT,
+    // Real numbers on primitive doubles, the only mode that accepts decimal literals; always run by walking the tree
+    DOUBLE;
+
+    // Case-insensitive, as named in MCP_NUMERIC and the calculate tool's numeric argument
+    public static NumericMode parse(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        for (NumericMode mode : values()) {
+            if (mode.name().equals(normalized)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown numeric mode: " + name + " (expected int, exact or double)");
+    }
+
+    /**
+     * The MCP server's default.
+     *
+     * Environment variables:
+     *   MCP_NUMERIC  int (default), exact or double
+     */
+    public static NumericMode fromEnvironment() {
+        return fromEnvironment(System.getenv());
+    }
+
+    static NumericMode fromEnvironment(Map<String, String> env) {
+        return parse(env.getOrDefault("MCP_NUMERIC", "int"));
+    }
+}
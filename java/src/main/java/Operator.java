@@ -0,0 +1,59 @@
+/**
+ * The parser's operator table. Precedence and associativity are data here
+ * rather than one parse method per level, so adding an operator or a whole new
+ * precedence level is a single new constant.
+ *
+ * Binding powers follow the Pratt convention: an incoming operator closes the
+ * stacked one when its left power is lower than the stacked one's right
+ * power. Left-associative operators therefore bind slightly tighter on the
+ * right (p, p + 1) and right-associative ones the reverse (p + 1, p).
+ */
+enum Operator {
+    // Right-associative and looser than everything else, so x = y = 1 + 2 assigns 3 to both
+    ASSIGN('=', 1, 0),
+    ADD('+', 2, 3),
+    SUBTRACT('-', 2, 3),
+    MULTIPLY('*', 4, 5),
+    DIVIDE('/', 4, 5),
+    MODULO('%', 4, 5),
+    POWER('^', 7, 6),
+
+    // Prefix operators bind tighter than any binary operator, so they apply as soon as their operand is complete
+    NEGATE('-', 0, 10),
+    FACTORIAL('!', 0, 10),
+    // An open parenthesis on the stack; binds nothing so no binary operator can close it
+    GROUP('(', 0, 0);
+
+    private static final Operator[] BINARY = new Operator[128];
+
+    static {
+        for (Operator op : values()) {
+            if (op.isBinary()) {
+                BINARY[op.symbol] = op;
+            }
+        }
+    }
+
+    final char symbol;
+    final int leftPower;
+    final int rightPower;
+
+    Operator(char symbol, int leftPower, int rightPower) {
+        this.symbol = symbol;
+        this.leftPower = leftPower;
+        this.rightPower = rightPower;
+    }
+
+    boolean isBinary() {
+        return leftPower > 0;
+    }
+
+    boolean isPrefix() {
+        return this == NEGATE || this == FACTORIAL;
+    }
+
+    // Null when c is not a binary operator
+    static Operator binary(int c) {
+        return c >= 0 && c < BINARY.length ? BINARY[c] : null;
+    }
+}
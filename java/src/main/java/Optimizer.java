@@ -0,0 +1,152 @@
+/**
+ * Rewrites a parsed AST into an equivalent, cheaper one before it is evaluated.
+ *
+ * Parsed trees are cached and evaluated many times, so work spent here once is
+ * saved on every evaluation. The one rule every rewrite must follow: an
+ * expression that fails at runtime must still fail with the same error, so
+ * folds that would throw are left in place and subtrees are only dropped when
+ * they cannot throw. Every numeric mode evaluates the same optimized tree, so
+ * a rewrite also has to mean the same thing in each of them, down to the sign
+ * of a zero in double mode.
+ *
+ * Returns the original node instance when nothing changed, which lets callers
+ * tell whether optimization had any effect.
+ */
+public class Optimizer {
+
+    public ASTNode optimize(ASTNode node) {
+        if (node instanceof BinaryOpNode) {
+            return optimizeBinary((BinaryOpNode) node);
+        }
+        if (node instanceof UnaryOpNode) {
+            return optimizeUnary((UnaryOpNode) node);
+        }
+        if (node instanceof AssignNode) {
+            AssignNode assign = (AssignNode) node;
+            ASTNode value = optimize(assign.getValue());
+            return value == assign.getValue() ? node : new AssignNode(assign.getName(), assign.getSlot(), value);
+        }
+        return node;
+    }
+
+    private ASTNode optimizeBinary(BinaryOpNode node) {
+        ASTNode left = optimize(node.getLeft());
+        ASTNode right = optimize(node.getRight());
+        char op = node.getOperator();
+
+        // The parser has no unary minus and encodes -x as 0 - x
+        if (op == '-' && isConstant(left, 0)) {
+            return optimizeUnary(new UnaryOpNode('-', right));
+        }
+
+        // Integer division only agrees with double division when nothing is truncated
+        if (left instanceof NumberNode && right instanceof NumberNode && (op != '/' || dividesExactly(left, right))) {
+            ASTNode folded = fold(new BinaryOpNode(left, op, right));
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        // x + 0 stays: it turns a double -0.0 into 0.0, and any subtree can be -0.0 in double mode
+        switch (op) {
+            case '-':
+                if (isConstant(right, 0)) {
+                    return left;
+                }
+                break;
+            case '*':
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                if (isConstant(left, 1)) {
+                    return right;
+                }
+                break;
+            case '/':
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                break;
+            case '^':
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                if (isConstant(right, 0) && cannotThrow(left)) {
+                    return new NumberNode(1);
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (left == node.getLeft() && right == node.getRight()) {
+            return node;
+        }
+        return new BinaryOpNode(left, op, right);
+    }
+
+    private ASTNode optimizeUnary(UnaryOpNode node) {
+        ASTNode operand = optimize(node.getOperand());
+        char op = node.getOperator();
+
+        if (operand instanceof NumberNode) {
+            ASTNode folded = fold(new UnaryOpNode(op, operand));
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        if (operand == node.getOperand()) {
+            return node;
+        }
+        return new UnaryOpNode(op, operand);
+    }
+
+    /**
+     * Null means the constant expression fails at runtime and has to stay
+     * unfolded. Results that overflow an int stay unfolded too: int
+     * evaluation wraps them at runtime just the same, and the tree stays
+     * right for exact evaluation, which shares it. So do zeros that double
+     * evaluation gives as -0.0, such as (0 - 1) * 0.
+     */
+    private ASTNode fold(ASTNode constant) {
+        try {
+            Number value = ExactEvaluator.evaluate(constant);
+            long result = value.longValue();
+            if (result == 0 && Double.doubleToRawLongBits(constant.evaluateDouble()) != 0) {
+                return null;
+            }
+            return value instanceof Long && (int) result == result ? new NumberNode((int) result) : null;
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    // A zero divisor counts as exact; fold() leaves the failing division in place anyway
+    private boolean dividesExactly(ASTNode left, ASTNode right) {
+        int divisor = ((NumberNode) right).getValue();
+        return divisor == 0 || ((NumberNode) left).getValue() % divisor == 0;
+    }
+
+    private boolean isConstant(ASTNode node, int value) {
+        return node instanceof NumberNode && ((NumberNode) node).getValue() == value;
+    }
+
+    // Assignments count as throwing, since dropping one would lose its store
+    private boolean cannotThrow(ASTNode node) {
+        if (node instanceof NumberNode || node instanceof VariableNode) {
+            return true;
+        }
+        if (node instanceof UnaryOpNode) {
+            UnaryOpNode unary = (UnaryOpNode) node;
+            return unary.getOperator() == '-' && cannotThrow(unary.getOperand());
+        }
+        if (node instanceof BinaryOpNode) {
+            BinaryOpNode binary = (BinaryOpNode) node;
+            char op = binary.getOperator();
+            return (op == '+' || op == '-' || op == '*')
+                    && cannotThrow(binary.getLeft()) && cannotThrow(binary.getRight());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates very large trees on several cores, for EvaluationMode.PARALLEL.
+ *
+ * Subtrees smaller than GRAIN nodes run sequentially; bigger ones are split
+ * using the size every node records when it is built, so deciding costs
+ * nothing. Where both operands of an operator are big, each becomes its own
+ * task. Lopsided shapes, such as a long chain a + b + c + ..., have no such
+ * operator, so the evaluator walks down the big side and evaluates the small
+ * operands hanging off it in batches, alongside whatever is at the bottom.
+ *
+ * Pieces run to completion and keep their exception instead of throwing it.
+ * Their values are then combined in the order the sequential walk produces
+ * them, and the first failure met on the way is thrown, so both the result
+ * and the error are those of sequential evaluation. That relies on the
+ * order of evaluation not mattering otherwise, so trees with assignments are
+ * never split.
+ */
+final class ParallelEvaluator {
+    // Below this many nodes a subtree is one sequential piece
+    static final int GRAIN = 1 << 14;
+    // Smaller trees are not worth the tasks; Interpreter keeps them on the sequential path
+    static final int MIN_SIZE = 4 * GRAIN;
+
+    private ParallelEvaluator() {
+    }
+
+    static boolean isWorthSplitting(ASTNode root, Variables variables) {
+        return root.size() >= MIN_SIZE && !variables.hasAssignments();
+    }
+
+    static int evaluate(ASTNode root, int[] frame) {
+        return evaluate(root, frame, ForkJoinPool.commonPool());
+    }
+
+    static int evaluate(ASTNode root, int[] frame, ForkJoinPool pool) {
+        if (root instanceof RenderNode) {
+            throw new UnsupportedOperationException("RenderNode cannot be evaluated to an integer");
+        }
+        Piece piece = new Piece(root, frame);
+        pool.invoke(piece);
+        return piece.result();
+    }
+
+    private static int split(ASTNode node, int[] frame) {
+        // Walk down the big side; sides[i] is the small operand of spine[i], null for a unary operator
+        List<ASTNode> spine = new ArrayList<>();
+        List<ASTNode> sides = new ArrayList<>();
+        BitSet sideIsLeft = new BitSet();
+        ASTNode base = node;
+        while (base.size() >= GRAIN) {
+            if (base instanceof UnaryOpNode) {
+                spine.add(base);
+                sides.add(null);
+                base = ((UnaryOpNode) base).getOperand();
+                continue;
+            }
+            if (!(base instanceof BinaryOpNode)) {
+                break;
+            }
+            BinaryOpNode binary = (BinaryOpNode) base;
+            boolean bigLeft = binary.getLeft().size() >= GRAIN;
+            boolean bigRight = binary.getRight().size() >= GRAIN;
+            if (bigLeft == bigRight) {
+                break;
+            }
+            if (bigLeft) {
+                sides.add(binary.getRight());
+                base = binary.getLeft();
+            } else {
+                sideIsLeft.set(spine.size());
+                sides.add(binary.getLeft());
+                base = binary.getRight();
+            }
+            spine.add(binary);
+        }
+
+        // Both operands of the base big: a task each. Otherwise the base is one more sequential piece
+        boolean fork = base instanceof BinaryOpNode && base.size() >= GRAIN;
+        if (!fork) {
+            sides.add(base);
+        }
+        ASTNode[] pieces = sides.toArray(new ASTNode[0]);
+        int[] values = new int[pieces.length];
+        RuntimeException[] errors = new RuntimeException[pieces.length];
+        List<ForkJoinTask<?>> tasks = batches(pieces, values, errors, frame);
+        Piece left = null;
+        Piece right = null;
+        if (fork) {
+            left = new Piece(((BinaryOpNode) base).getLeft(), frame);
+            right = new Piece(((BinaryOpNode) base).getRight(), frame);
+            tasks.add(left);
+            tasks.add(right);
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        // Operands left of the spine are evaluated before anything below them
+        for (int i = sideIsLeft.nextSetBit(0); i >= 0; i = sideIsLeft.nextSetBit(i + 1)) {
+            check(errors[i]);
+        }
+        int value;
+        if (fork) {
+            int leftValue = left.result();
+            value = BinaryOpNode.apply(((BinaryOpNode) base).getOperator(), leftValue, right.result());
+        } else {
+            check(errors[pieces.length - 1]);
+            value = values[pieces.length - 1];
+        }
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            ASTNode operator = spine.get(i);
+            if (operator instanceof UnaryOpNode) {
+                value = UnaryOpNode.apply(((UnaryOpNode) operator).getOperator(), value);
+            } else if (sideIsLeft.get(i)) {
+                value = BinaryOpNode.apply(((BinaryOpNode) operator).getOperator(), values[i], value);
+            } else {
+                check(errors[i]);
+                value = BinaryOpNode.apply(((BinaryOpNode) operator).getOperator(), value, values[i]);
+            }
+        }
+        return value;
+    }
+
+    // Groups consecutive pieces into tasks of about GRAIN nodes; null pieces belong to unary operators
+    private static List<ForkJoinTask<?>> batches(ASTNode[] pieces, int[] values, RuntimeException[] errors, int[] frame) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        int from = 0;
+        int size = 0;
+        for (int i = 0; i < pieces.length; i++) {
+            if (pieces[i] != null) {
+                size += pieces[i].size();
+            }
+            if (size >= GRAIN || i == pieces.length - 1) {
+                tasks.add(new Batch(pieces, from, i + 1, values, errors, frame));
+                from = i + 1;
+                size = 0;
+            }
+        }
+        return tasks;
+    }
+
+    private static void check(RuntimeException error) {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Pieces are below GRAIN nodes but may still be too deep to recurse on
+    private static int sequential(ASTNode node, int[] frame) {
+        return IterativeTreeWalker.evaluate(node, frame, null);
+    }
+
+    // A subtree of at least GRAIN nodes, split further
+    @SuppressWarnings("serial") // Tasks live only as long as one evaluation and are never serialized
+    private static final class Piece extends RecursiveAction {
+        private final ASTNode node;
+        private final int[] frame;
+        private int value;
+        private RuntimeException error;
+
+        Piece(ASTNode node, int[] frame) {
+            this.node = node;
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                value = node.size() < GRAIN ? sequential(node, frame) : split(node, frame);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        int result() {
+            check(error);
+            return value;
+        }
+    }
+
+    // Small subtrees evaluated one after another, each keeping its own value or error
+    @SuppressWarnings("serial") // Tasks live only as long as one evaluation and are never serialized
+    private static final class Batch extends RecursiveAction {
+        private final ASTNode[] pieces;
+        private final int from;
+        private final int to;
+        private final int[] values;
+        private final RuntimeException[] errors;
+        private final int[] frame;
+
+        Batch(ASTNode[] pieces, int from, int to, int[] values, RuntimeException[] errors, int[] frame) {
+            this.pieces = pieces;
+            this.from = from;
+            this.to = to;
+            this.values = values;
+            this.errors = errors;
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; i++) {
+                if (pieces[i] == null) {
+                    continue;
+                }
+                try {
+                    values[i] = sequential(pieces[i], frame);
+                } catch (RuntimeException e) {
+                    errors[i] = e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache from expression text to its parsed form (an AST, or
+ * whatever the caller builds from one).
+ *
+ * MCP clients send the same few thousand expressions over and over, so on a hit
+ * the lexer and parser are skipped entirely. Sharing cached trees between
+ * threads is safe because AST nodes are immutable once built.
+ *
+ * clear() also discards parses still in flight: a caller clears because the
+ * way expressions are parsed has changed, so a result begun before that is
+ * returned to its caller but not cached.
+ */
+public class ParseCache<T> {
+    private final int maxEntries;
+    private final Map<String, T> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // Bumped by clear(); guarded by entries
+    private long generation;
+
+    public ParseCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                if (size() > ParseCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public T get(String expression, Function<String, T> parser) {
+        T cached;
+        long started;
+        synchronized (entries) {
+            cached = entries.get(expression);
+            started = generation;
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        // Parse outside the lock so one slow expression doesn't stall every other caller;
+        // two threads racing on the same miss just parse it twice
+        T parsed = parser.apply(expression);
+        synchronized (entries) {
+            if (started == generation) {
+                entries.put(expression, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * What Interpreter caches per expression: the AST plus any derived forms,
+ * built lazily so callers only pay for the evaluation modes they use.
+ * Callers get one from Interpreter.parse to evaluate against frames of
+ * their own; it holds no per-evaluation state, so threads can share it.
+ */
+public class ParsedExpression {
+    private final ASTNode ast;
+    private final int depth;
+    private final String oversizedLiteral;
+    private final String decimalLiteral;
+    private final Variables variables;
+    private volatile StackProgram program;
+    private volatile ColumnarEvaluator columns;
+
+    ParsedExpression(ASTNode ast, int depth, String oversizedLiteral, String decimalLiteral, Variables variables) {
+        this.ast = ast;
+        this.depth = depth;
+        this.oversizedLiteral = oversizedLiteral;
+        this.decimalLiteral = decimalLiteral;
+        this.variables = variables;
+    }
+
+    // The slots a frame for this expression needs, and which of them the caller must bind
+    public Variables getVariables() {
+        return variables;
+    }
+
+    ASTNode getAst() {
+        return ast;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    // The first literal too large for an int, or null; only exact and double evaluation can run the tree when set
+    String getOversizedLiteral() {
+        return oversizedLiteral;
+    }
+
+    // The first literal with a decimal point, or null; only double evaluation can run the tree when set
+    String getDecimalLiteral() {
+        return decimalLiteral;
+    }
+
+    // Benign race: concurrent first calls may each compile, and any result is equivalent
+    StackProgram getProgram() {
+        StackProgram result = program;
+        if (result == null) {
+            result = StackProgram.compile(ast);
+            program = result;
+        }
+        return result;
+    }
+
+    // Same race as getProgram
+    ColumnarEvaluator getColumnarEvaluator() {
+        ColumnarEvaluator result = columns;
+        if (result == null) {
+            result = new ColumnarEvaluator(ast, variables);
+            columns = result;
+        }
+        return result;
+    }
+}
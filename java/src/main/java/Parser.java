@@ -1,17 +1,75 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Table-driven Pratt parser that keeps pending operators and finished operands
+ * on explicit stacks instead of the Java call stack.
+ *
+ * Machine-generated expressions can nest tens of thousands of levels deep, which
+ * overflowed the old recursive-descent parser; here memory grows linearly with
+ * nesting and there is no stack-depth limit. Precedence and associativity come
+ * from the binding powers in Operator, and dispatch is on token codes and
+ * operator chars, so the hot loop does no string comparisons.
+ *
+ * It builds exactly the trees the recursive parser did: prefix '!' and '-' bind
+ * tighter than any binary operator, '^' is right-associative, and '-x' is
+ * encoded as 0 - x. Literals too large for an int become BigNumberNodes, which
+ * only exact and double evaluation accept, and literals with a decimal point
+ * become DecimalNodes, which only double evaluation accepts.
+ *
+ * Identifiers are resolved to frame slots here, once, so evaluation never
+ * looks a name up. Operands are completed in exactly the order evaluation
+ * visits them, so while parsing it also works out which variables are read
+ * before they are assigned; those are the expression's inputs.
+ */
 public class Parser {
-    private final List<Token> tokens;
-    private int current;
+    private final TokenSource tokens;
+    private int currentType;
+    private int depth;
+    private String oversizedLiteral;
+    private String decimalLiteral;
+    
+    // Explicit parse stacks; operands carry the depth of the subtree they hold
+    private ASTNode[] operands = new ASTNode[16];
+    private int[] depths = new int[16];
+    // Whether the operand is a variable whose read counted in earlyReads, to be taken back if it turns out to be assigned to
+    private boolean[] countedReads = new boolean[16];
+    private int operandTop;
+    private Operator[] operators = new Operator[16];
+    private int operatorTop;
+    
+    // Slots in order of first appearance, and per slot the reads seen before its first assignment
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] earlyReads = new int[4];
+    private boolean[] assigned = new boolean[4];
     
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens).cursor());
+    }
+    
+    Parser(TokenBuffer tokens) {
+        this(tokens.cursor());
+    }
+    
+    // Tokens are pulled one at a time, so a streaming source is never materialized as a whole
+    Parser(TokenSource tokens) {
         this.tokens = tokens;
-        this.current = 0;
     }
     
     public ASTNode parse() {
+        oversizedLiteral = null;
+        decimalLiteral = null;
+        slots.clear();
+        names.clear();
+        advance();
+        
         // Check if this is a render expression
-        if (getCurrentToken().type == TokenType.RENDER) {
+        if (currentType() == TokenBuffer.RENDER) {
             advance();
             ASTNode expr = parseExpression();
             return new RenderNode(expr);
@@ -19,96 +77,231 @@ public class Parser {
         return parseExpression();
     }
     
-    private ASTNode parseExpression() {
-        return parseAddition();
+    // Depth of the tree built by the last parse(), so callers can pick stack-safe algorithms for it
+    public int getDepth() {
+        return depth;
     }
     
-    private ASTNode parseAddition() {
-        ASTNode left = parseMultiplication();
-        
-        while (getCurrentToken().type == TokenType.OPERATOR && 
-               (getCurrentToken().value.equals("+") || getCurrentToken().value.equals("-"))) {
-            char op = getCurrentToken().value.charAt(0);
-            advance();
-            ASTNode right = parseMultiplication();
-            left = new BinaryOpNode(left, op, right);
+    // The first literal of the last parse() too large for an int, or null; int evaluation rejects the tree when set
+    public String getOversizedLiteral() {
+        return oversizedLiteral;
+    }
+    
+    // The first literal of the last parse() with a decimal point, or null; only double evaluation accepts the tree when set
+    public String getDecimalLiteral() {
+        return decimalLiteral;
+    }
+    
+    // The variables of the tree built by the last parse()
+    public Variables getVariables() {
+        if (names.isEmpty()) {
+            return Variables.NONE;
         }
-        
-        return left;
+        boolean[] inputs = new boolean[names.size()];
+        for (int slot = 0; slot < inputs.length; slot++) {
+            inputs[slot] = earlyReads[slot] > 0;
+        }
+        return new Variables(names.toArray(new String[0]), inputs, Arrays.copyOf(assigned, inputs.length),
+                new HashMap<>(slots));
     }
     
-    private ASTNode parseMultiplication() {
-        ASTNode left = parseExponentiation();
+    private ASTNode parseExpression() {
+        operandTop = 0;
+        operatorTop = 0;
+        boolean expectOperand = true;
         
-        while (getCurrentToken().type == TokenType.OPERATOR && 
-               (getCurrentToken().value.equals("*") || 
-                getCurrentToken().value.equals("/") || 
-                getCurrentToken().value.equals("%"))) {
-            char op = getCurrentToken().value.charAt(0);
-            advance();
-            ASTNode right = parseExponentiation();
-            left = new BinaryOpNode(left, op, right);
+        while (true) {
+            int type = currentType();
+            
+            if (expectOperand) {
+                if (type == TokenBuffer.NUMBER || type == TokenBuffer.BIG_NUMBER) {
+                    pushOperand(type == TokenBuffer.NUMBER ? new NumberNode(tokens.value()) : bigNumber(), 1);
+                    advance();
+                    applyPrefixOperators();
+                    expectOperand = false;
+                } else if (type == TokenBuffer.DECIMAL) {
+                    pushOperand(decimal(), 1);
+                    advance();
+                    applyPrefixOperators();
+                    expectOperand = false;
+                } else if (type == TokenBuffer.IDENTIFIER) {
+                    pushVariable(tokens.text());
+                    advance();
+                    applyPrefixOperators();
+                    expectOperand = false;
+                } else if (type == TokenBuffer.FACTORIAL) {
+                    pushOperator(Operator.FACTORIAL);
+                    advance();
+                } else if (type == TokenBuffer.OPERATOR && tokens.value() == '-') {
+                    pushOperator(Operator.NEGATE);
+                    advance();
+                } else if (type == TokenBuffer.LPAREN) {
+                    pushOperator(Operator.GROUP);
+                    advance();
+                } else {
+                    throw unexpectedToken();
+                }
+            } else if (type == TokenBuffer.OPERATOR) {
+                Operator op = Operator.binary(tokens.value());
+                if (op == null) {
+                    throw unexpectedToken();
+                }
+                while (operatorTop > 0 && op.leftPower < operators[operatorTop - 1].rightPower) {
+                    reduceBinary(operators[--operatorTop]);
+                }
+                pushOperator(op);
+                advance();
+                expectOperand = true;
+            } else if (type == TokenBuffer.RPAREN) {
+                while (operatorTop > 0 && operators[operatorTop - 1] != Operator.GROUP) {
+                    reduceBinary(operators[--operatorTop]);
+                }
+                if (operatorTop == 0) {
+                    throw new IllegalArgumentException("Unexpected closing parenthesis");
+                }
+                operatorTop--;
+                advance();
+                // A parenthesized group is a primary, so pending prefix operators apply to it
+                applyPrefixOperators();
+            } else if (type == TokenBuffer.EOF) {
+                while (operatorTop > 0) {
+                    Operator op = operators[--operatorTop];
+                    if (op == Operator.GROUP) {
+                        throw new IllegalArgumentException("Expected closing parenthesis");
+                    }
+                    reduceBinary(op);
+                }
+                depth = depths[0];
+                ASTNode result = operands[0];
+                operands[0] = null;
+                return result;
+            } else {
+                throw unexpectedToken();
+            }
         }
-        
-        return left;
     }
     
-    private ASTNode parseExponentiation() {
-        ASTNode left = parsePrimary();
-        
-        if (getCurrentToken().type == TokenType.OPERATOR && 
-            getCurrentToken().value.equals("^")) {
-            char op = getCurrentToken().value.charAt(0);
-            advance();
-            ASTNode right = parseExponentiation();
-            return new BinaryOpNode(left, op, right);
+    private ASTNode bigNumber() {
+        String digits = tokens.text();
+        if (oversizedLiteral == null) {
+            oversizedLiteral = digits;
         }
-        
-        return left;
+        return new BigNumberNode(new BigInteger(digits));
     }
     
-    private ASTNode parsePrimary() {
-        Token token = getCurrentToken();
-        
-        if (token.type == TokenType.FACTORIAL) {
-            advance();
-            return new UnaryOpNode('!', parsePrimary());
+    private ASTNode decimal() {
+        String text = tokens.text();
+        if (decimalLiteral == null) {
+            decimalLiteral = text;
         }
-        
-        if (token.type == TokenType.NUMBER) {
-            advance();
-            return new NumberNode(Integer.parseInt(token.value));
+        return new DecimalNode(parseDecimal(text));
+    }
+
+    // The lexers take any Unicode digit, as Character.digit does for integers, but Double.parseDouble only ASCII ones
+    private static double parseDecimal(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (Character.isDigit(chars[i])) {
+                chars[i] = (char) ('0' + Character.digit(chars[i], 10));
+            }
         }
-        
-        if (token.type == TokenType.LPAREN) {
-            advance();
-            ASTNode node = parseExpression();
-            
-            if (getCurrentToken().type != TokenType.RPAREN) {
-                throw new IllegalArgumentException("Expected closing parenthesis");
+        return Double.parseDouble(new String(chars));
+    }
+    
+    private void applyPrefixOperators() {
+        while (operatorTop > 0 && operators[operatorTop - 1].isPrefix()) {
+            Operator prefix = operators[--operatorTop];
+            int top = operandTop - 1;
+            if (prefix == Operator.NEGATE) {
+                operands[top] = new BinaryOpNode(new NumberNode(0), '-', operands[top]);
+            } else {
+                operands[top] = new UnaryOpNode('!', operands[top]);
             }
-            advance();
-            return node;
+            depths[top]++;
         }
-        
-        if (token.type == TokenType.OPERATOR && token.value.equals("-")) {
-            advance();
-            return new BinaryOpNode(new NumberNode(0), '-', parsePrimary());
+    }
+    
+    private void pushVariable(String name) {
+        Integer known = slots.get(name);
+        int slot;
+        if (known != null) {
+            slot = known;
+        } else {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+            if (slot == earlyReads.length) {
+                earlyReads = Arrays.copyOf(earlyReads, slot * 2);
+                assigned = Arrays.copyOf(assigned, slot * 2);
+            }
+            earlyReads[slot] = 0;
+            assigned[slot] = false;
+        }
+        pushOperand(new VariableNode(name, slot), 1);
+        if (!assigned[slot]) {
+            earlyReads[slot]++;
+            countedReads[operandTop - 1] = true;
         }
-        
-        throw new IllegalArgumentException("Unexpected token: " + token);
     }
     
-    private Token getCurrentToken() {
-        if (current >= tokens.size()) {
-            return tokens.get(tokens.size() - 1);
+    private void reduceBinary(Operator op) {
+        if (op == Operator.ASSIGN) {
+            reduceAssign();
+            return;
         }
-        return tokens.get(current);
+        operandTop--;
+        int top = operandTop - 1;
+        operands[top] = new BinaryOpNode(operands[top], op.symbol, operands[operandTop]);
+        depths[top] = Math.max(depths[top], depths[operandTop]) + 1;
+        operands[operandTop] = null;
     }
     
-    private void advance() {
-        if (current < tokens.size() - 1) {
-            current++;
+    // The target was pushed as a read, and is only now known to be written instead
+    private void reduceAssign() {
+        operandTop--;
+        int top = operandTop - 1;
+        if (!(operands[top] instanceof VariableNode)) {
+            throw new IllegalArgumentException("Can only assign to a variable");
         }
+        VariableNode target = (VariableNode) operands[top];
+        int slot = target.getSlot();
+        if (countedReads[top]) {
+            earlyReads[slot]--;
+        }
+        assigned[slot] = true;
+        operands[top] = new AssignNode(target.getName(), slot, operands[operandTop]);
+        depths[top] = depths[operandTop] + 1;
+        countedReads[top] = false;
+        operands[operandTop] = null;
+    }
+    
+    private void pushOperand(ASTNode node, int nodeDepth) {
+        if (operandTop == operands.length) {
+            operands = Arrays.copyOf(operands, operandTop * 2);
+            depths = Arrays.copyOf(depths, operandTop * 2);
+            countedReads = Arrays.copyOf(countedReads, operandTop * 2);
+        }
+        operands[operandTop] = node;
+        countedReads[operandTop] = false;
+        depths[operandTop++] = nodeDepth;
+    }
+    
+    private void pushOperator(Operator op) {
+        if (operatorTop == operators.length) {
+            operators = Arrays.copyOf(operators, operatorTop * 2);
+        }
+        operators[operatorTop++] = op;
+    }
+    
+    private int currentType() {
+        return currentType;
+    }
+    
+    private IllegalArgumentException unexpectedToken() {
+        return new IllegalArgumentException("Unexpected token: " + tokens.describe());
+    }
+    
+    private void advance() {
+        currentType = tokens.nextToken();
     }
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses /mcp responses for clients that send Accept-Encoding.
+ *
+ * Rendered trees are box-drawing text that grows quickly with the tree, and a
+ * few megabytes of it shrink to a few percent with gzip. Small answers are
+ * not worth the CPU, so a response is only compressed once it passes
+ * MCP_COMPRESSION_MIN_BYTES. Until then it is held back, and a response that
+ * ends below the threshold goes out as it is.
+ *
+ * Session event streams are compressed as one continuous stream, flushed
+ * after every frame so each event reaches the client as soon as it is sent.
+ *
+ * gzip and deflate come with the JDK. zstd would need a native library, so it
+ * is not offered.
+ *
+ * Environment variables:
+ *   MCP_COMPRESSION            on (default) or off
+ *   MCP_COMPRESSION_MIN_BYTES  smallest response that is compressed, default 1024
+ */
+public final class ResponseCompression {
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        // The Content-Encoding value
+        public String token() {
+            return token;
+        }
+
+        // Sync-flushed, so flush() pushes out everything written so far
+        OutputStream wrap(OutputStream out) throws IOException {
+            return this == GZIP ? new GZIPOutputStream(out, true) : new DeflaterOutputStream(out, true);
+        }
+    }
+
+    static final int DEFAULT_MIN_BYTES = 1024;
+
+    private final boolean enabled;
+    private final int minBytes;
+
+    ResponseCompression(boolean enabled, int minBytes) {
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative");
+        }
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+    }
+
+    public static ResponseCompression fromEnvironment() {
+        return fromEnvironment(System.getenv());
+    }
+
+    static ResponseCompression fromEnvironment(Map<String, String> env) {
+        String setting = env.getOrDefault("MCP_COMPRESSION", "on").trim().toLowerCase(Locale.ROOT);
+        if (!setting.equals("on") && !setting.equals("off")) {
+            throw new IllegalArgumentException("Unknown MCP_COMPRESSION: " + setting + " (expected on or off)");
+        }
+        return new ResponseCompression(setting.equals("on"),
+                ServerExecutor.intSetting(env, "MCP_COMPRESSION_MIN_BYTES", DEFAULT_MIN_BYTES));
+    }
+
+    /**
+     * The encoding to answer with, given the request's Accept-Encoding, or
+     * null for none. gzip wins ties, and q=0 rules an encoding out.
+     */
+    public Encoding negotiate(String acceptEncoding) {
+        if (!enabled || acceptEncoding == null) {
+            return null;
+        }
+        // -1 until listed, so that * covers only the codings that are not named
+        double gzip = -1;
+        double deflate = -1;
+        double wildcard = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.split(";");
+            String coding = pieces[0].trim().toLowerCase(Locale.ROOT);
+            double quality = quality(pieces);
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals("deflate")) {
+                deflate = quality;
+            } else if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = wildcard;
+        }
+        if (deflate < 0) {
+            deflate = wildcard;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : null;
+    }
+
+    /**
+     * Wraps a response body. Nothing reaches out until the body passes the
+     * threshold, at which point setEncoding receives the Content-Encoding so
+     * the caller can set the header while the response is still uncommitted.
+     * A flush before that sends the body uncompressed. The caller must call
+     * finish() once the body is complete.
+     */
+    public Body body(OutputStream out, Encoding encoding, Consumer<String> setEncoding) {
+        return new Body(out, encoding, encoding == null ? 0 : minBytes, setEncoding);
+    }
+
+    // For a stream of frames of unknown total length, so the threshold does not apply
+    public FrameEncoder frames(Encoding encoding) {
+        return new FrameEncoder(encoding);
+    }
+
+    // What /health reports
+    public Map<String, Object> describe() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("enabled", enabled);
+        info.put("minBytes", minBytes);
+        return info;
+    }
+
+    private static double quality(String[] pieces) {
+        for (int i = 1; i < pieces.length; i++) {
+            String parameter = pieces[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    public static final class Body extends OutputStream {
+        private final OutputStream out;
+        private final Encoding encoding;
+        private final Consumer<String> setEncoding;
+        private byte[] pending;
+        private int pendingLength;
+        // Where bytes go once the encoding is decided: out itself, or a compressor over it
+        private OutputStream target;
+
+        private Body(OutputStream out, Encoding encoding, int threshold, Consumer<String> setEncoding) {
+            this.out = out;
+            this.encoding = encoding;
+            this.setEncoding = setEncoding;
+            if (encoding == null) {
+                target = out;
+            } else {
+                pending = new byte[threshold];
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (target != null) {
+                target.write(bytes, offset, length);
+            } else if (pendingLength + length <= pending.length) {
+                System.arraycopy(bytes, offset, pending, pendingLength, length);
+                pendingLength += length;
+            } else {
+                setEncoding.accept(encoding.token());
+                target = encoding.wrap(out);
+                release();
+                target.write(bytes, offset, length);
+            }
+        }
+
+        // Decides against compression if the threshold has not been reached yet
+        @Override
+        public void flush() throws IOException {
+            if (target == null) {
+                target = out;
+                release();
+            }
+            target.flush();
+        }
+
+        // Ends the compressed stream, which also closes out; an uncompressed body is only flushed
+        public void finish() throws IOException {
+            if (target == null || target == out) {
+                flush();
+            } else {
+                target.close();
+            }
+        }
+
+        public boolean isCompressed() {
+            return target != null && target != out;
+        }
+
+        private void release() throws IOException {
+            target.write(pending, 0, pendingLength);
+            pending = null;
+        }
+    }
+
+    /**
+     * Compresses a stream frame by frame. Each call returns the bytes that
+     * carry one frame and can be decoded as soon as they arrive.
+     */
+    public static final class FrameEncoder {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final OutputStream compressor;
+        private boolean finished;
+
+        private FrameEncoder(Encoding encoding) {
+            try {
+                compressor = encoding.wrap(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public byte[] encode(byte[] frame) {
+            try {
+                compressor.write(frame);
+                compressor.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return drain();
+        }
+
+        // The end of the compressed stream, such as gzip's checksum; releases the compressor
+        public byte[] finish() {
+            if (finished) {
+                return new byte[0];
+            }
+            finished = true;
+            try {
+                compressor.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return drain();
+        }
+
+        private byte[] drain() {
+            byte[] bytes = buffer.toByteArray();
+            buffer.reset();
+            return bytes;
+        }
+    }
+}
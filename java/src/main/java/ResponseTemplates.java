@@ -0,0 +1,99 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-serialized results for JSON-RPC methods whose answer never changes.
+ *
+ * Clients send initialize and tools/list again on every reconnect. Rebuilding
+ * and re-serializing the same trees each time is wasted work, so each result
+ * is serialized once, at registration. Responses then write the cached UTF-8
+ * bytes as a raw value, and only the request id differs between them.
+ *
+ * New tools only need registerTool; their schema is folded into the cached
+ * tools/list result.
+ */
+public final class ResponseTemplates {
+    public static final String PROTOCOL_VERSION = "2024-11-05";
+
+    private final ObjectMapper mapper;
+    private final Map<String, SerializableString> results = new ConcurrentHashMap<>();
+    private final ArrayNode tools;
+
+    public ResponseTemplates(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.tools = mapper.createArrayNode();
+        register("tools/list", toolsList());
+    }
+
+    // The calculator server's initialize result and calculate tool
+    public static ResponseTemplates standard(ObjectMapper mapper) {
+        ResponseTemplates templates = new ResponseTemplates(mapper);
+
+        ObjectNode initialize = mapper.createObjectNode();
+        initialize.put("protocolVersion", PROTOCOL_VERSION);
+        ObjectNode capabilities = initialize.putObject("capabilities");
+        capabilities.putObject("tools").putNull("listChanged");
+        ObjectNode serverInfo = initialize.putObject("serverInfo");
+        serverInfo.put("name", "JavaCalc");
+        serverInfo.put("version", "1.0.0");
+        templates.register("initialize", initialize);
+
+        ObjectNode inputSchema = mapper.createObjectNode();
+        inputSchema.put("type", "object");
+        ObjectNode properties = inputSchema.putObject("properties");
+        ObjectNode expression = properties.putObject("expression");
+        expression.put("type", "string");
+        expression.put("description", "Mathematical expression to evaluate (e.g., '2 + 3 * 4', '(10 - 5) / 2')");
+        ObjectNode maxOperations = properties.putObject("maxOperations");
+        maxOperations.put("type", "integer");
+        maxOperations.put("description", "Optional cap on evaluation steps; can only lower the server's limit");
+        ObjectNode timeoutMs = properties.putObject("timeoutMs");
+        timeoutMs.put("type", "integer");
+        timeoutMs.put("description", "Optional evaluation time limit in milliseconds; can only lower the server's limit");
+        ObjectNode numeric = properties.putObject("numeric");
+        numeric.put("type", "string");
+        numeric.putArray("enum").add("int").add("exact").add("double");
+        numeric.put("description", "Optional number type: 32-bit int, exact integers of any size, or double-precision real numbers; defaults to the server's setting");
+        inputSchema.putArray("required").add("expression");
+        templates.registerTool("calculate", "Evaluates mathematical expressions using the Java calculator", inputSchema);
+
+        return templates;
+    }
+
+    // Serializes result now; later changes to the node are not seen
+    public void register(String method, JsonNode result) {
+        try {
+            results.put(method, new SerializedString(mapper.writeValueAsString(result)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize result for " + method, e);
+        }
+    }
+
+    // Adds a tool to the tools/list result
+    public synchronized void registerTool(String name, String description, JsonNode inputSchema) {
+        ObjectNode tool = tools.addObject();
+        tool.put("name", name);
+        tool.put("description", description);
+        tool.set("inputSchema", inputSchema.deepCopy());
+        register("tools/list", toolsList());
+    }
+
+    // The cached result for method, or null when its answer is computed per request
+    public SerializableString result(String method) {
+        return results.get(method);
+    }
+
+    private JsonNode toolsList() {
+        ObjectNode result = mapper.createObjectNode();
+        result.set("tools", tools.deepCopy());
+        return result;
+    }
+}
@@ -0,0 +1,215 @@
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads the MCP HTTP servers run requests on, configured from the
+ * environment so deployments can tune it without a rebuild.
+ *
+ * Spark's default Jetty pool has a fixed number of platform threads, and under
+ * bursty load every one of them can be parked writing a slow SSE response while
+ * new requests queue behind them. With MCP_EXECUTOR=virtual each request gets
+ * its own virtual thread instead, so a blocked writer costs almost nothing.
+ *
+ * Virtual threads need Java 21. The jar still targets Java 11, so they are
+ * looked up reflectively and older runtimes fall back to the platform pool.
+ *
+ * Environment variables:
+ *   MCP_EXECUTOR         platform (default) or virtual
+ *   MCP_MAX_THREADS      platform pool maximum, default 200
+ *   MCP_MIN_THREADS      platform pool minimum, default 8
+ *   MCP_IDLE_TIMEOUT_MS  how long an idle platform thread is kept, default 60000
+ *   MCP_QUEUE_CAPACITY   jobs waiting for a platform thread before Jetty rejects
+ *                        new ones; 0 (default) means unbounded
+ */
+public final class ServerExecutor {
+    public enum Kind {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    static final int DEFAULT_MAX_THREADS = 200;
+    static final int DEFAULT_MIN_THREADS = 8;
+    static final int DEFAULT_IDLE_TIMEOUT_MS = 60000;
+
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+    private final Kind requested;
+    private final Kind kind;
+    private final int maxThreads;
+    private final int minThreads;
+    private final int idleTimeoutMs;
+    private final int queueCapacity;
+
+    ServerExecutor(Kind requested, int maxThreads, int minThreads, int idleTimeoutMs, int queueCapacity) {
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("Thread pool needs 1 <= min <= max, got min " + minThreads + " and max " + maxThreads);
+        }
+        if (idleTimeoutMs < 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Idle timeout and queue capacity must not be negative");
+        }
+        this.requested = requested;
+        this.kind = requested == Kind.VIRTUAL && !isVirtualThreadsAvailable() ? Kind.PLATFORM : requested;
+        this.maxThreads = maxThreads;
+        this.minThreads = minThreads;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static ServerExecutor fromEnvironment() {
+        return fromEnvironment(System.getenv());
+    }
+
+    static ServerExecutor fromEnvironment(Map<String, String> env) {
+        String name = env.getOrDefault("MCP_EXECUTOR", "platform");
+        Kind kind;
+        try {
+            kind = Kind.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown MCP_EXECUTOR: " + name + " (expected platform or virtual)");
+        }
+        return new ServerExecutor(kind,
+                intSetting(env, "MCP_MAX_THREADS", DEFAULT_MAX_THREADS),
+                intSetting(env, "MCP_MIN_THREADS", DEFAULT_MIN_THREADS),
+                intSetting(env, "MCP_IDLE_TIMEOUT_MS", DEFAULT_IDLE_TIMEOUT_MS),
+                intSetting(env, "MCP_QUEUE_CAPACITY", 0));
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    // The executor actually in use, which is PLATFORM when VIRTUAL was requested on an older runtime
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Makes Spark build its Jetty server on this executor. Must run before the
+     * first route is mapped, since that is when Spark starts the server.
+     */
+    public void install() {
+        EmbeddedServers.add(EmbeddedServers.defaultIdentifier(), new EmbeddedJettyFactory().withThreadPool(createThreadPool()));
+    }
+
+    ThreadPool createThreadPool() {
+        if (kind == Kind.VIRTUAL) {
+            return new VirtualThreadPool(VIRTUAL_THREADS);
+        }
+        QueuedThreadPool pool = queueCapacity > 0
+                ? new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMs, new ArrayBlockingQueue<>(queueCapacity))
+                : new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMs);
+        pool.setName("mcp");
+        return pool;
+    }
+
+    // What /health reports
+    public Map<String, Object> describe() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("type", kind.name().toLowerCase(Locale.ROOT));
+        if (requested != kind) {
+            info.put("requested", requested.name().toLowerCase(Locale.ROOT));
+            info.put("reason", "virtual threads need Java 21, running on " + Runtime.version().feature());
+        }
+        if (kind == Kind.PLATFORM) {
+            info.put("maxThreads", maxThreads);
+            info.put("minThreads", minThreads);
+            info.put("idleTimeoutMs", idleTimeoutMs);
+            info.put("queueCapacity", queueCapacity == 0 ? "unbounded" : queueCapacity);
+        }
+        return info;
+    }
+
+    // Shared by the other MCP settings so they all parse and fail the same way
+    static int intSetting(Map<String, String> env, String name, int defaultValue) {
+        String value = env.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    // Thread.ofVirtual().name("mcp-virtual-", 0).factory(), or null before Java 21
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builder)).invoke();
+            MethodHandle name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class, long.class));
+            Object named = name.invoke(ofVirtual, "mcp-virtual-", 0L);
+            MethodHandle factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            return (ThreadFactory) factory.invoke(named);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * A Jetty pool that starts a fresh virtual thread per job. Virtual threads
+     * are cheap enough that pooling them buys nothing, and there is no size to
+     * run out of, so Jetty is never told it is low on threads.
+     */
+    static final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+        private final ThreadFactory factory;
+        private final AtomicInteger running = new AtomicInteger();
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        VirtualThreadPool(ThreadFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void execute(Runnable job) {
+            factory.newThread(() -> {
+                running.incrementAndGet();
+                try {
+                    job.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }).start();
+        }
+
+        @Override
+        protected void doStop() {
+            stopped.countDown();
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            stopped.await();
+        }
+
+        @Override
+        public int getThreads() {
+            return running.get();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return 0;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+    }
+}
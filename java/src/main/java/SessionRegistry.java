@@ -0,0 +1,155 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The live Streamable HTTP sessions of the MCP HTTP server.
+ *
+ * A session starts when a client POSTs initialize without an Mcp-Session-Id
+ * and ends with DELETE /mcp, or once it has had no open stream and no
+ * requests for the idle timeout. One background thread sweeps the sessions:
+ * it writes a heartbeat comment to every open stream and drops idle sessions.
+ *
+ * Clients that never send Mcp-Session-Id keep working statelessly, one
+ * response per POST as before. So does an initialize that finds
+ * MCP_SESSION_MAX sessions open: it gets no session rather than an error,
+ * and only session features such as GET /mcp are out of its reach.
+ *
+ * Environment variables:
+ *   MCP_SESSION_MAX              most sessions at once, default 10000
+ *   MCP_SESSION_REPLAY           events kept per session for Last-Event-ID, default 256
+ *   MCP_SESSION_HEARTBEAT_MS     interval between heartbeats and sweeps, default 15000
+ *   MCP_SESSION_IDLE_TIMEOUT_MS  how long a session without a stream is kept, default 300000
+ */
+public final class SessionRegistry {
+    public static final String SESSION_HEADER = "Mcp-Session-Id";
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private final ConcurrentHashMap<String, McpSession> sessions = new ConcurrentHashMap<>();
+    // Places taken under maxSessions; reserved before a session is added, so concurrent creates cannot overshoot
+    private final AtomicInteger open = new AtomicInteger();
+    private final int maxSessions;
+    private final int replayCapacity;
+    private final long heartbeatMs;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+    private ScheduledExecutorService sweeper;
+
+    SessionRegistry(int maxSessions, int replayCapacity, long heartbeatMs, long idleTimeoutMs, LongSupplier clock) {
+        if (maxSessions < 1 || replayCapacity < 1 || heartbeatMs < 1 || idleTimeoutMs < 1) {
+            throw new IllegalArgumentException("Session limits, replay size, heartbeat and idle timeout must be positive");
+        }
+        this.maxSessions = maxSessions;
+        this.replayCapacity = replayCapacity;
+        this.heartbeatMs = heartbeatMs;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.clock = clock;
+    }
+
+    public static SessionRegistry fromEnvironment() {
+        return fromEnvironment(System.getenv());
+    }
+
+    static SessionRegistry fromEnvironment(Map<String, String> env) {
+        return new SessionRegistry(
+                ServerExecutor.intSetting(env, "MCP_SESSION_MAX", 10000),
+                ServerExecutor.intSetting(env, "MCP_SESSION_REPLAY", 256),
+                ServerExecutor.intSetting(env, "MCP_SESSION_HEARTBEAT_MS", 15000),
+                ServerExecutor.intSetting(env, "MCP_SESSION_IDLE_TIMEOUT_MS", 300000),
+                System::nanoTime);
+    }
+
+    // Starts the heartbeat and idle sweep; the thread is a daemon, so it never keeps the JVM alive
+    public synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(job -> {
+            Thread thread = new Thread(job, "mcp-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a new session.
+     *
+     * @return the session, or null when MCP_SESSION_MAX sessions are already open
+     */
+    public McpSession create() {
+        int taken;
+        do {
+            taken = open.get();
+            if (taken >= maxSessions) {
+                return null;
+            }
+        } while (!open.compareAndSet(taken, taken + 1));
+        McpSession session = new McpSession(UUID.randomUUID().toString(), replayCapacity, clock);
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    // The session with this id, marked as just used, or null if there is none
+    public McpSession get(String id) {
+        McpSession session = sessions.get(id);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    // Ends a session and closes its stream; false if there was no such session
+    public boolean remove(String id) {
+        McpSession session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        open.decrementAndGet();
+        session.close();
+        return true;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // Streams queue at most this many unsent events, the same as a session can replay
+    public int getReplayCapacity() {
+        return replayCapacity;
+    }
+
+    void sweep() {
+        for (McpSession session : sessions.values()) {
+            if (session.isIdle(idleTimeoutNanos)) {
+                remove(session.getId());
+            } else {
+                session.heartbeat();
+            }
+        }
+    }
+
+    // What /health reports
+    public Map<String, Object> describe() {
+        int streams = 0;
+        for (McpSession session : sessions.values()) {
+            if (session.hasStream()) {
+                streams++;
+            }
+        }
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("open", sessions.size());
+        info.put("streams", streams);
+        info.put("max", maxSessions);
+        info.put("replay", replayCapacity);
+        info.put("heartbeatMs", heartbeatMs);
+        info.put("idleTimeoutMs", TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos));
+        return info;
+    }
+}
@@ -0,0 +1,310 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * An expression flattened into postfix instructions for a small stack machine.
+ *
+ * The AST scatters nodes across the heap and evaluates by recursion; a single
+ * int[] walked by one loop keeps evaluation cache friendly and recursion free.
+ * The same int[] doubles as a compact serialized form, so a program can be
+ * stored or shipped and executed without the original source or parser.
+ *
+ * Encoding: each instruction is one opcode, and PUSH, LOAD and STORE are
+ * followed by their operand, a value or a frame slot. STORE leaves the value
+ * on the stack, since an assignment is itself an expression. Checked
+ * operations delegate to Arithmetic so errors match the tree-walker exactly.
+ */
+public final class StackProgram {
+    static final int PUSH = 0;
+    static final int ADD = 1;
+    static final int SUB = 2;
+    static final int MUL = 3;
+    static final int DIV = 4;
+    static final int MOD = 5;
+    static final int POW = 6;
+    static final int FACT = 7;
+    static final int NEG = 8;
+    static final int LOAD = 9;
+    static final int STORE = 10;
+
+    private final int[] code;
+    private final int maxStack;
+    // One more than the highest slot the program touches
+    private final int frameSize;
+
+    private StackProgram(int[] code, int[] shape) {
+        this.code = code;
+        this.maxStack = shape[0];
+        this.frameSize = shape[1];
+    }
+
+    public static StackProgram compile(ASTNode node) {
+        if (node instanceof RenderNode) {
+            throw new IllegalArgumentException("Cannot compile render expression");
+        }
+        Emitter emitter = new Emitter();
+        emitter.emit(node);
+        int[] code = new int[emitter.length];
+        System.arraycopy(emitter.code, 0, code, 0, emitter.length);
+        return new StackProgram(code, verify(code));
+    }
+
+    // Programs from outside are untrusted, so the stack discipline is checked before they can run
+    public static StackProgram fromCode(int[] code) {
+        int[] copy = code.clone();
+        return new StackProgram(copy, verify(copy));
+    }
+
+    public static StackProgram fromBytes(byte[] bytes) {
+        if (bytes.length % Integer.BYTES != 0) {
+            throw new IllegalArgumentException("Truncated program");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] code = new int[bytes.length / Integer.BYTES];
+        buffer.asIntBuffer().get(code);
+        return new StackProgram(code, verify(code));
+    }
+
+    public int[] toCode() {
+        return code.clone();
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(code.length * Integer.BYTES);
+        buffer.asIntBuffer().put(code);
+        return buffer.array();
+    }
+
+    public int execute() {
+        return execute(ASTNode.NO_VARIABLES, null);
+    }
+
+    public int execute(EvaluationBudget.Meter meter) {
+        return execute(ASTNode.NO_VARIABLES, meter);
+    }
+
+    // The frame length the program needs
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    // Charges meter once per instruction when it is not null
+    public int execute(int[] frame, EvaluationBudget.Meter meter) {
+        if (frame.length < frameSize) {
+            throw new IllegalArgumentException("Program needs a frame of " + frameSize + " slots, got " + frame.length);
+        }
+        int[] stack = new int[maxStack];
+        int sp = 0;
+        int pc = 0;
+
+        while (pc < code.length) {
+            if (meter != null) {
+                meter.charge();
+            }
+            switch (code[pc++]) {
+                case PUSH:
+                    stack[sp++] = code[pc++];
+                    break;
+                case ADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case SUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case MUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case DIV:
+                    sp--;
+                    stack[sp - 1] = Arithmetic.divide(stack[sp - 1], stack[sp]);
+                    break;
+                case MOD:
+                    sp--;
+                    stack[sp - 1] = Arithmetic.modulo(stack[sp - 1], stack[sp]);
+                    break;
+                case POW:
+                    sp--;
+                    stack[sp - 1] = Arithmetic.power(stack[sp - 1], stack[sp]);
+                    break;
+                case FACT:
+                    stack[sp - 1] = Arithmetic.factorial(stack[sp - 1]);
+                    break;
+                case NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case LOAD:
+                    stack[sp++] = frame[code[pc++]];
+                    break;
+                case STORE:
+                    frame[code[pc++]] = stack[sp - 1];
+                    break;
+                default:
+                    throw new IllegalStateException("Corrupt program at " + (pc - 1));
+            }
+        }
+
+        return stack[0];
+    }
+
+    // Returns the deepest stack and the frame size the program needs, so execute() can check and size them once
+    private static int[] verify(int[] code) {
+        int depth = 0;
+        int maxDepth = 0;
+        int frameSize = 0;
+        int pc = 0;
+
+        while (pc < code.length) {
+            int opcode = code[pc++];
+            switch (opcode) {
+                case PUSH:
+                    if (pc >= code.length) {
+                        throw new IllegalArgumentException("Missing operand for PUSH at " + (pc - 1));
+                    }
+                    pc++;
+                    depth++;
+                    break;
+                case LOAD:
+                case STORE:
+                    if (pc >= code.length) {
+                        throw new IllegalArgumentException("Missing slot for " + (opcode == LOAD ? "LOAD" : "STORE") + " at " + (pc - 1));
+                    }
+                    if (code[pc] < 0) {
+                        throw new IllegalArgumentException("Negative slot at " + (pc - 1));
+                    }
+                    if (opcode == STORE && depth < 1) {
+                        throw new IllegalArgumentException("Stack underflow at " + (pc - 1));
+                    }
+                    frameSize = (int) Math.max(frameSize, Math.min(Integer.MAX_VALUE, code[pc] + 1L));
+                    pc++;
+                    if (opcode == LOAD) {
+                        depth++;
+                    }
+                    break;
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case MOD:
+                case POW:
+                    if (depth < 2) {
+                        throw new IllegalArgumentException("Stack underflow at " + (pc - 1));
+                    }
+                    depth--;
+                    break;
+                case FACT:
+                case NEG:
+                    if (depth < 1) {
+                        throw new IllegalArgumentException("Stack underflow at " + (pc - 1));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + opcode + " at " + (pc - 1));
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        if (depth != 1) {
+            throw new IllegalArgumentException("Program must leave exactly one result");
+        }
+        return new int[]{maxDepth, frameSize};
+    }
+
+    private static class Emitter {
+        int[] code = new int[16];
+        int length;
+
+        // Post-order walk on an explicit stack so deeply nested trees compile without recursion
+        void emit(ASTNode root) {
+            Deque<ASTNode> pending = new ArrayDeque<>();
+            Deque<ASTNode> completed = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                ASTNode node = pending.pop();
+                if (node instanceof NumberNode) {
+                    add(PUSH);
+                    add(((NumberNode) node).getValue());
+                    continue;
+                }
+                if (node instanceof VariableNode) {
+                    add(LOAD);
+                    add(((VariableNode) node).getSlot());
+                    continue;
+                }
+                if (!completed.isEmpty() && completed.peek() == node) {
+                    completed.pop();
+                    if (node instanceof AssignNode) {
+                        add(STORE);
+                        add(((AssignNode) node).getSlot());
+                    } else {
+                        add(opcode(node));
+                    }
+                    continue;
+                }
+                if (node instanceof AssignNode) {
+                    pending.push(node);
+                    completed.push(node);
+                    pending.push(((AssignNode) node).getValue());
+                } else if (node instanceof UnaryOpNode) {
+                    pending.push(node);
+                    completed.push(node);
+                    pending.push(((UnaryOpNode) node).getOperand());
+                } else if (node instanceof BinaryOpNode) {
+                    BinaryOpNode binary = (BinaryOpNode) node;
+                    pending.push(node);
+                    completed.push(node);
+                    pending.push(binary.getRight());
+                    pending.push(binary.getLeft());
+                } else {
+                    throw new IllegalArgumentException("Cannot compile node: " + node.getClass().getSimpleName());
+                }
+            }
+        }
+
+        private int opcode(ASTNode node) {
+            if (node instanceof UnaryOpNode) {
+                char operator = ((UnaryOpNode) node).getOperator();
+                switch (operator) {
+                    case '!':
+                        return FACT;
+                    case '-':
+                        return NEG;
+                    default:
+                        throw new IllegalArgumentException("Unknown unary operator: " + operator);
+                }
+            }
+            return binaryOpcode(((BinaryOpNode) node).getOperator());
+        }
+
+        private int binaryOpcode(char operator) {
+            switch (operator) {
+                case '+':
+                    return ADD;
+                case '-':
+                    return SUB;
+                case '*':
+                    return MUL;
+                case '/':
+                    return DIV;
+                case '%':
+                    return MOD;
+                case '^':
+                    return POW;
+                default:
+                    throw new IllegalArgumentException("Unknown operator: " + operator);
+            }
+        }
+
+        private void add(int value) {
+            if (length == code.length) {
+                int[] grown = new int[code.length * 2];
+                System.arraycopy(code, 0, grown, 0, length);
+                code = grown;
+            }
+            code[length++] = value;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * MCP over standard input and output, the transport local agent runners
+ * prefer because it needs no port and no HTTP stack.
+ *
+ * Messages are newline-delimited JSON, as the MCP stdio transport specifies.
+ * Input is read through one growable buffer, and each complete line is
+ * parsed directly from that buffer. Responses are gathered in a buffer and
+ * written to the channel with one call per message. Notifications get no
+ * output.
+ *
+ * A message longer than MCP_STDIO_MAX_MESSAGE bytes (default 16 MB) is
+ * answered with a parse error and skipped up to the next newline, so one
+ * runaway line cannot exhaust memory.
+ */
+public final class StdioTransport implements McpTransport {
+    static final int DEFAULT_MAX_MESSAGE = 16 * 1024 * 1024;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private final ReadableByteChannel input;
+    private final WritableByteChannel output;
+    private final int maxMessage;
+
+    public StdioTransport(ReadableByteChannel input, WritableByteChannel output, int maxMessage) {
+        if (maxMessage < 1) {
+            throw new IllegalArgumentException("Maximum message size must be positive");
+        }
+        this.input = input;
+        this.output = output;
+        this.maxMessage = maxMessage;
+    }
+
+    public static StdioTransport standard() {
+        StdioTransport transport = new StdioTransport(
+                new FileInputStream(FileDescriptor.in).getChannel(),
+                new FileOutputStream(FileDescriptor.out).getChannel(),
+                ServerExecutor.intSetting(System.getenv(), "MCP_STDIO_MAX_MESSAGE", DEFAULT_MAX_MESSAGE));
+        // Responses go straight to the descriptor; anything else printed to stdout would corrupt the stream
+        System.setOut(System.err);
+        return transport;
+    }
+
+    @Override
+    public void serve(McpDispatcher dispatcher) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(INITIAL_BUFFER, maxMessage));
+        ChannelOutput out = new ChannelOutput(output);
+        // Where the newline search resumes; bytes before it are known not to end a message
+        int scanFrom = 0;
+        boolean discarding = false;
+
+        while (true) {
+            boolean eof = input.read(buffer) < 0;
+            byte[] data = buffer.array();
+            int end = buffer.position();
+            int start = 0;
+
+            for (int i = scanFrom; i < end; i++) {
+                if (data[i] == '\n') {
+                    if (discarding) {
+                        discarding = false;
+                    } else {
+                        message(dispatcher, data, start, i, out);
+                    }
+                    start = i + 1;
+                }
+            }
+
+            if (eof) {
+                if (!discarding && start < end) {
+                    message(dispatcher, data, start, end, out);
+                }
+                return;
+            }
+
+            // Keep the unfinished message, moved to the front
+            int pending = discarding ? 0 : end - start;
+            System.arraycopy(data, start, data, 0, pending);
+            buffer.position(pending);
+            scanFrom = pending;
+
+            if (!buffer.hasRemaining()) {
+                if (buffer.capacity() >= maxMessage) {
+                    dispatcher.writeError(out, false, -32700, "Parse error: message exceeds " + maxMessage + " bytes");
+                    out.write('\n');
+                    out.send();
+                    discarding = true;
+                    buffer.clear();
+                    scanFrom = 0;
+                } else {
+                    ByteBuffer larger = ByteBuffer.allocate((int) Math.min((long) buffer.capacity() * 2, maxMessage));
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        }
+    }
+
+    private static void message(McpDispatcher dispatcher, byte[] data, int start, int end, ChannelOutput out) throws IOException {
+        // Tolerate CRLF line endings and blank keep-alive lines
+        while (end > start && Character.isWhitespace(data[end - 1])) {
+            end--;
+        }
+        while (start < end && Character.isWhitespace(data[start])) {
+            start++;
+        }
+        if (start == end) {
+            return;
+        }
+        if (dispatcher.handle(data, start, end - start, out, false)) {
+            out.write('\n');
+            out.send();
+        }
+    }
+
+    /**
+     * Buffers a response so it reaches the channel in one write. flush() is a
+     * no-op, because the handler flushes before the newline that ends the
+     * message; send() does the real write.
+     */
+    private static final class ChannelOutput extends OutputStream {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER);
+
+        ChannelOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                send();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.remaining()) {
+                send();
+                if (length > buffer.capacity()) {
+                    drain(ByteBuffer.wrap(bytes, offset, length));
+                    return;
+                }
+            }
+            buffer.put(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        void send() throws IOException {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        private void drain(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull-based lexer that reads its input through a small fixed window.
+ *
+ * Some batch jobs produce single expressions hundreds of megabytes long. Lexer
+ * needs them as one String and tokenizes everything up front; this lexer hands
+ * the parser one token at a time straight from a Reader, CharSequence or
+ * ByteBuffer, so peak memory is roughly the size of the resulting AST.
+ *
+ * Accepts exactly the same language and raises the same errors as Lexer.
+ */
+public class StreamingLexer implements TokenSource {
+    private static final int WINDOW = 8192;
+    private static final String RENDER = "render";
+
+    private final Readable input;
+    private final CharBuffer window = CharBuffer.allocate(WINDOW);
+    private boolean exhausted;
+    private int type = -1;
+    private int value;
+    private final StringBuilder word = new StringBuilder();
+    // The digits of the current BIG_NUMBER or DECIMAL
+    private final StringBuilder digits = new StringBuilder();
+
+    public StreamingLexer(Reader input) {
+        this((Readable) input);
+    }
+
+    public StreamingLexer(CharSequence input) {
+        this((Readable) CharBuffer.wrap(input));
+    }
+
+    // Decodes incrementally, so the bytes are never copied into one big char[]
+    public StreamingLexer(ByteBuffer input) {
+        this((Readable) new DecodingReadable(input));
+    }
+
+    private StreamingLexer(Readable input) {
+        this.input = input;
+        this.window.flip();
+    }
+
+    @Override
+    public int nextToken() {
+        if (type == TokenBuffer.EOF) {
+            return type;
+        }
+
+        int current = peek();
+        while (current != -1 && Character.isWhitespace(current)) {
+            window.get();
+            current = peek();
+        }
+
+        if (current == -1) {
+            type = TokenBuffer.EOF;
+        } else if (Character.isDigit(current)) {
+            value = readNumber();
+            if (peek() == '.') {
+                readFraction(value);
+                type = TokenBuffer.DECIMAL;
+            } else {
+                type = value < 0 ? TokenBuffer.BIG_NUMBER : TokenBuffer.NUMBER;
+            }
+        } else if (Lexer.isIdentifierStart(current)) {
+            type = readWord();
+        } else {
+            window.get();
+            if (current == '!') {
+                type = TokenBuffer.FACTORIAL;
+            } else if (isOperator((char) current)) {
+                type = TokenBuffer.OPERATOR;
+                value = current;
+            } else if (current == '(') {
+                type = TokenBuffer.LPAREN;
+            } else if (current == ')') {
+                type = TokenBuffer.RPAREN;
+            } else {
+                throw new IllegalArgumentException("Unexpected character: " + (char) current);
+            }
+        }
+        return type;
+    }
+
+    @Override
+    public int value() {
+        return value;
+    }
+
+    @Override
+    public String text() {
+        switch (type) {
+            case TokenBuffer.NUMBER:
+                return Integer.toString(value);
+            case TokenBuffer.BIG_NUMBER:
+            case TokenBuffer.DECIMAL:
+                return digits.toString();
+            case TokenBuffer.OPERATOR:
+                return String.valueOf((char) value);
+            case TokenBuffer.FACTORIAL:
+                return "!";
+            case TokenBuffer.LPAREN:
+                return "(";
+            case TokenBuffer.RPAREN:
+                return ")";
+            case TokenBuffer.RENDER:
+                return RENDER;
+            case TokenBuffer.IDENTIFIER:
+                return word.toString();
+            default:
+                return "";
+        }
+    }
+
+    @Override
+    public String describe() {
+        return TokenType.values()[type] + "(" + text() + ")";
+    }
+
+    // -1 for a literal too large for an int, whose digits are collected instead
+    private int readNumber() {
+        int result = 0;
+        int current = peek();
+        while (current != -1 && Character.isDigit(current)) {
+            int digit = Character.digit(current, 10);
+            if (result > (Integer.MAX_VALUE - digit) / 10) {
+                return readBigNumber(result);
+            }
+            result = result * 10 + digit;
+            window.get();
+            current = peek();
+        }
+        return result;
+    }
+
+    private int readBigNumber(int prefix) {
+        digits.setLength(0);
+        digits.append(prefix);
+        int current = peek();
+        while (current != -1 && Character.isDigit(current)) {
+            digits.append((char) current);
+            window.get();
+            current = peek();
+        }
+        return -1;
+    }
+
+    // Appends the point and the digits after it to the integer part, which is in digits already when it was big
+    private void readFraction(int whole) {
+        if (whole >= 0) {
+            digits.setLength(0);
+            digits.append(whole);
+        }
+        digits.append('.');
+        window.get();
+        int current = peek();
+        if (current == -1 || !Character.isDigit(current)) {
+            throw new IllegalArgumentException("Unexpected character: .");
+        }
+        while (current != -1 && Character.isDigit(current)) {
+            digits.append((char) current);
+            window.get();
+            current = peek();
+        }
+    }
+
+    private int readWord() {
+        word.setLength(0);
+        int current = peek();
+        while (current != -1 && Lexer.isIdentifierPart(current)) {
+            word.append((char) current);
+            window.get();
+            current = peek();
+        }
+
+        if (word.length() == RENDER.length() && RENDER.contentEquals(word)) {
+            return TokenBuffer.RENDER;
+        }
+        return TokenBuffer.IDENTIFIER;
+    }
+
+    private boolean isOperator(char c) {
+        return Operator.binary(c) != null;
+    }
+
+    // The next char without consuming it, refilling the window as needed; -1 at end of input
+    private int peek() {
+        if (!window.hasRemaining()) {
+            if (exhausted) {
+                return -1;
+            }
+            window.clear();
+            try {
+                int read;
+                do {
+                    read = input.read(window);
+                } while (read == 0);
+                if (read < 0) {
+                    exhausted = true;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            window.flip();
+            if (!window.hasRemaining()) {
+                return -1;
+            }
+        }
+        return window.get(window.position());
+    }
+
+    private static class DecodingReadable implements Readable {
+        private final ByteBuffer bytes;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private boolean done;
+
+        DecodingReadable(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(CharBuffer target) throws IOException {
+            if (done) {
+                return -1;
+            }
+            int start = target.position();
+            CoderResult result = decoder.decode(bytes, target, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!bytes.hasRemaining()) {
+                decoder.flush(target);
+                done = true;
+            }
+            int read = target.position() - start;
+            return read == 0 && done ? -1 : read;
+        }
+    }
+}
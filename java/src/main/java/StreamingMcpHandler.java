@@ -0,0 +1,356 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Answers a single /mcp POST straight from the request bytes to the response
+ * stream.
+ *
+ * The tree-based path builds a JsonNode for the request and an ObjectNode for
+ * the response, serializes that to a String and, for SSE, copies it once more
+ * into the "data:" frame. A large render output is therefore held three times
+ * over. Here the request is read token by token into a few fields and the
+ * response, SSE framing included, is generated directly onto the output
+ * stream.
+ *
+ * Batches are rare and need the whole array before anything can be answered,
+ * so they are still read as a tree and passed to the tree dispatcher.
+ */
+public final class StreamingMcpHandler {
+    private static final byte[] SSE_PREFIX = "data: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SSE_SUFFIX = "\n\n".getBytes(StandardCharsets.US_ASCII);
+    // Method labels for messages that have no method of their own
+    static final String BATCH = "batch";
+    static final String INVALID = "invalid";
+
+    private final ObjectMapper mapper;
+    private final JsonFactory factory;
+    private final Interpreter calculator;
+    private final ResponseTemplates templates;
+    private final Function<JsonNode, JsonNode> treeDispatcher;
+
+    /**
+     * @param treeDispatcher answers a batch array, returning null when there
+     *                       is nothing to send back
+     */
+    public StreamingMcpHandler(ObjectMapper mapper, Interpreter calculator, ResponseTemplates templates,
+                               Function<JsonNode, JsonNode> treeDispatcher) {
+        this.mapper = mapper;
+        // Leave the servlet stream open so the SSE suffix can follow the JSON
+        this.factory = mapper.getFactory().copy().setCodec(mapper).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.calculator = calculator;
+        this.templates = templates;
+        this.treeDispatcher = treeDispatcher;
+    }
+
+    /**
+     * Reads one JSON-RPC request or batch from body and writes the answer to out.
+     *
+     * @return false when nothing was written because the message was a
+     *         notification or a batch of them; out is untouched, so the
+     *         caller can still set the status
+     */
+    public boolean handle(byte[] body, OutputStream out, boolean sse) throws IOException {
+        return handle(body, 0, body.length, out, sse);
+    }
+
+    // Reads the request from a slice, so framed transports need not copy each message out of their buffer
+    public boolean handle(byte[] body, int offset, int length, OutputStream out, boolean sse) throws IOException {
+        Metrics metrics = calculator.getMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+        Request request = new Request();
+        JsonNode batch = null;
+        String parseError = null;
+        try (JsonParser parser = factory.createParser(body, offset, length)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                batch = mapper.readTree(parser);
+            } else if (token == JsonToken.START_OBJECT) {
+                request.read(parser);
+            }
+        } catch (IOException e) {
+            parseError = e.getMessage();
+        }
+        if (metrics != null) {
+            metrics.record(Metrics.Phase.DECODE, System.nanoTime() - start);
+        }
+
+        if (parseError != null) {
+            writeError(out, sse, -32700, "Parse error: " + parseError);
+            recordMethod(metrics, INVALID, start, true);
+            return true;
+        }
+
+        // JSON-RPC never answers a notification
+        if (batch == null && request.method != null && !request.hasId) {
+            recordMethod(metrics, request.method, start, false);
+            return false;
+        }
+
+        // Work out the answer first, so ENCODE times only the writing
+        JsonNode batchResponse = null;
+        McpDispatcher.ToolResult outcome = null;
+        if (batch != null) {
+            batchResponse = treeDispatcher.apply(batch);
+            if (batchResponse == null) {
+                recordMethod(metrics, BATCH, start, false);
+                return false;
+            }
+        } else if (request.isCalculateCall()) {
+            outcome = McpDispatcher.calculate(calculator, request.expression, request.maxOperations, request.timeoutMs,
+                    request.numeric);
+        }
+
+        long encodeStart = metrics == null ? 0 : System.nanoTime();
+        boolean error = false;
+        if (sse) {
+            out.write(SSE_PREFIX);
+        }
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            if (batchResponse != null) {
+                mapper.writeTree(generator, batchResponse);
+            } else {
+                error = writeResponse(generator, request, outcome);
+            }
+        }
+        if (sse) {
+            out.write(SSE_SUFFIX);
+        }
+        out.flush();
+        if (metrics != null) {
+            metrics.record(Metrics.Phase.ENCODE, System.nanoTime() - encodeStart);
+            recordMethod(metrics, batch != null ? BATCH : request.method == null ? INVALID : request.method, start, error);
+        }
+        return true;
+    }
+
+    private static void recordMethod(Metrics metrics, String method, long start, boolean error) {
+        if (metrics != null) {
+            metrics.recordMethod(method, System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * The method of a single request, read without touching the rest of it.
+     * Null for batches, for requests without a method and for anything that
+     * does not parse; handle() reports those properly.
+     */
+    public String method(byte[] body) {
+        try (JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("method".equals(field)) {
+                    return value.isScalarValue() ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // Left for handle() to answer with a parse error
+        }
+        return null;
+    }
+
+    /**
+     * Writes an error response without an id, for failures that happen before
+     * the request could be read or that do not depend on it, such as shedding
+     * load.
+     */
+    public void writeError(OutputStream out, boolean sse, int code, String message) throws IOException {
+        if (sse) {
+            out.write(SSE_PREFIX);
+        }
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("jsonrpc", "2.0");
+            writeError(generator, code, message);
+            generator.writeEndObject();
+        }
+        if (sse) {
+            out.write(SSE_SUFFIX);
+        }
+        out.flush();
+    }
+
+    // Returns whether the response was a JSON-RPC error, the tool's own errors included
+    private boolean writeResponse(JsonGenerator generator, Request request, McpDispatcher.ToolResult outcome) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("jsonrpc", "2.0");
+        if (request.hasId) {
+            generator.writeFieldName("id");
+            request.writeId(generator);
+        }
+
+        SerializableString cached = request.method == null ? null : templates.result(request.method);
+        boolean error = false;
+        if (request.method == null) {
+            writeError(generator, -32600, "Invalid Request: missing method");
+            error = true;
+        } else if (cached != null) {
+            generator.writeFieldName("result");
+            generator.writeRawValue(cached);
+        } else if ("tools/call".equals(request.method)) {
+            generator.writeFieldName("result");
+            error = writeToolCall(generator, request, outcome);
+        } else {
+            writeError(generator, -32601, "Method not found: " + request.method);
+            error = true;
+        }
+        generator.writeEndObject();
+        return error;
+    }
+
+    // outcome is the calculate result, computed beforehand; null for the error cases
+    private boolean writeToolCall(JsonGenerator generator, Request request, McpDispatcher.ToolResult outcome) throws IOException {
+        generator.writeStartObject();
+        boolean error = outcome == null;
+        if (!request.hasToolName) {
+            writeError(generator, -32602, "Invalid params: missing tool name");
+        } else if (!"calculate".equals(request.toolName)) {
+            writeError(generator, -32602, "Unknown tool: " + request.toolName);
+        } else {
+            generator.writeArrayFieldStart("content");
+            generator.writeStartObject();
+            generator.writeStringField("type", "text");
+            generator.writeStringField("text", outcome.text);
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeBooleanField("isError", outcome.isError);
+        }
+        generator.writeEndObject();
+        return error;
+    }
+
+    private static void writeError(JsonGenerator generator, int code, String message) throws IOException {
+        generator.writeObjectFieldStart("error");
+        generator.writeNumberField("code", code);
+        generator.writeStringField("message", message);
+        generator.writeEndObject();
+    }
+
+    /**
+     * The few request fields the dispatcher looks at. Everything else is
+     * skipped without being materialized.
+     */
+    private static final class Request {
+        boolean hasId;
+        JsonToken idToken;
+        String idText;
+        JsonNode idTree;
+        String method;
+        boolean hasToolName;
+        String toolName;
+        String expression;
+        long maxOperations;
+        long timeoutMs;
+        String numeric;
+
+        // Parser is positioned on the request's START_OBJECT
+        void read(JsonParser parser) throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id":
+                        hasId = true;
+                        idToken = value;
+                        if (value.isStructStart()) {
+                            idTree = parser.readValueAsTree();
+                        } else {
+                            idText = parser.getText();
+                        }
+                        break;
+                    case "method":
+                        method = scalarText(parser);
+                        break;
+                    case "params":
+                        if (value == JsonToken.START_OBJECT) {
+                            readParams(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+
+        private void readParams(JsonParser parser) throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("name".equals(field)) {
+                    hasToolName = true;
+                    toolName = scalarText(parser);
+                } else if ("arguments".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String argument = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("expression".equals(argument)) {
+                            expression = scalarText(parser);
+                        } else if ("maxOperations".equals(argument)) {
+                            maxOperations = scalarLong(parser);
+                        } else if ("timeoutMs".equals(argument)) {
+                            timeoutMs = scalarLong(parser);
+                        } else if ("numeric".equals(argument)) {
+                            numeric = scalarText(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        // Mirrors JsonNode.asText(): containers read as "" and null as "null"
+        private static String scalarText(JsonParser parser) throws IOException {
+            if (parser.currentToken().isStructStart()) {
+                parser.skipChildren();
+                return "";
+            }
+            return parser.getText();
+        }
+
+        // Mirrors JsonNode.asLong(0)
+        private static long scalarLong(JsonParser parser) throws IOException {
+            if (parser.currentToken().isStructStart()) {
+                parser.skipChildren();
+                return 0;
+            }
+            return parser.getValueAsLong(0);
+        }
+
+        boolean isCalculateCall() {
+            return "tools/call".equals(method) && hasToolName && "calculate".equals(toolName);
+        }
+
+        void writeId(JsonGenerator generator) throws IOException {
+            if (idTree != null) {
+                generator.writeTree(idTree);
+            } else if (idToken == JsonToken.VALUE_STRING) {
+                generator.writeString(idText);
+            } else if (idToken.isNumeric()) {
+                generator.writeNumber(idText);
+            } else if (idToken.isBoolean()) {
+                generator.writeBoolean(idToken == JsonToken.VALUE_TRUE);
+            } else {
+                generator.writeNull();
+            }
+        }
+    }
+}
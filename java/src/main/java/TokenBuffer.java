@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The lexer's output packed into parallel primitive arrays instead of one Token
+ * object (plus a String, plus a StringBuilder) per token.
+ *
+ * On parse-heavy workloads those objects were most of the garbage we produced.
+ * Here a token is just an index: its type code, its [start, end) span in the
+ * source, and a pre-decoded int value - the number for NUMBER tokens and the
+ * operator char for OPERATOR tokens. Text is only cut out of the source when
+ * an error message, a BIG_NUMBER or DECIMAL literal, an identifier or the legacy List<Token> view needs
+ * it.
+ */
+final class TokenBuffer {
+    // Same order as TokenType, so a code doubles as an index into TokenType.values()
+    static final int NUMBER = 0;
+    static final int OPERATOR = 1;
+    static final int FACTORIAL = 2;
+    static final int LPAREN = 3;
+    static final int RPAREN = 4;
+    static final int RENDER = 5;
+    static final int EOF = 6;
+    // A literal too large for an int; it has no value, the parser reads its text
+    static final int BIG_NUMBER = 7;
+    // A variable name, read with text() like BIG_NUMBER
+    static final int IDENTIFIER = 8;
+    // A literal with a decimal point, read with text() like BIG_NUMBER
+    static final int DECIMAL = 9;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] values;
+    private int size;
+
+    TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        int initial = Math.max(capacity, 4);
+        this.types = new int[initial];
+        this.starts = new int[initial];
+        this.ends = new int[initial];
+        this.values = new int[initial];
+    }
+
+    // Adapts token lists built by hand (mostly in tests) to the packed form the parser reads
+    static TokenBuffer of(List<Token> tokens) {
+        StringBuilder text = new StringBuilder();
+        TokenBuffer buffer = new TokenBuffer(text, tokens.size());
+        for (Token token : tokens) {
+            int start = text.length();
+            text.append(token.value);
+            int code = token.type.ordinal();
+            int value = 0;
+            if (code == NUMBER) {
+                value = Integer.parseInt(token.value);
+            } else if (code == OPERATOR) {
+                value = token.value.charAt(0);
+            }
+            buffer.add(code, start, text.length(), value);
+        }
+        return buffer;
+    }
+
+    void add(int type, int start, int end, int value) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = end;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int type(int index) {
+        return types[index];
+    }
+
+    int value(int index) {
+        return values[index];
+    }
+
+    String text(int index) {
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    // Matches Token.toString() so error messages read the same as before
+    String describe(int index) {
+        return TYPES[types[index]] + "(" + text(index) + ")";
+    }
+
+    // Reads the buffer front to back for the parser, which only ever needs the current token
+    TokenSource cursor() {
+        return new TokenSource() {
+            private int index = -1;
+
+            @Override
+            public int nextToken() {
+                if (index < size - 1) {
+                    index++;
+                }
+                return types[index];
+            }
+
+            @Override
+            public int value() {
+                return values[index];
+            }
+
+            @Override
+            public String text() {
+                return TokenBuffer.this.text(index);
+            }
+
+            @Override
+            public String describe() {
+                return TokenBuffer.this.describe(index);
+            }
+        };
+    }
+
+    List<Token> toTokens() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(new Token(TYPES[types[i]], text(i)));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * A pull-based token stream: the parser asks for one token at a time instead of
+ * receiving a finished list, so a lexer reading from a Reader never has to hold
+ * the whole input or all of its tokens in memory.
+ *
+ * Type codes are the TokenBuffer constants. After EOF, nextToken() keeps
+ * returning EOF.
+ */
+interface TokenSource {
+    // Advances to the next token and returns its type code
+    int nextToken();
+
+    // The current token's number (NUMBER) or operator char (OPERATOR)
+    int value();
+
+    // The current token as written; this is how the parser reads BIG_NUMBER and DECIMAL literals and identifiers
+    String text();
+
+    // The current token formatted like Token.toString(), for error messages
+    String describe();
+}
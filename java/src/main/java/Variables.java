@@ -0,0 +1,89 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The variables of a parsed expression, numbered by the parser in order of
+ * first appearance. A frame is a primitive array indexed by these slots, so
+ * evaluation reads frame[slot] and never looks a name up.
+ *
+ * Inputs are the variables the expression reads before anything in it
+ * assigns them; the caller has to bind those in the frame. The rest only
+ * carry values from an assignment to later uses, such as x in
+ * (x = 3) * x + x.
+ */
+public final class Variables {
+    static final Variables NONE = new Variables(new String[0], new boolean[0], new boolean[0], Map.of());
+
+    private final String[] names;
+    private final boolean[] inputs;
+    private final boolean[] assigned;
+    private final Map<String, Integer> slots;
+
+    Variables(String[] names, boolean[] inputs, boolean[] assigned, Map<String, Integer> slots) {
+        this.names = names;
+        this.inputs = inputs;
+        this.assigned = assigned;
+        this.slots = slots;
+    }
+
+    // The length a frame needs
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    // -1 when the expression has no such variable
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public boolean isInput(int slot) {
+        return inputs[slot];
+    }
+
+    // Whether the expression assigns the variable anywhere; an input can be assigned too, as in x = x + 1
+    public boolean isAssigned(int slot) {
+        return assigned[slot];
+    }
+
+    // Without assignments the frame is only read, so subtrees can be evaluated in any order
+    boolean hasAssignments() {
+        for (boolean slot : assigned) {
+            if (slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The inputs by name, in slot order
+    public String[] inputs() {
+        String[] result = new String[names.length];
+        int count = 0;
+        for (int slot = 0; slot < names.length; slot++) {
+            if (inputs[slot]) {
+                result[count++] = names[slot];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Null when every variable is assigned before it is read
+    String firstInput() {
+        for (int slot = 0; slot < names.length; slot++) {
+            if (inputs[slot]) {
+                return names[slot];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
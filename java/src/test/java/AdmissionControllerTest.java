@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private AdmissionController controller(int limit, int queue, long queueTimeoutMs) {
+        return new AdmissionController(limit, 1, 100, queue, queueTimeoutMs, 50, now::get);
+    }
+
+    @Test
+    public void testRejectsWhenLimitAndQueueAreFull() {
+        AdmissionController admission = controller(2, 0, 0);
+        assertNotNull(admission.tryAcquire());
+        assertNotNull(admission.tryAcquire());
+        assertNull(admission.tryAcquire());
+
+        Map<String, Object> info = admission.describe();
+        assertEquals(2, info.get("inFlight"));
+        assertEquals(2L, info.get("accepted"));
+        assertEquals(1L, info.get("rejectedQueueFull"));
+    }
+
+    @Test
+    public void testQueuedRequestTimesOut() {
+        AdmissionController admission = controller(1, 1, 10);
+        assertNotNull(admission.tryAcquire());
+        assertNull(admission.tryAcquire());
+        assertEquals(1L, admission.describe().get("rejectedTimeout"));
+        assertEquals(0, admission.describe().get("queued"));
+    }
+
+    @Test
+    public void testQueuedRequestGetsFreedSlot() throws Exception {
+        AdmissionController admission = controller(1, 1, 10000);
+        AdmissionController.Permit first = admission.tryAcquire();
+
+        CompletableFuture<AdmissionController.Permit> waiting = CompletableFuture.supplyAsync(admission::tryAcquire);
+        while (!Integer.valueOf(1).equals(admission.describe().get("queued"))) {
+            Thread.sleep(1);
+        }
+        first.release();
+
+        assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(1, admission.describe().get("inFlight"));
+    }
+
+    @Test
+    public void testSlowRequestsShrinkLimit() {
+        AdmissionController admission = controller(10, 0, 0);
+        AdmissionController.Permit permit = admission.tryAcquire();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        permit.release();
+        assertEquals(9, admission.getLimit());
+
+        // Releasing twice must not count the request twice
+        permit.release();
+        assertEquals(9, admission.getLimit());
+        assertEquals(0, admission.describe().get("inFlight"));
+    }
+
+    @Test
+    public void testFastRequestsGrowLimitWhileSaturated() {
+        AdmissionController admission = controller(4, 0, 0);
+        for (int round = 0; round < 10; round++) {
+            AdmissionController.Permit[] permits = new AdmissionController.Permit[admission.getLimit()];
+            for (int i = 0; i < permits.length; i++) {
+                permits[i] = admission.tryAcquire();
+                assertNotNull(permits[i]);
+            }
+            for (AdmissionController.Permit permit : permits) {
+                permit.release();
+            }
+        }
+        assertTrue(admission.getLimit() > 4);
+    }
+
+    @Test
+    public void testIdleTrafficDoesNotGrowLimit() {
+        AdmissionController admission = controller(4, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            admission.tryAcquire().release();
+        }
+        assertEquals(4, admission.getLimit());
+    }
+
+    @Test
+    public void testReadsSettings() {
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_ADMISSION_LIMIT", "8");
+        assertEquals(8, AdmissionController.fromEnvironment(env).getLimit());
+
+        env.put("MCP_ADMISSION_MIN_LIMIT", "16");
+        assertThrows(IllegalArgumentException.class, () -> AdmissionController.fromEnvironment(env));
+    }
+}
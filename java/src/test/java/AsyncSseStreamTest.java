@@ -0,0 +1,199 @@
+import org.junit.jupiter.api.Test;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncSseStreamTest {
+    private final McpSession session = new SessionRegistry(10, 10, 1000, 5000, () -> 0L).create();
+    private final StubOutput out = new StubOutput();
+    private AsyncListener listener;
+    private int completions;
+    // Whether the session had the stream by the time the headers went out
+    private Boolean attachedAtFlush;
+
+    // A connection that takes writes only while ready, like a container whose socket buffer has filled up
+    private static final class StubOutput extends ServletOutputStream {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        boolean ready = true;
+        boolean failing;
+        int flushes;
+        WriteListener listener;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            listener = writeListener;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (!ready) {
+                throw new IllegalStateException("Write while not ready");
+            }
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            written.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        // The container noticing the connection drained
+        void drain() throws IOException {
+            ready = true;
+            listener.onWritePossible();
+        }
+
+        String text() {
+            return new String(written.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private AsyncSseStream open(int maxQueued, ResponseCompression.FrameEncoder encoder) throws IOException {
+        return open(maxQueued, encoder, null);
+    }
+
+    private AsyncSseStream open(int maxQueued, ResponseCompression.FrameEncoder encoder, String lastEventId) throws IOException {
+        AsyncContext context = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{AsyncContext.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("addListener")) {
+                        listener = (AsyncListener) args[0];
+                    } else if (method.getName().equals("complete")) {
+                        completions++;
+                    }
+                    return null;
+                });
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> method.getName().equals("startAsync") ? context : null);
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("flushBuffer")) {
+                        attachedAtFlush = session.hasStream();
+                    }
+                    return method.getName().equals("getOutputStream") ? out : null;
+                });
+        return AsyncSseStream.open(session, maxQueued, encoder, request, response, lastEventId);
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStalledWritesGoOutWhenTheConnectionDrains() throws IOException {
+        open(10, null);
+        out.ready = false;
+        session.send(json("{\"id\":1}"));
+        session.send(json("{\"id\":2}"));
+        assertEquals("", out.text());
+
+        out.drain();
+        assertEquals("id: 1\ndata: {\"id\":1}\n\nid: 2\ndata: {\"id\":2}\n\n", out.text());
+        assertEquals(1, out.flushes);
+        assertTrue(session.hasStream());
+        assertEquals(0, completions);
+    }
+
+    @Test
+    public void testAttachesBeforeHeadersGoOut() throws IOException {
+        long first = session.send(json("{\"id\":1}"));
+        session.send(json("{\"id\":2}"));
+        open(10, null, Long.toString(first));
+
+        // A client that sees the stream open can count on its next POST being answered there
+        assertEquals(Boolean.TRUE, attachedAtFlush);
+        // The replay waited for the connection and then went out
+        assertEquals("id: 2\ndata: {\"id\":2}\n\n", out.text());
+    }
+
+    @Test
+    public void testClientTooFarBehindIsCutOff() throws IOException {
+        AsyncSseStream stream = open(2, null);
+        out.ready = false;
+        session.send(json("{\"id\":1}"));
+        session.send(json("{\"id\":2}"));
+        assertTrue(session.hasStream());
+
+        // The third frame does not fit in the queue, so the stream closes and the session lets go of it
+        session.send(json("{\"id\":3}"));
+        assertFalse(session.hasStream());
+        assertFalse(stream.write(json("late")));
+        // Completing has to wait until the connection can take it
+        assertEquals(0, completions);
+
+        out.drain();
+        // Queued frames are dropped; the client resumes from its last event id instead
+        assertEquals("", out.text());
+        assertEquals(1, completions);
+        out.drain();
+        assertEquals(1, completions);
+    }
+
+    @Test
+    public void testCloseFinishesGzipStream() throws IOException {
+        AsyncSseStream stream = open(10, new ResponseCompression(true, 0).frames(ResponseCompression.Encoding.GZIP));
+        session.send(json("{\"id\":1}"));
+        byte[] firstEvent = out.written.toByteArray();
+        assertTrue(firstEvent.length > 0);
+
+        out.ready = false;
+        stream.close();
+        assertEquals(0, completions);
+        out.drain();
+        assertEquals(1, completions);
+
+        // The whole body is one gzip stream, trailer included
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.written.toByteArray()))) {
+            assertEquals("id: 1\ndata: {\"id\":1}\n\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testDisconnectDetachesFromSession() throws IOException {
+        AsyncSseStream stream = open(10, null);
+        assertTrue(session.hasStream());
+
+        listener.onComplete(null);
+        assertFalse(session.hasStream());
+        assertFalse(stream.write(json("{}")));
+        // A late callback after the exchange ended writes nothing
+        stream.onWritePossible();
+        session.send(json("{\"id\":1}"));
+        assertEquals("", out.text());
+    }
+
+    @Test
+    public void testWriteFailureCompletesExchange() throws IOException {
+        AsyncSseStream stream = open(10, null);
+        out.failing = true;
+        session.send(json("{\"id\":1}"));
+
+        assertEquals(1, completions);
+        assertFalse(session.hasStream());
+        assertFalse(stream.write(json("{}")));
+    }
+}
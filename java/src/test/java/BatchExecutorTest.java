@@ -0,0 +1,125 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchExecutorTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BatchExecutor batches = new BatchExecutor(mapper, 10, 4);
+
+    // Echoes the request id back as the result
+    private final Function<JsonNode, JsonNode> echo = request -> {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        response.set("result", request.get("id"));
+        return response;
+    };
+
+    private ArrayNode parse(String json) throws Exception {
+        return (ArrayNode) mapper.readTree(json);
+    }
+
+    @Test
+    public void testResponsesKeepRequestOrder() throws Exception {
+        ArrayNode batch = mapper.createArrayNode();
+        for (int i = 0; i < 10; i++) {
+            batch.addObject().put("jsonrpc", "2.0").put("id", i).put("method", "ping");
+        }
+        // Later elements finish first
+        JsonNode responses = batches.execute(batch, request -> {
+            try {
+                Thread.sleep(20 - 2 * request.get("id").asInt());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return echo.apply(request);
+        });
+
+        assertEquals(10, responses.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, responses.get(i).get("id").asInt());
+        }
+    }
+
+    @Test
+    public void testRunsElementsConcurrently() throws Exception {
+        // Every element waits for all the others, so this only finishes if they run side by side
+        CountDownLatch started = new CountDownLatch(3);
+        JsonNode responses = batches.execute(parse("[{\"id\":1},{\"id\":2},{\"id\":3}]"), request -> {
+            started.countDown();
+            try {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return echo.apply(request);
+        });
+        assertEquals(3, responses.size());
+    }
+
+    @Test
+    public void testPerElementErrors() throws Exception {
+        JsonNode responses = batches.execute(parse("[{\"id\":1}, 42, {\"id\":3,\"fail\":true}]"), request -> {
+            if (request.has("fail")) {
+                throw new IllegalStateException("boom");
+            }
+            return echo.apply(request);
+        });
+
+        assertEquals(3, responses.size());
+        assertEquals(1, responses.get(0).get("result").asInt());
+        assertEquals(-32600, responses.get(1).get("error").get("code").asInt());
+        assertTrue(responses.get(1).get("id").isNull());
+        assertEquals(3, responses.get(2).get("id").asInt());
+        assertEquals("Internal error: boom", responses.get(2).get("error").get("message").asText());
+    }
+
+    @Test
+    public void testNotificationsAreNotAnswered() throws Exception {
+        Map<String, Boolean> seen = new ConcurrentHashMap<>();
+        Function<JsonNode, JsonNode> recording = request -> {
+            seen.put(request.get("method").asText(), true);
+            return echo.apply(request);
+        };
+
+        JsonNode responses = batches.execute(parse("[{\"method\":\"a\"},{\"id\":2,\"method\":\"b\"}]"), recording);
+        assertEquals(1, responses.size());
+        assertEquals(2, responses.get(0).get("id").asInt());
+
+        assertNull(batches.execute(parse("[{\"method\":\"c\"},{\"method\":\"d\"}]"), recording));
+    }
+
+    @Test
+    public void testRejectsEmptyAndOversizedBatches() throws Exception {
+        JsonNode empty = batches.execute(mapper.createArrayNode(), echo);
+        assertEquals(-32600, empty.get("error").get("code").asInt());
+
+        ArrayNode large = mapper.createArrayNode();
+        for (int i = 0; i < 11; i++) {
+            large.addObject().put("id", i);
+        }
+        JsonNode oversized = batches.execute(large, echo);
+        assertTrue(oversized.isObject());
+        assertEquals("Invalid Request: batch of 11 exceeds the maximum of 10", oversized.get("error").get("message").asText());
+    }
+
+    @Test
+    public void testReadsSettings() {
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_BATCH_MAX_SIZE", "7");
+        assertEquals(7, BatchExecutor.fromEnvironment(mapper, env).getMaxSize());
+        assertEquals(BatchExecutor.DEFAULT_MAX_SIZE, BatchExecutor.fromEnvironment(mapper, new HashMap<>()).getMaxSize());
+
+        env.put("MCP_BATCH_THREADS", "0");
+        assertThrows(IllegalArgumentException.class, () -> BatchExecutor.fromEnvironment(mapper, env));
+    }
+}
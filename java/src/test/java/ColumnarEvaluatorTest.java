@@ -0,0 +1,197 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ColumnarEvaluatorTest {
+    // Not a multiple of the chunk size, so the last chunk is partial
+    private static final int ROWS = 2 * ColumnarEvaluator.CHUNK + 77;
+
+    private final Interpreter interpreter = new Interpreter();
+
+    private static int[][] intColumns(Variables variables, Random random, int bound) {
+        int[][] columns = new int[variables.size()][];
+        for (int slot = 0; slot < columns.length; slot++) {
+            if (variables.isInput(slot)) {
+                columns[slot] = new int[ROWS];
+                for (int row = 0; row < ROWS; row++) {
+                    columns[slot][row] = random.nextInt(2 * bound + 1) - bound;
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static int[] row(int[][] columns, int row) {
+        int[] frame = new int[columns.length];
+        for (int slot = 0; slot < columns.length; slot++) {
+            if (columns[slot] != null) {
+                frame[slot] = columns[slot][row];
+            }
+        }
+        return frame;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "a + b * c",
+        "a - b - c",
+        "-a * (b + 3) % 7",
+        "a / b + c % a",
+        "b ^ (c % 5)",
+        "!(a % 14)",
+        "(t = a * 2) + t * b",
+        "c = c + 1",
+        "(x = a) / (x = b) + x",
+        "2147483647 * a + 5"
+    })
+    public void testMatchesRowByRow(String expression) {
+        ParsedExpression parsed = interpreter.parse(expression);
+        int[][] columns = intColumns(parsed.getVariables(), new Random(7), 20);
+        int[] results = new int[ROWS];
+
+        BitSet errors = interpreter.evaluateColumns(parsed, columns, results);
+
+        for (int row = 0; row < ROWS; row++) {
+            int[] frame = row(columns, row);
+            try {
+                assertEquals(interpreter.evaluate(parsed, frame), results[row], "row " + row);
+                assertFalse(errors.get(row), "row " + row);
+            } catch (ArithmeticException e) {
+                assertTrue(errors.get(row), "row " + row);
+                assertEquals(0, results[row]);
+            }
+        }
+    }
+
+    @Test
+    public void testErrorsDoNotStopOtherRows() {
+        ParsedExpression parsed = interpreter.parse("100 / x");
+        int[] results = new int[4];
+        BitSet errors = interpreter.evaluateColumns(parsed, new int[][]{{5, 0, -4, 0}}, results);
+
+        assertArrayEquals(new int[]{20, 0, -25, 0}, results);
+        assertEquals(BitSet.valueOf(new long[]{0b1010}), errors);
+    }
+
+    @Test
+    public void testExactRedoesOverflowingRows() {
+        ParsedExpression parsed = interpreter.parse("x * x / x + y");
+        long big = 1L << 40;
+        long[] results = new long[4];
+        BitSet errors = interpreter.evaluateColumnsExact(parsed,
+                new long[][]{{3, big, big, 0}, {1, 1, Long.MAX_VALUE, 2}}, results);
+
+        // The square of 2^40 overflows a long, but the result does not
+        assertEquals(4, results[0]);
+        assertEquals(big + 1, results[1]);
+        // big + Long.MAX_VALUE does not fit in a long, and 0 / 0 throws
+        assertEquals(BitSet.valueOf(new long[]{0b1100}), errors);
+        assertEquals(0, results[2]);
+    }
+
+    @Test
+    public void testExactMatchesExactEvaluator() {
+        ParsedExpression parsed = interpreter.parse("a * b * b - !(c % 25) + a ^ (c % 4) + 99999999999999999999 / 1000000000000");
+        Variables variables = parsed.getVariables();
+        Random random = new Random(11);
+        long[][] columns = new long[variables.size()][ROWS];
+        for (long[] column : columns) {
+            for (int row = 0; row < ROWS; row++) {
+                column[row] = random.nextLong() >> random.nextInt(64);
+            }
+        }
+        long[] results = new long[ROWS];
+        BitSet errors = interpreter.evaluateColumnsExact(parsed, columns, results);
+
+        for (int row = 0; row < ROWS; row++) {
+            long[] frame = new long[columns.length];
+            for (int slot = 0; slot < frame.length; slot++) {
+                frame[slot] = columns[slot][row];
+            }
+            BigInteger expected;
+            try {
+                expected = ExactEvaluator.toBigInteger(interpreter.evaluateExact(parsed, frame));
+            } catch (ArithmeticException e) {
+                expected = null;
+            }
+            if (expected == null || expected.bitLength() >= 64) {
+                assertTrue(errors.get(row), "row " + row);
+            } else {
+                assertFalse(errors.get(row), "row " + row);
+                assertEquals(expected.longValue(), results[row], "row " + row);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsBadColumns() {
+        ParsedExpression parsed = interpreter.parse("(t = 1) + x");
+        Exception missing = assertThrows(IllegalArgumentException.class,
+                () -> interpreter.evaluateColumns(parsed, new int[][]{{1}, null}, new int[1]));
+        assertEquals("Missing column for variable x", missing.getMessage());
+        Exception shortColumn = assertThrows(IllegalArgumentException.class,
+                () -> interpreter.evaluateColumns(parsed, new int[][]{null, {1}}, new int[2]));
+        assertEquals("Column x has 1 rows, expected at least 2", shortColumn.getMessage());
+        // t is assigned before it is read, so it needs no column
+        int[] results = new int[2];
+        interpreter.evaluateColumns(parsed, new int[][]{null, {4, 5}}, results);
+        assertArrayEquals(new int[]{5, 6}, results);
+
+        assertThrows(NumberFormatException.class,
+                () -> interpreter.evaluateColumns(interpreter.parse("x + 99999999999"), new int[][]{{1}}, new int[1]));
+        assertThrows(IllegalArgumentException.class,
+                () -> interpreter.evaluateColumns(interpreter.parse("render x"), new int[][]{{1}}, new int[1]));
+    }
+
+    @Test
+    public void testDeepTree() {
+        StringBuilder expression = new StringBuilder("x");
+        for (int i = 0; i < 5000; i++) {
+            expression.insert(0, "(1 + ").append(')');
+        }
+        ParsedExpression parsed = interpreter.parse(expression.toString());
+        int[] results = new int[100];
+        int[] column = new int[100];
+        for (int row = 0; row < column.length; row++) {
+            column[row] = row;
+        }
+        assertTrue(interpreter.evaluateColumns(parsed, new int[][]{column}, results).isEmpty());
+        assertEquals(5099, results[99]);
+    }
+
+    @Test
+    public void testVectorKernelsMatchScalar() {
+        assumeTrue(!(ColumnarEvaluator.KERNELS instanceof ColumnKernels.Scalar), "Vector API not available");
+        ColumnKernels scalar = new ColumnKernels.Scalar();
+        ColumnKernels vector = ColumnarEvaluator.KERNELS;
+        Random random = new Random(3);
+        int length = 1000;
+        int[] left = random.ints(length).toArray();
+        int[] right = random.ints(length).toArray();
+
+        int[] expected = left.clone();
+        int[] actual = left.clone();
+        scalar.multiply(expected, right, length);
+        vector.multiply(actual, right, length);
+        assertArrayEquals(expected, actual);
+        scalar.subtract(expected, right, length);
+        vector.subtract(actual, right, length);
+        assertArrayEquals(expected, actual);
+
+        long[] small = random.longs(length, -1000, 1000).toArray();
+        long[] wide = small.clone();
+        assertFalse(vector.addExact(wide, small, length));
+        // One overflowing lane in the tail or the body is enough
+        wide[length - 1] = Long.MAX_VALUE;
+        small[length - 1] = 1;
+        assertTrue(vector.addExact(wide, small, length));
+        wide[3] = Long.MIN_VALUE;
+        small[3] = 1;
+        assertTrue(vector.subtractExact(wide, small, 8));
+    }
+}
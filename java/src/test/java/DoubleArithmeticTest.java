@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DoubleArithmeticTest {
+
+    @Test
+    public void testIntegerFactorials() {
+        assertEquals(1.0, DoubleArithmetic.factorial(0));
+        assertEquals(120.0, DoubleArithmetic.factorial(5));
+        // Exact as far as a double goes: 22! is the last one with no rounding
+        assertEquals(1124000727777607680000.0, DoubleArithmetic.factorial(22));
+        assertTrue(Double.isFinite(DoubleArithmetic.factorial(170)));
+        assertEquals(Double.POSITIVE_INFINITY, DoubleArithmetic.factorial(171));
+        Exception negative = assertThrows(ArithmeticException.class, () -> DoubleArithmetic.factorial(-3));
+        assertEquals("Factorial of negative integer", negative.getMessage());
+    }
+
+    @Test
+    public void testGammaForNonIntegers() {
+        double sqrtPi = Math.sqrt(Math.PI);
+        assertEquals(sqrtPi / 2, DoubleArithmetic.factorial(0.5), 1e-15);
+        assertEquals(sqrtPi, DoubleArithmetic.factorial(-0.5), 1e-14);
+        // Through the reflection formula
+        assertEquals(-2 * sqrtPi, DoubleArithmetic.factorial(-1.5), 1e-14);
+        assertEquals(52.34277778455352, DoubleArithmetic.factorial(4.5), 1e-12);
+        // Large arguments would overflow t ^ (x + 0.5) if it were not split
+        assertEquals(150.5, DoubleArithmetic.factorial(150.5) / DoubleArithmetic.factorial(149.5), 1e-10);
+        assertTrue(Double.isFinite(DoubleArithmetic.factorial(170.5)));
+        assertEquals(Double.POSITIVE_INFINITY, DoubleArithmetic.factorial(171.5));
+    }
+
+    @Test
+    public void testNonFiniteOperands() {
+        assertEquals(Double.POSITIVE_INFINITY, DoubleArithmetic.factorial(Double.POSITIVE_INFINITY));
+        assertTrue(Double.isNaN(DoubleArithmetic.factorial(Double.NEGATIVE_INFINITY)));
+        assertTrue(Double.isNaN(DoubleArithmetic.factorial(Double.NaN)));
+    }
+
+    @Test
+    public void testZeroDivisorsFailLikeInts() {
+        assertEquals("Division by zero",
+                assertThrows(ArithmeticException.class, () -> DoubleArithmetic.divide(1.5, 0)).getMessage());
+        assertEquals("Modulo by zero",
+                assertThrows(ArithmeticException.class, () -> DoubleArithmetic.modulo(1.5, -0.0)).getMessage());
+        assertEquals(-1.5, DoubleArithmetic.modulo(-7.5, 2));
+        assertEquals(0.25, DoubleArithmetic.divide(1, 4));
+    }
+}
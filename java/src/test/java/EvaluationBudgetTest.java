@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvaluationBudgetTest {
+
+    @Test
+    public void testOperationLimit() {
+        EvaluationBudget.Meter meter = EvaluationBudget.of(3, 0).start();
+        meter.charge();
+        meter.charge();
+        meter.charge();
+        Exception e = assertThrows(IllegalStateException.class, meter::charge);
+        assertEquals("Evaluation budget exceeded: more than 3 operations", e.getMessage());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        EvaluationBudget.Meter meter = EvaluationBudget.of(0, 1).start();
+        Thread.sleep(5);
+        // The clock is only read every CLOCK_INTERVAL charges
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < EvaluationBudget.CLOCK_INTERVAL; i++) {
+                meter.charge();
+            }
+        });
+    }
+
+    @Test
+    public void testUnlimitedNeverRunsOut() {
+        EvaluationBudget.Meter meter = EvaluationBudget.UNLIMITED.start();
+        for (int i = 0; i < 100000; i++) {
+            meter.charge();
+        }
+        assertSame(EvaluationBudget.UNLIMITED, EvaluationBudget.of(0, 0));
+    }
+
+    @Test
+    public void testTightenTakesStricterLimits() {
+        EvaluationBudget server = EvaluationBudget.of(1000, 50);
+
+        EvaluationBudget narrower = server.tighten(EvaluationBudget.of(10, 0));
+        assertEquals(10, narrower.getMaxOperations());
+        assertEquals(50, narrower.getTimeoutMillis());
+
+        EvaluationBudget wider = server.tighten(EvaluationBudget.of(5000, 500));
+        assertEquals(1000, wider.getMaxOperations());
+        assertEquals(50, wider.getTimeoutMillis());
+
+        assertSame(EvaluationBudget.UNLIMITED, EvaluationBudget.UNLIMITED.tighten(EvaluationBudget.UNLIMITED));
+    }
+
+    @Test
+    public void testRejectsNegativeLimits() {
+        assertThrows(IllegalArgumentException.class, () -> EvaluationBudget.of(-1, 0));
+        assertThrows(IllegalArgumentException.class, () -> EvaluationBudget.of(0, -1));
+    }
+
+    @Test
+    public void testReadsSettings() {
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_MAX_OPERATIONS", "500");
+        env.put("MCP_EVAL_TIMEOUT_MS", "0");
+        EvaluationBudget budget = EvaluationBudget.fromEnvironment(env);
+        assertEquals(500, budget.getMaxOperations());
+        assertEquals(0, budget.getTimeoutMillis());
+        assertEquals("500 operations", budget.toString());
+    }
+}
@@ -0,0 +1,172 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import java.math.BigInteger;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExactEvaluatorTest {
+
+    private Number evaluate(String expression) {
+        return ExactEvaluator.evaluate(new Parser(new Lexer(expression).tokenizePacked()).parse());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "'2 + 3 * 4', 14",
+        "'-7 / 2', -3",
+        "'-7 % 3', -1",
+        "'0 ^ 0', 1",
+        "'(0 - 1) ^ 2147483647', -1",
+        "'!5', 120"
+    })
+    public void testSmallResultsMatchIntMode(String expression, long expected) {
+        Number result = evaluate(expression);
+        assertTrue(result instanceof Long);
+        assertEquals(expected, result.longValue());
+        assertEquals((int) expected, new Parser(new Lexer(expression).tokenizePacked()).parse().evaluate());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "'2147483647 + 1', 2147483648",
+        "'65536 * 65536', 4294967296",
+        "'2 ^ 62', 4611686018427387904",
+        "'!20', 2432902008176640000",
+        "'2 ^ 64', 18446744073709551616",
+        "'2 ^ 100', 1267650600228229401496703205376",
+        "'!25', 15511210043330985984000000",
+        "'9223372036854775807 + 1', 9223372036854775808",
+        "'0 - 9223372036854775808', -9223372036854775808",
+        "'(0 - 9223372036854775808) / (0 - 1)', 9223372036854775808",
+        "'99999999999999999999 % 7', 1"
+    })
+    public void testPromotesOnOverflow(String expression, String expected) {
+        assertEquals(new BigInteger(expected), ExactEvaluator.toBigInteger(evaluate(expression)));
+    }
+
+    @Test
+    public void testDemotesWhenResultFitsAgain() {
+        Number result = evaluate("!30 / !29");
+        assertTrue(result instanceof Long);
+        assertEquals(30L, result);
+        assertEquals(Long.MIN_VALUE, evaluate("0 - 9223372036854775808"));
+    }
+
+    @Test
+    public void testErrorsMatchIntMode() {
+        assertEquals("Division by zero", assertThrows(ArithmeticException.class, () -> evaluate("!30 / 0")).getMessage());
+        assertEquals("Modulo by zero", assertThrows(ArithmeticException.class, () -> evaluate("5 % (2 - 2)")).getMessage());
+        assertEquals("Negative exponent not supported for integers",
+                assertThrows(ArithmeticException.class, () -> evaluate("2 ^ -1")).getMessage());
+        assertEquals("Factorial of negative number", assertThrows(ArithmeticException.class, () -> evaluate("!(0 - 3)")).getMessage());
+        // The left operand fails first, as in the tree walk
+        assertEquals("Division by zero", assertThrows(ArithmeticException.class, () -> evaluate("1 / 0 + 1 % 0")).getMessage());
+    }
+
+    @Test
+    public void testRefusesHugeResults() {
+        assertThrows(ArithmeticException.class, () -> evaluate("9 ^ 999999999"));
+        assertThrows(ArithmeticException.class, () -> evaluate("!100000"));
+        assertThrows(ArithmeticException.class, () -> evaluate("(2 ^ 600000) * (2 ^ 600000)"));
+        // Trivial bases stay cheap whatever the exponent
+        assertEquals(-1L, evaluate("(0 - 1) ^ 99999999999999999999"));
+        assertEquals(BigInteger.ONE.shiftLeft(ExactArithmetic.MAX_BITS - 1),
+                ExactEvaluator.toBigInteger(evaluate("2 ^ " + (ExactArithmetic.MAX_BITS - 1))));
+    }
+
+    @Test
+    public void testFactorialLimit() {
+        int n = ExactArithmetic.MAX_FACTORIAL;
+        assertTrue(ExactArithmetic.factorial(BigInteger.valueOf(n)).bitLength() <= ExactArithmetic.MAX_BITS);
+        assertThrows(ArithmeticException.class, () -> ExactArithmetic.factorial(BigInteger.valueOf(n + 1)));
+    }
+
+    @Test
+    public void testFactorialMethodsAgree() {
+        BigInteger expected = BigInteger.ONE;
+        for (int n = 1; n <= 2000; n++) {
+            expected = expected.multiply(BigInteger.valueOf(n));
+            if (n % 97 == 0 || n < 40 || n == ExactArithmetic.SPLIT_FACTORIAL_MIN || n == ExactArithmetic.CACHED_FACTORIAL_MIN) {
+                assertEquals(expected, ExactArithmetic.factorialBySplitting(n), "n = " + n);
+                assertEquals(expected, ExactArithmetic.factorialByRuns(n), "n = " + n);
+                assertEquals(expected, ExactArithmetic.factorial(BigInteger.valueOf(n)), "n = " + n);
+            }
+        }
+        int largest = ExactArithmetic.MAX_FACTORIAL;
+        assertEquals(ExactArithmetic.factorialByRuns(largest), ExactArithmetic.factorialBySplitting(largest));
+    }
+
+    @Test
+    public void testLargeFactorialsAreCached() {
+        BigInteger first = ExactArithmetic.factorial(BigInteger.valueOf(5000));
+        assertSame(first, ExactArithmetic.factorial(BigInteger.valueOf(5000)));
+        // 5000! has 16,326 digits
+        assertEquals(16326, first.toString().length());
+    }
+
+    @Test
+    public void testLargeOperandsThroughInterpreter() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setNumericMode(NumericMode.EXACT);
+        assertEquals(BigInteger.valueOf(3).pow(100000), interpreter.interpretAsBigInteger("3 ^ 100000"));
+        assertEquals(ExactArithmetic.factorialByRuns(5000), interpreter.interpretAsBigInteger("!5000"));
+        assertEquals(BigInteger.valueOf(5001), interpreter.interpretAsBigInteger("!5001 / !5000"));
+    }
+
+    @Test
+    public void testDeepTreeAndMeter() {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            expression.append("(2 * ");
+        }
+        expression.append('1');
+        for (int i = 0; i < 50_000; i++) {
+            expression.append(')');
+        }
+        ASTNode ast = new Parser(new Lexer(expression.toString()).tokenizePacked()).parse();
+        assertEquals(BigInteger.ONE.shiftLeft(50_000), ExactEvaluator.toBigInteger(ExactEvaluator.evaluate(ast)));
+
+        EvaluationBudget.Meter meter = EvaluationBudget.of(1000, 0).start();
+        assertThrows(IllegalStateException.class, () -> ExactEvaluator.evaluate(ast, meter));
+    }
+
+    @Test
+    public void testMeterChargesBigOperationsBySize() {
+        // Refused before the multiplications start: the result alone is about 16,000 words
+        ASTNode factorial = new Parser(new Lexer("!71421").tokenizePacked()).parse();
+        IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> ExactEvaluator.evaluate(factorial, EvaluationBudget.of(1000, 0).start()));
+        assertTrue(refused.getMessage().contains("operations"));
+
+        // Each factorial is distinct, so none comes from the cache, and the deadline is read before every one
+        StringBuilder expression = new StringBuilder("!71421");
+        for (int i = 1; i < 20; i++) {
+            expression.append(" + !").append(71421 - i);
+        }
+        ASTNode sum = new Parser(new Lexer(expression.toString()).tokenizePacked()).parse();
+        IllegalStateException late = assertTimeoutPreemptively(Duration.ofSeconds(3), () ->
+                assertThrows(IllegalStateException.class, () -> ExactEvaluator.evaluate(sum, EvaluationBudget.of(0, 50).start())));
+        assertTrue(late.getMessage().contains("ms"));
+    }
+
+    @Test
+    public void testKernelsCheckDeadlineBetweenSteps() throws InterruptedException {
+        EvaluationBudget.Meter unlimited = EvaluationBudget.of(0, 60_000).start();
+        for (long base : new long[]{3, -3, 12, -12, 1L << 40, 1000003}) {
+            BigInteger expected = BigInteger.valueOf(base).pow(777);
+            assertEquals(expected, ExactArithmetic.power(BigInteger.valueOf(base), BigInteger.valueOf(777), unlimited), "base = " + base);
+        }
+        assertEquals(ExactArithmetic.factorialBySplitting(3000), ExactArithmetic.factorial(BigInteger.valueOf(3000), unlimited));
+
+        // Already charged by the caller, so only the reads between steps can stop these
+        EvaluationBudget.Meter expired = EvaluationBudget.of(0, 1).start();
+        Thread.sleep(5);
+        int n = ExactArithmetic.MAX_FACTORIAL - 7;
+        assertThrows(IllegalStateException.class, () -> ExactArithmetic.factorial(BigInteger.valueOf(n), expired));
+        assertThrows(IllegalStateException.class, () -> ExactArithmetic.factorial(BigInteger.valueOf(100), expired));
+        assertThrows(IllegalStateException.class, () -> ExactArithmetic.power(BigInteger.valueOf(3), BigInteger.valueOf(600_000), expired));
+        // Nothing half-computed was cached
+        assertEquals(ExactArithmetic.factorialBySplitting(n), ExactArithmetic.factorial(BigInteger.valueOf(n)));
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionCompilerTest {
+
+    private Interpreter interpreter;
+
+    @BeforeEach
+    public void setUp() {
+        interpreter = new Interpreter();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42",
+        "2 + 3 * 4",
+        "(2 + 3) * 4",
+        "2 ^ 3 ^ 2",
+        "!5 + 2",
+        "-(3 + 5)",
+        "100 / 7 % 3",
+        "123456 * 7890",
+        "2 ^ 3 + 4 * 5 - 6 / 2"
+    })
+    public void testCompiledMatchesTreeWalker(String expression) {
+        CompiledExpression compiled = interpreter.compile(expression);
+        assertEquals(interpreter.interpretAsInt(expression), compiled.evaluate());
+    }
+
+    @Test
+    public void testCompiledHandleIsReusable() {
+        CompiledExpression compiled = interpreter.compile("!3 + 4 * 5");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(26, compiled.evaluate());
+        }
+    }
+
+    @Test
+    public void testCompiledDivisionByZero() {
+        CompiledExpression compiled = interpreter.compile("10 / (5 - 5)");
+        Exception exception = assertThrows(ArithmeticException.class, compiled::evaluate);
+        assertEquals("Division by zero", exception.getMessage());
+    }
+
+    @Test
+    public void testCompiledModuloByZero() {
+        CompiledExpression compiled = interpreter.compile("10 % 0");
+        Exception exception = assertThrows(ArithmeticException.class, compiled::evaluate);
+        assertEquals("Modulo by zero", exception.getMessage());
+    }
+
+    @Test
+    public void testCompiledFactorialLimits() {
+        assertThrows(ArithmeticException.class, interpreter.compile("!13")::evaluate);
+        assertThrows(ArithmeticException.class, interpreter.compile("!(0 - 1)")::evaluate);
+    }
+
+    @Test
+    public void testCompiledErrorsSurfaceInEvaluationOrder() {
+        CompiledExpression compiled = interpreter.compile("(1 / 0) + (1 % 0)");
+        Exception exception = assertThrows(ArithmeticException.class, compiled::evaluate);
+        assertEquals("Division by zero", exception.getMessage());
+    }
+
+    @Test
+    public void testCompileRenderThrows() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            interpreter.compile("render 2 + 3");
+        });
+    }
+
+    @Test
+    public void testCompileHugeExpressionFallsBack() {
+        // 65536 leaves produce more bytecode than a single JVM method may hold
+        interpreter.setOptimizing(false);
+        assertEquals(65536, interpreter.compile(balancedSum(16)).evaluate());
+    }
+
+    private static String balancedSum(int depth) {
+        if (depth == 0) {
+            return "1";
+        }
+        String half = balancedSum(depth - 1);
+        return "(" + half + " + " + half + ")";
+    }
+}
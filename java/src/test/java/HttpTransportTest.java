@@ -0,0 +1,139 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Drives the session routes over real HTTP; Spark is one server per JVM, so it is started once for the class
+public class HttpTransportTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HttpClient CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private static URI endpoint;
+    private static SessionRegistry sessions;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Map<String, String> env = Map.of("MCP_SESSION_MAX", "20");
+        sessions = SessionRegistry.fromEnvironment(env);
+        HttpTransport transport = new HttpTransport(port, ServerExecutor.fromEnvironment(env),
+                AdmissionController.fromEnvironment(env), sessions,
+                ResponseCompression.fromEnvironment(env));
+        transport.serve(new McpDispatcher(MAPPER, new Interpreter(), ResponseTemplates.standard(MAPPER),
+                new BatchExecutor(MAPPER, 10, 2)));
+        endpoint = URI.create("http://localhost:" + port + "/mcp");
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        Spark.stop();
+        Spark.awaitStop();
+    }
+
+    private static HttpRequest.Builder request(String sessionId) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(endpoint).timeout(Duration.ofSeconds(10));
+        return sessionId == null ? builder : builder.header(SessionRegistry.SESSION_HEADER, sessionId);
+    }
+
+    private static HttpResponse<String> post(String sessionId, String body) throws Exception {
+        return CLIENT.send(request(sessionId).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String initialize() throws Exception {
+        HttpResponse<String> response = post(null, "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\"}");
+        assertEquals(200, response.statusCode());
+        return response.headers().firstValue(SessionRegistry.SESSION_HEADER).orElseThrow();
+    }
+
+    // The next data line of the stream, skipping heartbeats and event ids
+    private static String nextData(BufferedReader stream) throws Exception {
+        String line;
+        while ((line = stream.readLine()) != null) {
+            if (line.startsWith("data: ")) {
+                return line.substring("data: ".length());
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testUnknownSessionIsNotFound() throws Exception {
+        HttpResponse<String> posted = post("no-such-session", "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}");
+        assertEquals(404, posted.statusCode());
+        assertEquals(-32001, MAPPER.readTree(posted.body()).path("error").path("code").asInt());
+
+        HttpResponse<String> stream = CLIENT.send(request("no-such-session").header("Accept", "text/event-stream").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, stream.statusCode());
+        HttpResponse<String> missing = CLIENT.send(request(null).header("Accept", "text/event-stream").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, missing.statusCode());
+    }
+
+    @Test
+    public void testPostsAreMultiplexedOntoOpenStream() throws Exception {
+        String sessionId = initialize();
+        // Without a stream the answer comes back on the POST itself
+        HttpResponse<String> direct = post(sessionId, "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}");
+        assertEquals(200, direct.statusCode());
+
+        HttpResponse<InputStream> opened = CLIENT.send(request(sessionId).header("Accept", "text/event-stream").GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, opened.statusCode());
+        try (BufferedReader stream = new BufferedReader(new InputStreamReader(opened.body(), StandardCharsets.UTF_8))) {
+            String call = "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\","
+                    + "\"arguments\":{\"expression\":\"6 * 7\"}}}";
+            HttpResponse<String> accepted = post(sessionId, call);
+            assertEquals(202, accepted.statusCode());
+            assertEquals("", accepted.body());
+
+            JsonNode event = MAPPER.readTree(assertTimeoutPreemptively(Duration.ofSeconds(10), () -> nextData(stream)));
+            assertEquals(3, event.path("id").asInt());
+            assertTrue(event.toString().contains("42"));
+
+            // Ending the session closes its stream
+            HttpResponse<String> deleted = CLIENT.send(request(sessionId).DELETE().build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(204, deleted.statusCode());
+            assertNull(assertTimeoutPreemptively(Duration.ofSeconds(10), () -> nextData(stream)));
+        }
+        assertEquals(404, post(sessionId, "{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"tools/list\"}").statusCode());
+    }
+
+    @Test
+    public void testInitializeAtSessionLimitIsAnsweredStatelessly() throws Exception {
+        List<McpSession> filling = new ArrayList<>();
+        try {
+            McpSession session;
+            while ((session = sessions.create()) != null) {
+                filling.add(session);
+            }
+            HttpResponse<String> response = post(null, "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\"}");
+            assertEquals(200, response.statusCode());
+            assertTrue(MAPPER.readTree(response.body()).has("result"));
+            assertTrue(response.headers().firstValue(SessionRegistry.SESSION_HEADER).isEmpty());
+        } finally {
+            for (McpSession session : filling) {
+                sessions.remove(session.getId());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class InterpreterTest {
@@ -171,4 +172,223 @@ public class InterpreterTest {
             interpreter.interpretAsInt("2 + 3)");
         });
     }
-}
\ No newline at end of file
+
+    // A sum of terms ones, which is 2 * terms - 1 nodes after parsing
+    private static String sumOfOnes(int terms) {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 1; i < terms; i++) {
+            sb.append(" + 1");
+        }
+        return sb.toString();
+    }
+
+    @ParameterizedTest
+    @EnumSource(EvaluationMode.class)
+    public void testBudgetStopsLargeEvaluation(EvaluationMode mode) {
+        interpreter.setOptimizing(false);
+        interpreter.setEvaluationMode(mode);
+        interpreter.setBudget(EvaluationBudget.of(100, 0));
+
+        assertEquals("50", interpreter.interpret(sumOfOnes(50)));
+        Exception e = assertThrows(IllegalStateException.class, () -> interpreter.interpret(sumOfOnes(51)));
+        assertEquals("Evaluation budget exceeded: more than 100 operations", e.getMessage());
+    }
+
+    @Test
+    public void testBudgetPerCall() {
+        interpreter.setOptimizing(false);
+        String expression = sumOfOnes(100);
+
+        assertEquals("100", interpreter.interpret(expression));
+        assertThrows(IllegalStateException.class, () -> interpreter.interpret(expression, EvaluationBudget.of(10, 0)));
+        // The per-call budget does not stick
+        assertEquals("100", interpreter.interpret(expression));
+    }
+
+    @Test
+    public void testBudgetAppliesToDeepTrees() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("-(");
+        }
+        sb.append('1');
+        for (int i = 0; i < 5000; i++) {
+            sb.append(')');
+        }
+        interpreter.setBudget(EvaluationBudget.of(1000, 0));
+        assertThrows(IllegalStateException.class, () -> interpreter.interpret(sb.toString()));
+    }
+
+    @Test
+    public void testHugeExponentIsFast() {
+        // Used to take two billion multiplications
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(1), () -> {
+            assertEquals(0, interpreter.interpretAsInt("2 ^ 2000000000"));
+            assertEquals(1, interpreter.interpretAsInt("1 ^ 2147483647"));
+            assertEquals(-1, interpreter.interpretAsInt("(0 - 1) ^ 2147483647"));
+        });
+    }
+
+    @Test
+    public void testExactNumericMode() {
+        interpreter.setNumericMode(NumericMode.EXACT);
+        assertEquals("2147483648", interpreter.interpret("2147483647 + 1"));
+        assertEquals("6227020800", interpreter.interpret("!13"));
+        assertEquals("100000000000000000001", interpreter.interpret("100000000000000000000 + 1"));
+        assertEquals(7, interpreter.interpretAsInt("100000000000000000007 % 100000000000000000000"));
+        Exception overflow = assertThrows(ArithmeticException.class, () -> interpreter.interpretAsInt("2147483647 + 1"));
+        assertEquals("Result does not fit in an int: 2147483648", overflow.getMessage());
+        assertThrows(ArithmeticException.class, () -> interpreter.compile("!13").evaluate());
+        assertEquals(120, interpreter.compile("!5").evaluate());
+    }
+
+    @Test
+    public void testIntModeKeepsIntSemantics() {
+        assertEquals("-2147483648", interpreter.interpret("2147483647 + 1"));
+        Exception literal = assertThrows(NumberFormatException.class, () -> interpreter.interpret("1 + 2147483648"));
+        assertEquals("Number too large: 2147483648", literal.getMessage());
+        assertThrows(NumberFormatException.class, () -> interpreter.compile("2147483648"));
+        // The same cached tree answers both modes, chosen per call
+        assertEquals("2147483649", interpreter.interpret("1 + 2147483648", EvaluationBudget.UNLIMITED, NumericMode.EXACT));
+        assertEquals(new java.math.BigInteger("2147483649"), interpreter.interpretAsBigInteger("1 + 2147483648"));
+        assertTrue(interpreter.interpret("render 2147483648").contains("Number(2147483648)"));
+    }
+
+    @Test
+    public void testOverflowingConstantsAreNotFolded() {
+        // Folding in int would bake the wrapped value into the tree exact mode shares
+        assertEquals("-2147483648", interpreter.interpret("2147483647 + 1"));
+        assertEquals("2147483648", interpreter.interpret("2147483647 + 1", EvaluationBudget.UNLIMITED, NumericMode.EXACT));
+    }
+
+    @ParameterizedTest
+    @EnumSource(EvaluationMode.class)
+    public void testExactModeIgnoresEvaluationMode(EvaluationMode mode) {
+        interpreter.setEvaluationMode(mode);
+        interpreter.setNumericMode(NumericMode.EXACT);
+        assertEquals("15511210043330985984000000", interpreter.interpret("!25"));
+        assertEquals("15511210043330985984000000", interpreter.interpret("!25", EvaluationBudget.of(10, 0)));
+    }
+
+    @Test
+    public void testInterpretSelfContainedVariables() {
+        assertEquals("12", interpreter.interpret("(x = 3) * x + x"));
+        assertEquals(6, interpreter.interpretAsInt("(a = b = 2) + a * b"));
+        Exception e = assertThrows(IllegalArgumentException.class, () -> interpreter.interpret("x + 1"));
+        assertEquals("Undefined variable: x", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> interpreter.interpretAsBigInteger("x = x + 1"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(EvaluationMode.class)
+    public void testEvaluateAgainstFrames(EvaluationMode mode) {
+        interpreter.setEvaluationMode(mode);
+        ParsedExpression parsed = interpreter.parse("total = total + price * qty");
+        Variables variables = parsed.getVariables();
+        int total = variables.slotOf("total");
+        int price = variables.slotOf("price");
+        int qty = variables.slotOf("qty");
+        
+        int[] frame = new int[variables.size()];
+        for (int i = 1; i <= 4; i++) {
+            frame[price] = i;
+            frame[qty] = 10;
+            interpreter.evaluate(parsed, frame);
+        }
+        assertEquals(100, frame[total]);
+        Exception e = assertThrows(IllegalArgumentException.class, () -> interpreter.evaluate(parsed, new int[1]));
+        assertEquals("Frame has 1 slots, the expression needs 3 for [total, price, qty]", e.getMessage());
+    }
+
+    @Test
+    public void testEvaluateExactAgainstFrames() {
+        ParsedExpression parsed = interpreter.parse("x * x");
+        assertEquals(4611686014132420609L, interpreter.evaluateExact(parsed, new long[]{2147483647}));
+        assertEquals(new java.math.BigInteger("85070591730234615847396907784232501249"),
+                interpreter.evaluateExact(parsed, new long[]{Long.MAX_VALUE}));
+        assertThrows(ArithmeticException.class, () -> interpreter.evaluateExact(interpreter.parse("x = !25"), new long[1]));
+        assertThrows(IllegalArgumentException.class, () -> interpreter.evaluate(interpreter.parse("render x"), new int[1]));
+    }
+
+    @Test
+    public void testCompiledVariables() {
+        // Slots follow first appearance, so y is 0 and x is 1
+        CompiledExpression compiled = interpreter.compile("y = x * x + 1");
+        int[] frame = new int[2];
+        for (int x = 0; x < 5; x++) {
+            frame[1] = x;
+            assertEquals(x * x + 1, compiled.evaluate(frame));
+            assertEquals(x * x + 1, frame[0]);
+        }
+        assertThrows(IllegalArgumentException.class, compiled::evaluate);
+        assertEquals(9, interpreter.compile("(x = 3) * x").evaluate());
+        
+        interpreter.setNumericMode(NumericMode.EXACT);
+        CompiledExpression exact = interpreter.compile("y = x * x + 1");
+        assertEquals(10, exact.evaluate(new int[]{0, 3}));
+        assertThrows(ArithmeticException.class, () -> exact.evaluate(new int[]{0, 65536}));
+    }
+
+    @Test
+    public void testParsesNumericMode() {
+        assertEquals(NumericMode.EXACT, NumericMode.parse(" Exact "));
+        assertEquals(NumericMode.INT, NumericMode.fromEnvironment(java.util.Map.of()));
+        assertEquals(NumericMode.DOUBLE, NumericMode.parse("double"));
+        assertThrows(IllegalArgumentException.class, () -> NumericMode.parse("float"));
+    }
+
+    @Test
+    public void testDoubleNumericMode() {
+        interpreter.setNumericMode(NumericMode.DOUBLE);
+        assertEquals("3.5", interpreter.interpret("7 / 2"));
+        assertEquals("0.5", interpreter.interpret("2 ^ -1"));
+        assertEquals("6.0", interpreter.interpret("1.5 * 4"));
+        assertEquals("1.0E20", interpreter.interpret("100000000000000000000"));
+        assertEquals("-1.5", interpreter.interpret("-7.5 % 2"));
+        assertEquals(Math.sqrt(Math.PI) / 2, interpreter.interpretAsDouble("!0.5"), 1e-15);
+        assertEquals("Infinity", interpreter.interpret("10 ^ 400"));
+        Exception zero = assertThrows(ArithmeticException.class, () -> interpreter.interpret("1.5 / 0"));
+        assertEquals("Division by zero", zero.getMessage());
+        assertEquals(6, interpreter.interpretAsInt("1.5 * 4"));
+        Exception fraction = assertThrows(ArithmeticException.class, () -> interpreter.interpretAsInt("7 / 2"));
+        assertEquals("Result does not fit in an int: 3.5", fraction.getMessage());
+        assertThrows(IllegalStateException.class, () -> interpreter.compile("7 / 2"));
+    }
+
+    @Test
+    public void testDecimalLiteralsNeedDoubleMode() {
+        Exception literal = assertThrows(NumberFormatException.class, () -> interpreter.interpret("1 + 2.50"));
+        assertEquals("Not an integer: 2.50", literal.getMessage());
+        assertThrows(NumberFormatException.class,
+                () -> interpreter.interpret("2.5", EvaluationBudget.UNLIMITED, NumericMode.EXACT));
+        assertThrows(NumberFormatException.class, () -> interpreter.compile("2.5"));
+        assertThrows(NumberFormatException.class,
+                () -> interpreter.evaluateColumnsExact(interpreter.parse("x * 2.5"), new long[][]{{1}}, new long[1]));
+        // The same cached tree answers every mode, chosen per call, and int division is not folded into it
+        assertEquals("3", interpreter.interpret("7 / 2"));
+        assertEquals("3.5", interpreter.interpret("7 / 2", EvaluationBudget.UNLIMITED, NumericMode.DOUBLE));
+        assertEquals(3.5, interpreter.interpretAsDouble("7 / 2"));
+        assertTrue(interpreter.interpret("render 2.5 * 2").contains("Number(2.5)"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(EvaluationMode.class)
+    public void testEvaluateDoubleAgainstFrames(EvaluationMode mode) {
+        interpreter.setEvaluationMode(mode);
+        ParsedExpression parsed = interpreter.parse("total = total + price * qty");
+        Variables variables = parsed.getVariables();
+        double[] frame = new double[variables.size()];
+        frame[variables.slotOf("qty")] = 0.5;
+        for (int i = 1; i <= 4; i++) {
+            frame[variables.slotOf("price")] = i;
+            interpreter.evaluateDouble(parsed, frame);
+        }
+        assertEquals(5.0, frame[variables.slotOf("total")]);
+        assertThrows(IllegalArgumentException.class, () -> interpreter.evaluateDouble(parsed, new double[1]));
+
+        interpreter.setBudget(EvaluationBudget.of(3, 0));
+        assertEquals(2.5, interpreter.evaluateDouble(interpreter.parse("x / 2"), new double[]{5}));
+        assertThrows(IllegalStateException.class,
+                () -> interpreter.evaluateDouble(interpreter.parse("x / 2 + x"), new double[]{5}));
+    }
+}
@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IterativeTreeWalkerTest {
+
+    private static final int DEEP = 50000;
+
+    private ASTNode parse(String expression) {
+        return new Parser(new Lexer(expression).tokenize()).parse();
+    }
+
+    private static String nestedParentheses(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("(1 + ");
+        }
+        sb.append("1");
+        for (int i = 0; i < depth; i++) {
+            sb.append(")");
+        }
+        return sb.toString();
+    }
+
+    private static String powerChain(int length) {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < length; i++) {
+            sb.append(" ^ 1");
+        }
+        return sb.toString();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42",
+        "2 + 3 * 4",
+        "2 ^ 3 ^ 2",
+        "!5 - -3",
+        "-(3 + 5) * 2",
+        "((2 * 3) + (4 * 5)) - (3 - 1)"
+    })
+    public void testMatchesRecursiveWalk(String expression) {
+        ASTNode ast = parse(expression);
+        assertEquals(ast.evaluate(), IterativeTreeWalker.evaluate(ast));
+        assertEquals(ast.renderTree("", true), IterativeTreeWalker.render(ast));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "7 / 2 - 0.25",
+        "2 ^ -3 ^ 0.5",
+        "!4.5 % 3",
+        "-(1.5 + 100000000000000000000) * 2"
+    })
+    public void testDoubleMatchesRecursiveWalk(String expression) {
+        ASTNode ast = parse(expression);
+        assertEquals(ast.evaluateDouble(), IterativeTreeWalker.evaluateDouble(ast, ASTNode.NO_DOUBLE_VARIABLES, null));
+    }
+
+    @Test
+    public void testDeepDoubleEvaluation() {
+        ASTNode ast = parse(nestedParentheses(DEEP).replace("(1 + ", "(0.5 + "));
+        assertEquals(DEEP / 2.0 + 1, IterativeTreeWalker.evaluateDouble(ast, ASTNode.NO_DOUBLE_VARIABLES, null));
+    }
+
+    @Test
+    public void testFirstErrorMatchesRecursiveWalk() {
+        Exception exception = assertThrows(ArithmeticException.class,
+                () -> IterativeTreeWalker.evaluate(parse("(1 % 0) + (1 / 0)")));
+        assertEquals("Modulo by zero", exception.getMessage());
+    }
+
+    @Test
+    public void testDeepParenthesesParseAndEvaluate() {
+        Parser parser = new Parser(new Lexer(nestedParentheses(DEEP)).tokenize());
+        ASTNode ast = parser.parse();
+        assertEquals(DEEP + 1, parser.getDepth());
+        assertEquals(DEEP + 1, IterativeTreeWalker.evaluate(ast));
+    }
+
+    @Test
+    public void testDeepPowerChainParsesRightAssociative() {
+        ASTNode ast = parse(powerChain(DEEP));
+        assertEquals(1, IterativeTreeWalker.evaluate(ast));
+        assertTrue(ast instanceof BinaryOpNode);
+        assertTrue(((BinaryOpNode) ast).getLeft() instanceof NumberNode);
+    }
+
+    @Test
+    public void testDeepPrefixChain() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DEEP; i++) {
+            sb.append('-');
+        }
+        sb.append("7");
+        assertEquals(7, IterativeTreeWalker.evaluate(parse(sb.toString())));
+    }
+
+    @Test
+    public void testDeepRender() {
+        String rendered = parse(nestedParentheses(2000)).render();
+        assertTrue(rendered.startsWith("└── BinaryOp(+)\n"));
+        assertEquals(4001, rendered.split("\n").length);
+    }
+
+    @Test
+    public void testInterpreterSurvivesDeepNesting() {
+        Interpreter interpreter = new Interpreter();
+        String expression = nestedParentheses(DEEP);
+        assertEquals(DEEP + 1, interpreter.interpretAsInt(expression));
+        assertEquals(DEEP + 1, interpreter.compile(expression).evaluate());
+
+        interpreter.setEvaluationMode(EvaluationMode.STACK_VM);
+        assertEquals(DEEP + 1, interpreter.interpretAsInt(expression));
+    }
+}
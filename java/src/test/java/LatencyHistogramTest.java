@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 60; i++) {
+            histogram.record(i);
+        }
+        assertEquals(60, histogram.getCount());
+        assertEquals(30, histogram.valueAtQuantile(0.5));
+        assertEquals(60, histogram.valueAtQuantile(0.999));
+        assertEquals(60 * 61 / 2, histogram.getSum());
+    }
+
+    @Test
+    public void testLargeValuesWithinThreePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1000; value <= 1_000_000; value += 1000) {
+            histogram.record(value);
+        }
+        long median = histogram.valueAtQuantile(0.5);
+        assertTrue(Math.abs(median - 500_000) <= 500_000 * 0.035, "median " + median);
+        long p99 = histogram.valueAtQuantile(0.99);
+        assertTrue(Math.abs(p99 - 990_000) <= 990_000 * 0.035, "p99 " + p99);
+        // Never reported above the largest value actually seen
+        assertEquals(1_000_000, histogram.valueAtQuantile(1.0));
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value : new long[]{0, 63, 64, 65, 127, 128, 1L << 40, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestInBucket(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestInBucket(index - 1) < value);
+            }
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.valueAtQuantile(0.5));
+        assertEquals(0, new LatencyHistogram().valueAtQuantile(0.5));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(40000, histogram.getCount());
+        assertEquals(9999, histogram.getMax());
+    }
+}
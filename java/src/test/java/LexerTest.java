@@ -148,4 +148,72 @@ public class LexerTest {
         Token token = new Token(TokenType.NUMBER, "42");
         assertEquals("NUMBER(42)", token.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTokenizePackedDecodesValues() {
+        TokenBuffer tokens = new Lexer("render 123 * (4 - 5)").tokenizePacked();
+        
+        assertEquals(9, tokens.size());
+        assertEquals(TokenBuffer.RENDER, tokens.type(0));
+        assertEquals(TokenBuffer.NUMBER, tokens.type(1));
+        assertEquals(123, tokens.value(1));
+        assertEquals("123", tokens.text(1));
+        assertEquals(TokenBuffer.OPERATOR, tokens.type(2));
+        assertEquals('*', tokens.value(2));
+        assertEquals(TokenBuffer.LPAREN, tokens.type(3));
+        assertEquals('-', tokens.value(5));
+        assertEquals(TokenBuffer.RPAREN, tokens.type(7));
+        assertEquals(TokenBuffer.EOF, tokens.type(8));
+    }
+
+    @Test
+    public void testTokenizePackedLargestInt() {
+        TokenBuffer tokens = new Lexer("2147483647").tokenizePacked();
+        assertEquals(Integer.MAX_VALUE, tokens.value(0));
+    }
+
+    @Test
+    public void testNumberTooLargeForIntIsBigNumber() {
+        TokenBuffer tokens = new Lexer("1 + 2147483648").tokenizePacked();
+        
+        assertEquals(TokenBuffer.BIG_NUMBER, tokens.type(2));
+        assertEquals("2147483648", tokens.text(2));
+        assertEquals(TokenBuffer.EOF, tokens.type(3));
+    }
+
+    @Test
+    public void testDecimalLiterals() {
+        TokenBuffer tokens = new Lexer("3.25 * 12345678901.5").tokenizePacked();
+        
+        assertEquals(TokenBuffer.DECIMAL, tokens.type(0));
+        assertEquals("3.25", tokens.text(0));
+        assertEquals(TokenBuffer.DECIMAL, tokens.type(2));
+        assertEquals("12345678901.5", tokens.text(2));
+        assertEquals(TokenBuffer.EOF, tokens.type(3));
+        // A point needs digits on both sides
+        Exception trailing = assertThrows(IllegalArgumentException.class, () -> new Lexer("3. + 1").tokenize());
+        assertEquals("Unexpected character: .", trailing.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new Lexer(".5").tokenize());
+    }
+
+    @Test
+    public void testNonAsciiDecimalDigits() {
+        // Arabic-Indic three and five, accepted like the same digits in an integer
+        TokenBuffer tokens = new Lexer("\u0663.\u0665 + 1").tokenizePacked();
+        assertEquals(TokenBuffer.DECIMAL, tokens.type(0));
+        assertEquals(4.5, new Parser(tokens).parse().evaluateDouble());
+    }
+
+    @Test
+    public void testWordsOtherThanRenderAreIdentifiers() {
+        TokenBuffer tokens = new Lexer("rendering = x_1 + _y").tokenizePacked();
+        
+        assertEquals(TokenBuffer.IDENTIFIER, tokens.type(0));
+        assertEquals("rendering", tokens.text(0));
+        assertEquals(TokenBuffer.OPERATOR, tokens.type(1));
+        assertEquals("x_1", tokens.text(2));
+        assertEquals("_y", tokens.text(4));
+        // Without an operator between them the parser still rejects it
+        assertThrows(IllegalArgumentException.class, () -> new Parser(new Lexer("rendering 2").tokenize()).parse());
+    }
+}
@@ -0,0 +1,91 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class McpDispatcherTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final McpDispatcher dispatcher = new McpDispatcher(mapper, new Interpreter(),
+            ResponseTemplates.standard(mapper), new BatchExecutor(mapper, 10, 2));
+
+    private JsonNode streamed(String request) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(dispatcher.handle(request.getBytes(StandardCharsets.UTF_8), out, false));
+        return mapper.readTree(out.toByteArray());
+    }
+
+    // The streaming path and the tree path used for batches must give the same answers
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\"}",
+        "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}",
+        "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"(2 + 3) * 4\"}}}",
+        "{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"1 / 0\"}}}",
+        "{\"jsonrpc\":\"2.0\",\"id\":5,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{}}}",
+        "{\"jsonrpc\":\"2.0\",\"id\":6,\"method\":\"tools/call\",\"params\":{\"name\":\"other\"}}",
+        "{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"tools/call\"}",
+        "{\"jsonrpc\":\"2.0\",\"id\":8,\"method\":\"unknown\"}",
+        "{\"jsonrpc\":\"2.0\",\"id\":9}",
+        "{\"jsonrpc\":\"2.0\",\"id\":10,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"render 1 + 2 * 3\"}}}",
+        "{\"jsonrpc\":\"2.0\",\"id\":11,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"!25 + 1\",\"numeric\":\"exact\"}}}",
+        "{\"jsonrpc\":\"2.0\",\"id\":12,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"1\",\"numeric\":\"float\"}}}"
+    })
+    public void testStreamingMatchesTree(String request) throws Exception {
+        // Round-trip the tree, because cached results sit in it as raw values
+        JsonNode tree = mapper.readTree(mapper.writeValueAsString(dispatcher.dispatch(mapper.readTree(request))));
+        assertEquals(tree, streamed(request));
+    }
+
+    @Test
+    public void testBatchThroughHandle() throws Exception {
+        JsonNode responses = streamed("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"6 * 7\"}}},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}]");
+        assertEquals(2, responses.size());
+        assertEquals("42", responses.get(0).get("result").get("content").get(0).get("text").asText());
+        assertEquals("calculate", responses.get(1).get("result").get("tools").get(0).get("name").asText());
+    }
+
+    @Test
+    public void testPeeksMethod() {
+        assertEquals("initialize", dispatcher.method("{\"params\":{\"method\":\"x\"},\"method\":\"initialize\",\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(dispatcher.method("[{\"method\":\"initialize\"}]".getBytes(StandardCharsets.UTF_8)));
+        assertNull(dispatcher.method("{\"method\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testCalculateHonoursBudget() {
+        Interpreter calculator = new Interpreter();
+        calculator.setOptimizing(false);
+        calculator.setBudget(EvaluationBudget.of(5, 0));
+
+        assertEquals("6", McpDispatcher.calculate(calculator, "1 + 2 + 3", 0, 0, null).text);
+        McpDispatcher.ToolResult tooBig = McpDispatcher.calculate(calculator, "1 + 2 + 3", 4, 0, null);
+        assertTrue(tooBig.isError);
+        assertTrue(McpDispatcher.calculate(calculator, null, 0, 0, null).text.endsWith("Missing expression argument"));
+    }
+
+    @Test
+    public void testCalculateNumericMode() {
+        Interpreter calculator = new Interpreter();
+
+        assertEquals("-2147483648", McpDispatcher.calculate(calculator, "2147483647 + 1", 0, 0, null).text);
+        assertEquals("2147483648", McpDispatcher.calculate(calculator, "2147483647 + 1", 0, 0, "exact").text);
+        assertEquals("100000000000000000000", McpDispatcher.calculate(calculator, "100000000000000000000", 0, 0, "EXACT").text);
+
+        McpDispatcher.ToolResult bigLiteral = McpDispatcher.calculate(calculator, "100000000000000000000", 0, 0, "int");
+        assertTrue(bigLiteral.isError);
+        assertTrue(bigLiteral.text.endsWith("Number too large: 100000000000000000000"));
+        McpDispatcher.ToolResult unknown = McpDispatcher.calculate(calculator, "1", 0, 0, "float");
+        assertTrue(unknown.isError);
+        assertTrue(unknown.text.contains("Unknown numeric mode: float"));
+
+        // The server default applies when the argument is left out
+        calculator.setNumericMode(NumericMode.EXACT);
+        assertEquals("6227020800", McpDispatcher.calculate(calculator, "!13", 0, 0, null).text);
+    }
+}
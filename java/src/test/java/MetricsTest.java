@@ -0,0 +1,107 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void testInterpreterTimesEachPhase() {
+        Interpreter interpreter = new Interpreter();
+        Metrics metrics = new Metrics();
+        interpreter.setMetrics(metrics);
+
+        interpreter.interpret("2 + 3 * 4");
+        interpreter.interpret("2 + 3 * 4");
+        interpreter.interpret("render 1 + 2");
+
+        // The second call is a cache hit, so it is only evaluated
+        assertEquals(2, metrics.getPhase(Metrics.Phase.LEX).getCount());
+        assertEquals(2, metrics.getPhase(Metrics.Phase.PARSE).getCount());
+        assertEquals(1, metrics.getPhase(Metrics.Phase.OPTIMIZE).getCount());
+        assertEquals(2, metrics.getPhase(Metrics.Phase.EVALUATE).getCount());
+        assertEquals(1, metrics.getPhase(Metrics.Phase.RENDER).getCount());
+    }
+
+    @Test
+    public void testFailedEvaluationIsStillTimed() {
+        Interpreter interpreter = new Interpreter();
+        Metrics metrics = new Metrics();
+        interpreter.setMetrics(metrics);
+        interpreter.setOptimizing(false);
+
+        assertThrows(ArithmeticException.class, () -> interpreter.interpret("1 / 0"));
+        assertEquals(1, metrics.getPhase(Metrics.Phase.EVALUATE).getCount());
+    }
+
+    @Test
+    public void testDispatcherCountsMethodsAndTools() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Interpreter calculator = new Interpreter();
+        Metrics metrics = new Metrics();
+        calculator.setMetrics(metrics);
+        McpDispatcher dispatcher = new McpDispatcher(mapper, calculator, ResponseTemplates.standard(mapper), new BatchExecutor(mapper, 10, 2));
+
+        String[] requests = {
+            "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/list\"}",
+            "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"6 * 7\"}}}",
+            "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"1 / 0\"}}}",
+            "{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"nope\"}",
+            "[{\"jsonrpc\":\"2.0\",\"id\":5,\"method\":\"tools/list\"}]",
+            "{\"jsonrpc\":"
+        };
+        for (String request : requests) {
+            dispatcher.handle(request.getBytes(StandardCharsets.UTF_8), new ByteArrayOutputStream(), false);
+        }
+
+        assertEquals(2, metrics.getMethod("tools/list").getCount());
+        assertEquals(2, metrics.getMethod("tools/call").getCount());
+        assertEquals(0, metrics.getMethodErrors("tools/call"));
+        assertEquals(1, metrics.getMethodErrors("nope"));
+        assertEquals(1, metrics.getMethod(StreamingMcpHandler.BATCH).getCount());
+        assertEquals(1, metrics.getMethodErrors(StreamingMcpHandler.INVALID));
+        assertEquals(2, metrics.getTool("calculate").getCount());
+        assertEquals(1, metrics.getToolErrors("calculate"));
+        assertEquals(6, metrics.getPhase(Metrics.Phase.DECODE).getCount());
+        assertEquals(5, metrics.getPhase(Metrics.Phase.ENCODE).getCount());
+    }
+
+    @Test
+    public void testPrometheusFormat() {
+        Metrics metrics = new Metrics();
+        metrics.record(Metrics.Phase.EVALUATE, 2_000);
+        metrics.recordMethod("tools/call", 5_000_000, false);
+        metrics.recordTool("say \"hi\"", 1_000, true);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE calc_phase_seconds summary\n"));
+        assertTrue(text.contains("calc_phase_seconds{phase=\"evaluate\",quantile=\"0.999\"} 2.0E-6\n"));
+        assertTrue(text.contains("calc_phase_seconds_count{phase=\"evaluate\"} 1\n"));
+        assertTrue(text.contains("calc_phase_seconds_count{phase=\"decode\"} 0\n"));
+        assertTrue(text.contains("mcp_requests_total{method=\"tools/call\"} 1\n"));
+        assertTrue(text.contains("mcp_tool_call_errors_total{tool=\"say \\\"hi\\\"\"} 1\n"));
+    }
+
+    @Test
+    public void testPhaseLabelsIgnoreDefaultLocale() {
+        java.util.Locale original = java.util.Locale.getDefault();
+        // Turkish lower-cases I to a dotless i, which would turn "optimize" into "optımıze"
+        java.util.Locale.setDefault(new java.util.Locale("tr", "TR"));
+        try {
+            assertTrue(new Metrics().toPrometheus().contains("calc_phase_seconds_count{phase=\"optimize\"} 0\n"));
+        } finally {
+            java.util.Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    public void testLabelsAreBounded() {
+        Metrics metrics = new Metrics();
+        for (int i = 0; i < Metrics.MAX_LABELS + 10; i++) {
+            metrics.recordMethod("method-" + i, 1, false);
+        }
+        assertNull(metrics.getMethod("method-" + (Metrics.MAX_LABELS + 5)));
+        assertEquals(10, metrics.getMethod(Metrics.OTHER).getCount());
+    }
+}
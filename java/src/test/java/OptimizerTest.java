@@ -0,0 +1,132 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimizerTest {
+
+    private final Optimizer optimizer = new Optimizer();
+
+    private ASTNode parse(String expression) {
+        return new Parser(new Lexer(expression).tokenize()).parse();
+    }
+
+    private ASTNode optimize(String expression) {
+        return optimizer.optimize(parse(expression));
+    }
+
+    @Test
+    public void testFoldsConstantSubtrees() {
+        ASTNode node = optimize("2 ^ 3 + 4 * 5 - !3");
+        assertTrue(node instanceof NumberNode);
+        assertEquals(22, node.evaluate());
+    }
+
+    @Test
+    public void testCollapsesUnaryMinusIntoNegation() {
+        ASTNode node = optimize("-(2 ^ (1 / 0))");
+        assertTrue(node instanceof UnaryOpNode);
+        assertEquals('-', ((UnaryOpNode) node).getOperator());
+        assertTrue(node.render().contains("UnaryOp(-)"));
+    }
+
+    @Test
+    public void testFoldsNegativeLiteral() {
+        ASTNode node = optimize("-5");
+        assertTrue(node instanceof NumberNode);
+        assertEquals(-5, ((NumberNode) node).getValue());
+    }
+
+    @Test
+    public void testSimplifiesIdentities() {
+        ASTNode divByZero = new BinaryOpNode(new NumberNode(1), '/', new NumberNode(0));
+
+        assertSame(divByZero, optimizer.optimize(new BinaryOpNode(divByZero, '*', new NumberNode(1))));
+        assertSame(divByZero, optimizer.optimize(new BinaryOpNode(new NumberNode(1), '*', divByZero)));
+        assertSame(divByZero, optimizer.optimize(new BinaryOpNode(divByZero, '-', new NumberNode(0))));
+        assertSame(divByZero, optimizer.optimize(new BinaryOpNode(divByZero, '^', new NumberNode(1))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "0 - 0.0",
+        "(0 - 1) * 0 + 0",
+        "0 + (0 - 1) * 0",
+        "(0 - 1) * 0 - 0",
+        "0 / (0 - 5) - 0",
+        "(0 - 4) % 2 - 0",
+        "0 - (0 - (0 - 1) * 0)",
+        "0 - (0 - (x = (0 - 1) * 0.0))"
+    })
+    public void testKeepsSignOfZeroInDoubleMode(String expression) {
+        Interpreter optimizing = new Interpreter();
+        Interpreter plain = new Interpreter();
+        plain.setOptimizing(false);
+        String expected = plain.interpret(expression, EvaluationBudget.UNLIMITED, NumericMode.DOUBLE);
+        assertEquals(expected, optimizing.interpret(expression, EvaluationBudget.UNLIMITED, NumericMode.DOUBLE));
+    }
+
+    @Test
+    public void testPowerOfZeroOnlyDropsSafeBase() {
+        ASTNode safe = new BinaryOpNode(new UnaryOpNode('-', new BinaryOpNode(new NumberNode(7), '/', new NumberNode(0))),
+                '+', new NumberNode(1));
+        // The base divides by zero, so x ^ 0 must keep it to preserve the error
+        assertThrows(ArithmeticException.class, () -> optimizer.optimize(new BinaryOpNode(safe, '^', new NumberNode(0))).evaluate());
+
+        ASTNode folded = optimize("(2 + 3) ^ 0");
+        assertTrue(folded instanceof NumberNode);
+        assertEquals(1, folded.evaluate());
+    }
+
+    @Test
+    public void testFoldsOnlyExactDivision() {
+        assertTrue(optimize("8 / 2") instanceof NumberNode);
+        // Double evaluation shares the tree and needs 3.5, not the truncated 3
+        ASTNode inexact = optimize("7 / 2");
+        assertTrue(inexact instanceof BinaryOpNode);
+        assertEquals(3, inexact.evaluate());
+        assertEquals(3.5, inexact.evaluateDouble());
+    }
+
+    @Test
+    public void testKeepsRuntimeErrorsInPlace() {
+        ASTNode node = optimize("10 / 0");
+        assertTrue(node instanceof BinaryOpNode);
+        Exception exception = assertThrows(ArithmeticException.class, node::evaluate);
+        assertEquals("Division by zero", exception.getMessage());
+
+        assertThrows(ArithmeticException.class, () -> optimize("!13").evaluate());
+        assertThrows(ArithmeticException.class, () -> optimize("2 ^ (-3)").evaluate());
+    }
+
+    @Test
+    public void testReturnsSameInstanceWhenNothingChanges() {
+        ASTNode node = parse("10 / 0");
+        assertSame(node, optimizer.optimize(node));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "2 + 3 * 4",
+        "-(3 + 5) * -2",
+        "2 ^ 3 ^ 2",
+        "!5 - -3",
+        "100 / 7 % 3 - 0",
+        "123456 * 7890 * 1",
+        "--4"
+    })
+    public void testOptimizedMatchesUnoptimized(String expression) {
+        assertEquals(parse(expression).evaluate(), optimize(expression).evaluate());
+    }
+
+    @Test
+    public void testRenderReportsOptimizedTree() {
+        Interpreter interpreter = new Interpreter();
+        String result = interpreter.interpret("render 2 ^ 3");
+        assertTrue(result.contains("BinaryOp(^)"));
+        assertTrue(result.contains("Optimized:\n└── Number(8)"));
+
+        interpreter.setOptimizing(false);
+        assertFalse(interpreter.interpret("render 2 ^ 3").contains("Optimized:"));
+    }
+}
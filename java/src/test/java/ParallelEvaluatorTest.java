@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelEvaluatorTest {
+    // More workers than this machine may have cores, so tasks really do interleave
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterAll
+    public static void shutDown() {
+        POOL.shutdown();
+    }
+
+    private static ASTNode parse(String expression) {
+        return new Parser(new Lexer(expression).tokenizePacked()).parse();
+    }
+
+    // A random balanced tree of about nodes nodes, without division so it cannot fail; leaf null means random digits
+    private static void balanced(StringBuilder sb, Random random, int nodes, String leaf) {
+        if (nodes < 3) {
+            sb.append(leaf != null ? leaf : String.valueOf(random.nextInt(10)));
+            return;
+        }
+        sb.append('(');
+        balanced(sb, random, nodes / 2, leaf);
+        sb.append(" +-*".charAt(1 + random.nextInt(3))).append(' ');
+        balanced(sb, random, nodes / 2, leaf);
+        sb.append(')');
+    }
+
+    private static String balanced(int nodes) {
+        return balanced(nodes, null);
+    }
+
+    private static String balanced(int nodes, String leaf) {
+        StringBuilder sb = new StringBuilder();
+        balanced(sb, new Random(5), nodes, leaf);
+        return sb.toString();
+    }
+
+    // term op term op ... op term, which parses as one long left-leaning spine
+    private static String chain(String term, String operator, int terms) {
+        StringBuilder sb = new StringBuilder(term);
+        for (int i = 1; i < terms; i++) {
+            sb.append(' ').append(operator).append(' ').append(term);
+        }
+        return sb.toString();
+    }
+
+    private static void assertSameAsSequential(ASTNode ast) {
+        int expected;
+        try {
+            expected = IterativeTreeWalker.evaluate(ast);
+        } catch (ArithmeticException sequential) {
+            Exception parallel = assertThrows(ArithmeticException.class, () -> ParallelEvaluator.evaluate(ast, ASTNode.NO_VARIABLES, POOL));
+            assertEquals(sequential.getMessage(), parallel.getMessage());
+            return;
+        }
+        assertEquals(expected, ParallelEvaluator.evaluate(ast, ASTNode.NO_VARIABLES, POOL));
+    }
+
+    @Test
+    public void testSizesAreRecorded() {
+        assertEquals(1, parse("7").size());
+        assertEquals(6, parse("!(1 + 2 * 3)").size());
+        assertEquals(4, parse("x = y + 1").size());
+        assertEquals(300_001, parse(chain("1", "+", 150_001)).size());
+    }
+
+    @Test
+    public void testMatchesSequential() {
+        assertSameAsSequential(parse(balanced(400_000)));
+        assertSameAsSequential(parse(chain("(2 * 3 - 1)", "-", 40_000)));
+        // Big operands on both sides of one operator, under a spine that leans right
+        assertSameAsSequential(parse(chain("1", "*", 5) + " ^ (" + balanced(100_000) + " % " + balanced(100_000) + ")"));
+        assertSameAsSequential(parse("-!(" + chain("1", "-", 100_000) + " + 3)"));
+    }
+
+    @Test
+    public void testFirstErrorMatchesSequential() {
+        String big = balanced(100_000);
+        // Both operands fail; the left one is evaluated first
+        assertSameAsSequential(parse("(" + big + " + 1 % 0) + (" + big + " + 1 / 0)"));
+        // A failing operand left of the spine comes before a failure deep below it
+        assertSameAsSequential(parse("1 % 0 + (" + big + " + 1 / 0) * 2"));
+        // A failure below the spine comes before one in an operand to its right
+        assertSameAsSequential(parse("(" + big + " + 2 ^ -1) + 1 / 0"));
+        // A failing operator comes before operands further up
+        assertSameAsSequential(parse("(" + big + ") / 0 % 0"));
+        assertSameAsSequential(parse(chain("1", "+", 50_000) + " + !13 + 1 / 0"));
+    }
+
+    @Test
+    public void testInterpreterParallelMode() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEvaluationMode(EvaluationMode.PARALLEL);
+        // The optimizer would fold a constant tree to one number, so the leaves are variables
+        String big = "(x = 3) * " + balanced(200_000, "x");
+        Interpreter sequential = new Interpreter();
+        assertEquals(sequential.interpret(big), interpreter.interpret(big));
+
+        // Small trees and trees with assignments take the sequential path
+        assertEquals("14", interpreter.interpret("2 + 3 * 4"));
+        ParsedExpression assigning = interpreter.parse(big);
+        assertFalse(ParallelEvaluator.isWorthSplitting(assigning.getAst(), assigning.getVariables()));
+
+        ParsedExpression parsed = interpreter.parse("y * " + balanced(200_000, "x"));
+        assertTrue(ParallelEvaluator.isWorthSplitting(parsed.getAst(), parsed.getVariables()));
+        assertEquals(sequential.evaluate(parsed, new int[]{3, 7}), interpreter.evaluate(parsed, new int[]{3, 7}));
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParseCacheTest {
+
+    private static ASTNode parse(String expression) {
+        return new Parser(new Lexer(expression).tokenize()).parse();
+    }
+
+    @Test
+    public void testHitSkipsParser() {
+        ParseCache<ASTNode> cache = new ParseCache<>(10);
+        AtomicInteger parses = new AtomicInteger();
+
+        ASTNode first = cache.get("2 + 3", e -> { parses.incrementAndGet(); return parse(e); });
+        ASTNode second = cache.get("2 + 3", e -> { parses.incrementAndGet(); return parse(e); });
+
+        assertSame(first, second);
+        assertEquals(1, parses.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ParseCache<ASTNode> cache = new ParseCache<>(2);
+        ASTNode one = cache.get("1", ParseCacheTest::parse);
+        cache.get("2", ParseCacheTest::parse);
+        cache.get("1", ParseCacheTest::parse);
+        cache.get("3", ParseCacheTest::parse);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        // "1" was touched after "2", so "2" is the one that went
+        assertSame(one, cache.get("1", ParseCacheTest::parse));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testParseErrorsAreNotCached() {
+        ParseCache<ASTNode> cache = new ParseCache<>(10);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("2 +", ParseCacheTest::parse));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClearDiscardsParsesInFlight() {
+        ParseCache<ASTNode> cache = new ParseCache<>(10);
+        // Another thread clearing while this parse runs
+        ASTNode parsed = cache.get("1 + 2", expression -> {
+            ASTNode ast = parse(expression);
+            cache.clear();
+            return ast;
+        });
+        assertEquals(3, parsed.evaluate());
+        assertEquals(0, cache.size());
+
+        cache.get("1 + 2", ParseCacheTest::parse);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ParseCache<ASTNode>(0));
+    }
+
+    @Test
+    public void testInterpreterUsesCache() {
+        Interpreter interpreter = new Interpreter();
+        assertEquals("5", interpreter.interpret("2 + 3"));
+        assertEquals(5, interpreter.interpretAsInt("2 + 3"));
+        assertEquals(1, interpreter.getCache().getHits());
+        assertEquals(1, interpreter.getCache().getMisses());
+    }
+
+    @Test
+    public void testInterpreterWithoutCache() {
+        Interpreter interpreter = new Interpreter(0);
+        assertNull(interpreter.getCache());
+        assertEquals("5", interpreter.interpret("2 + 3"));
+    }
+}
@@ -222,4 +222,69 @@ public class ParserTest {
             parser.parse();
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseLeftAssociativeOperators() {
+        assertEquals(3, createParser("10 - 4 - 3").parse().evaluate());
+        assertEquals(2, createParser("64 / 8 / 4").parse().evaluate());
+        assertEquals(2, createParser("7 * 2 % 3").parse().evaluate());
+    }
+
+    @Test
+    public void testParsePrefixBindsTighterThanPower() {
+        // -2 ^ 2 has always meant (0 - 2) ^ 2
+        assertEquals(4, createParser("-2 ^ 2").parse().evaluate());
+        assertEquals(36, createParser("!3 ^ 2").parse().evaluate());
+    }
+
+    @Test
+    public void testParseVariablesIntoSlots() {
+        Parser parser = createParser("(x = 3) * x + y");
+        ASTNode node = parser.parse();
+        Variables variables = parser.getVariables();
+        
+        assertEquals(2, variables.size());
+        assertEquals(0, variables.slotOf("x"));
+        assertEquals(1, variables.slotOf("y"));
+        assertEquals(-1, variables.slotOf("z"));
+        assertArrayEquals(new String[]{"y"}, variables.inputs());
+        assertEquals(13, node.evaluate(new int[]{0, 4}));
+    }
+
+    @Test
+    public void testParseInputsAreReadBeforeAssigned() {
+        // The right side runs before the assignment, so x is read unbound
+        Parser parser = createParser("x = x + 1");
+        assertEquals(6, parser.parse().evaluate(new int[]{5}));
+        assertArrayEquals(new String[]{"x"}, parser.getVariables().inputs());
+        
+        parser = createParser("(y = 2) + (y = y * 3) + y");
+        assertEquals(14, parser.parse().evaluate(new int[1]));
+        assertEquals(0, parser.getVariables().inputs().length);
+    }
+
+    @Test
+    public void testParseAssignmentIsRightAssociative() {
+        Parser parser = createParser("x = y = 1 + 2");
+        int[] frame = new int[2];
+        assertEquals(3, parser.parse().evaluate(frame));
+        assertArrayEquals(new int[]{3, 3}, frame);
+    }
+
+    @Test
+    public void testParseAssignToNonVariableThrows() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> createParser("2 = 3").parse());
+        assertEquals("Can only assign to a variable", exception.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> createParser("(x + 1) = 3").parse());
+    }
+
+    @Test
+    public void testParseTrailingTokenThrows() {
+        Parser parser = createParser("2 3");
+        
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            parser.parse();
+        });
+        assertEquals("Unexpected token: NUMBER(3)", exception.getMessage());
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCompressionTest {
+    private final ResponseCompression compression = new ResponseCompression(true, 64);
+
+    private static String repeat(String text, int times) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            out.append(text);
+        }
+        return out.toString();
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testNegotiation() {
+        assertNull(compression.negotiate(null));
+        assertNull(compression.negotiate("identity"));
+        assertNull(compression.negotiate("br"));
+        assertEquals(ResponseCompression.Encoding.GZIP, compression.negotiate("gzip, deflate, br"));
+        assertEquals(ResponseCompression.Encoding.DEFLATE, compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ResponseCompression.Encoding.DEFLATE, compression.negotiate("gzip;q=0, *"));
+        assertEquals(ResponseCompression.Encoding.GZIP, compression.negotiate("*"));
+        assertNull(compression.negotiate("gzip;q=0, deflate;q=0"));
+        assertNull(new ResponseCompression(false, 64).negotiate("gzip"));
+    }
+
+    @Test
+    public void testSmallBodyIsSentAsIs() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        AtomicReference<String> header = new AtomicReference<>();
+        ResponseCompression.Body body = compression.body(sink, ResponseCompression.Encoding.GZIP, header::set);
+        body.write("{\"result\":5}".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+        body.finish();
+
+        assertNull(header.get());
+        assertFalse(body.isCompressed());
+        assertEquals("{\"result\":5}", sink.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLargeBodyIsCompressed() throws Exception {
+        String text = repeat("│   ├── BinaryOp(+)\n", 500);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        AtomicReference<String> header = new AtomicReference<>();
+        ResponseCompression.Body body = compression.body(sink, ResponseCompression.Encoding.GZIP, header::set);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        // Written in pieces, so the threshold is crossed part way through
+        for (int i = 0; i < bytes.length; i += 50) {
+            body.write(bytes, i, Math.min(50, bytes.length - i));
+        }
+        body.flush();
+        body.finish();
+
+        assertEquals("gzip", header.get());
+        assertTrue(body.isCompressed());
+        assertTrue(sink.size() < bytes.length / 10);
+        assertEquals(text, read(new GZIPInputStream(new ByteArrayInputStream(sink.toByteArray()))));
+    }
+
+    @Test
+    public void testDeflateBody() throws Exception {
+        String text = repeat("data: 12345\n\n", 100);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        ResponseCompression.Body body = compression.body(sink, ResponseCompression.Encoding.DEFLATE, encoding -> assertEquals("deflate", encoding));
+        body.write(text.getBytes(StandardCharsets.UTF_8));
+        body.finish();
+        assertEquals(text, read(new InflaterInputStream(new ByteArrayInputStream(sink.toByteArray()))));
+    }
+
+    @Test
+    public void testFramesDecodeAsTheyArrive() throws Exception {
+        ResponseCompression.FrameEncoder encoder = compression.frames(ResponseCompression.Encoding.DEFLATE);
+        Inflater inflater = new Inflater();
+        byte[] output = new byte[4096];
+        for (int i = 1; i <= 3; i++) {
+            String frame = "id: " + i + "\ndata: {\"id\":" + i + "}\n\n";
+            inflater.setInput(encoder.encode(frame.getBytes(StandardCharsets.UTF_8)));
+            int length = inflater.inflate(output);
+            assertEquals(frame, new String(output, 0, length, StandardCharsets.UTF_8));
+        }
+        inflater.setInput(encoder.finish());
+        inflater.inflate(output);
+        assertTrue(inflater.finished());
+        assertEquals(0, encoder.finish().length);
+    }
+
+    @Test
+    public void testReadsSettings() {
+        Map<String, String> env = new HashMap<>();
+        assertEquals(ResponseCompression.DEFAULT_MIN_BYTES, ResponseCompression.fromEnvironment(env).describe().get("minBytes"));
+        env.put("MCP_COMPRESSION", "off");
+        assertNull(ResponseCompression.fromEnvironment(env).negotiate("gzip"));
+        env.put("MCP_COMPRESSION", "maybe");
+        assertThrows(IllegalArgumentException.class, () -> ResponseCompression.fromEnvironment(env));
+    }
+}
@@ -0,0 +1,57 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseTemplatesTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode result(ResponseTemplates templates, String method) throws Exception {
+        return mapper.readTree(templates.result(method).getValue());
+    }
+
+    @Test
+    public void testStandardResults() throws Exception {
+        ResponseTemplates templates = ResponseTemplates.standard(mapper);
+
+        JsonNode initialize = result(templates, "initialize");
+        assertEquals(ResponseTemplates.PROTOCOL_VERSION, initialize.get("protocolVersion").asText());
+        assertTrue(initialize.get("capabilities").get("tools").has("listChanged"));
+
+        JsonNode tools = result(templates, "tools/list").get("tools");
+        assertEquals(1, tools.size());
+        assertEquals("calculate", tools.get(0).get("name").asText());
+        assertEquals("expression", tools.get(0).get("inputSchema").get("required").get(0).asText());
+
+        assertNull(templates.result("tools/call"));
+    }
+
+    @Test
+    public void testRegisteredToolsJoinToolsList() throws Exception {
+        ResponseTemplates templates = ResponseTemplates.standard(mapper);
+        ObjectNode schema = mapper.createObjectNode().put("type", "object");
+        templates.registerTool("render", "Draws the expression tree", schema);
+
+        // Later edits to the schema must not leak into the cached bytes
+        schema.put("type", "changed");
+
+        JsonNode tools = result(templates, "tools/list").get("tools");
+        assertEquals(2, tools.size());
+        assertEquals("render", tools.get(1).get("name").asText());
+        assertEquals("object", tools.get(1).get("inputSchema").get("type").asText());
+    }
+
+    @Test
+    public void testSplicesIntoResponses() throws Exception {
+        ResponseTemplates templates = new ResponseTemplates(mapper);
+        templates.register("ping", mapper.createObjectNode());
+
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.put("id", 9);
+        response.putRawValue("result", new RawValue(templates.result("ping")));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"id\":9,\"result\":{}}", mapper.writeValueAsString(response));
+    }
+}
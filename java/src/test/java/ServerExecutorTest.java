@@ -0,0 +1,110 @@
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ServerExecutorTest {
+
+    @Test
+    public void testDefaultsToPlatformPool() throws Exception {
+        ServerExecutor executor = ServerExecutor.fromEnvironment(new HashMap<>());
+        assertEquals(ServerExecutor.Kind.PLATFORM, executor.getKind());
+
+        QueuedThreadPool pool = (QueuedThreadPool) executor.createThreadPool();
+        assertEquals(ServerExecutor.DEFAULT_MAX_THREADS, pool.getMaxThreads());
+        assertEquals(ServerExecutor.DEFAULT_MIN_THREADS, pool.getMinThreads());
+        assertEquals(ServerExecutor.DEFAULT_IDLE_TIMEOUT_MS, pool.getIdleTimeout());
+    }
+
+    @Test
+    public void testReadsPoolSettings() {
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_MAX_THREADS", "32");
+        env.put("MCP_MIN_THREADS", "4");
+        env.put("MCP_IDLE_TIMEOUT_MS", "1000");
+        env.put("MCP_QUEUE_CAPACITY", "64");
+        ServerExecutor executor = ServerExecutor.fromEnvironment(env);
+
+        QueuedThreadPool pool = (QueuedThreadPool) executor.createThreadPool();
+        assertEquals(32, pool.getMaxThreads());
+        assertEquals(4, pool.getMinThreads());
+        assertEquals(1000, pool.getIdleTimeout());
+
+        Map<String, Object> info = executor.describe();
+        assertEquals("platform", info.get("type"));
+        assertEquals(64, info.get("queueCapacity"));
+    }
+
+    @Test
+    public void testRejectsBadSettings() {
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_EXECUTOR", "green");
+        Exception kind = assertThrows(IllegalArgumentException.class, () -> ServerExecutor.fromEnvironment(env));
+        assertEquals("Unknown MCP_EXECUTOR: green (expected platform or virtual)", kind.getMessage());
+
+        env.clear();
+        env.put("MCP_MAX_THREADS", "lots");
+        assertThrows(IllegalArgumentException.class, () -> ServerExecutor.fromEnvironment(env));
+
+        env.put("MCP_MAX_THREADS", "2");
+        env.put("MCP_MIN_THREADS", "4");
+        assertThrows(IllegalArgumentException.class, () -> ServerExecutor.fromEnvironment(env));
+    }
+
+    @Test
+    public void testSettingsIgnoreDefaultLocale() {
+        Locale original = Locale.getDefault();
+        // Turkish upper-cases i to a dotted capital I, which would make "virtual" an unknown kind
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            Map<String, String> env = new HashMap<>();
+            env.put("MCP_EXECUTOR", "virtual");
+            ServerExecutor executor = ServerExecutor.fromEnvironment(env);
+            // Whether or not this runtime has virtual threads, the kind reads back in lower case
+            assertEquals("virtual", executor.describe().getOrDefault("requested", executor.describe().get("type")));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsRunJobs() throws Exception {
+        assumeTrue(ServerExecutor.isVirtualThreadsAvailable());
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_EXECUTOR", "virtual");
+        ServerExecutor executor = ServerExecutor.fromEnvironment(env);
+        assertEquals(ServerExecutor.Kind.VIRTUAL, executor.getKind());
+        assertEquals("virtual", executor.describe().get("type"));
+
+        ThreadPool pool = executor.createThreadPool();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean virtual = new AtomicBoolean();
+        pool.execute(() -> {
+            virtual.set(Thread.currentThread().getName().startsWith("mcp-virtual-"));
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(virtual.get());
+        assertFalse(pool.isLowOnThreads());
+    }
+
+    @Test
+    public void testFallsBackWithoutVirtualThreads() {
+        assumeFalse(ServerExecutor.isVirtualThreadsAvailable());
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_EXECUTOR", "virtual");
+        ServerExecutor executor = ServerExecutor.fromEnvironment(env);
+
+        assertEquals(ServerExecutor.Kind.PLATFORM, executor.getKind());
+        assertTrue(executor.createThreadPool() instanceof QueuedThreadPool);
+        assertEquals("virtual", executor.describe().get("requested"));
+    }
+}
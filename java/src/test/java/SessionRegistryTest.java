@@ -0,0 +1,168 @@
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionRegistryTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private SessionRegistry registry(int max, int replay) {
+        return new SessionRegistry(max, replay, 1000, 5000, now::get);
+    }
+
+    // Records what a client on the other end of the stream would read
+    private static final class RecordingStream implements McpSession.EventStream {
+        final List<String> frames = new ArrayList<>();
+        boolean accepting = true;
+        boolean closed;
+
+        @Override
+        public boolean write(byte[] frame) {
+            if (accepting) {
+                frames.add(new String(frame, StandardCharsets.UTF_8));
+            }
+            return accepting;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEventsAreNumberedAndFramed() {
+        McpSession session = registry(10, 10).create();
+        RecordingStream stream = new RecordingStream();
+        session.attach(stream, null);
+
+        assertEquals(1, session.send(json("{\"id\":1}")));
+        assertEquals(2, session.send(json("{\"id\":2}")));
+        assertEquals(List.of("id: 1\ndata: {\"id\":1}\n\n", "id: 2\ndata: {\"id\":2}\n\n"), stream.frames);
+    }
+
+    @Test
+    public void testResumesAfterLastEventId() {
+        McpSession session = registry(10, 10).create();
+        for (int i = 1; i <= 4; i++) {
+            session.send(json("{\"id\":" + i + "}"));
+        }
+
+        RecordingStream resumed = new RecordingStream();
+        session.attach(resumed, "2");
+        assertEquals(2, resumed.frames.size());
+        assertTrue(resumed.frames.get(0).startsWith("id: 3\n"));
+        assertTrue(resumed.frames.get(1).startsWith("id: 4\n"));
+
+        // A fresh stream starts at the next event
+        RecordingStream fresh = new RecordingStream();
+        session.attach(fresh, null);
+        assertTrue(resumed.closed);
+        assertTrue(fresh.frames.isEmpty());
+    }
+
+    @Test
+    public void testReplayKeepsOnlyRecentEvents() {
+        McpSession session = registry(10, 2).create();
+        for (int i = 1; i <= 5; i++) {
+            session.send(json("{}"));
+        }
+        RecordingStream stream = new RecordingStream();
+        session.attach(stream, "0");
+        assertEquals(2, stream.frames.size());
+        assertTrue(stream.frames.get(0).startsWith("id: 4\n"));
+    }
+
+    @Test
+    public void testFailedWriteDropsStream() {
+        McpSession session = registry(10, 10).create();
+        RecordingStream stream = new RecordingStream();
+        session.attach(stream, null);
+        stream.accepting = false;
+
+        session.send(json("{}"));
+        assertFalse(session.hasStream());
+        assertTrue(stream.closed);
+    }
+
+    @Test
+    public void testSweepSendsHeartbeatsAndExpiresIdleSessions() {
+        SessionRegistry sessions = registry(10, 10);
+        McpSession streaming = sessions.create();
+        McpSession idle = sessions.create();
+        RecordingStream stream = new RecordingStream();
+        streaming.attach(stream, null);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        sessions.sweep();
+        assertEquals(List.of(": ping\n\n"), stream.frames);
+        assertNotNull(sessions.get(streaming.getId()));
+        assertNull(sessions.get(idle.getId()));
+
+        // The idle timeout restarts when the stream ends
+        streaming.detach(stream);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        sessions.sweep();
+        assertEquals(1, sessions.size());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        sessions.sweep();
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void testRemoveAndLimit() {
+        SessionRegistry sessions = registry(1, 10);
+        McpSession session = sessions.create();
+        assertNull(sessions.create());
+
+        RecordingStream stream = new RecordingStream();
+        session.attach(stream, null);
+        assertTrue(sessions.remove(session.getId()));
+        assertTrue(stream.closed);
+        assertFalse(sessions.remove(session.getId()));
+        assertNotNull(sessions.create());
+    }
+
+    @Test
+    public void testConcurrentCreatesStayWithinLimit() throws Exception {
+        SessionRegistry sessions = registry(50, 10);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> creates = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                creates.add(pool.submit(sessions::create));
+            }
+            for (Future<?> create : creates) {
+                create.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(50, sessions.size());
+    }
+
+    @Test
+    public void testReadsSettings() {
+        Map<String, String> env = new HashMap<>();
+        env.put("MCP_SESSION_REPLAY", "16");
+        env.put("MCP_SESSION_HEARTBEAT_MS", "500");
+        SessionRegistry sessions = SessionRegistry.fromEnvironment(env);
+        assertEquals(16, sessions.getReplayCapacity());
+        assertEquals(500L, sessions.describe().get("heartbeatMs"));
+
+        env.put("MCP_SESSION_MAX", "0");
+        assertThrows(IllegalArgumentException.class, () -> SessionRegistry.fromEnvironment(env));
+    }
+}
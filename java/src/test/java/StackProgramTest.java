@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StackProgramTest {
+
+    private ASTNode parse(String expression) {
+        return new Parser(new Lexer(expression).tokenize()).parse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42",
+        "2 + 3 * 4",
+        "(2 + 3) * 4",
+        "2 ^ 3 ^ 2",
+        "!5 + 2",
+        "-(3 + 5)",
+        "100 / 7 % 3",
+        "((2 * 3) + (4 * 5)) - (3 - 1)"
+    })
+    public void testProgramMatchesTreeWalker(String expression) {
+        ASTNode ast = parse(expression);
+        assertEquals(ast.evaluate(), StackProgram.compile(ast).execute());
+    }
+
+    @Test
+    public void testEmitsPostfixCode() {
+        StackProgram program = StackProgram.compile(parse("2 + 3 * 4"));
+        assertArrayEquals(new int[]{
+            StackProgram.PUSH, 2,
+            StackProgram.PUSH, 3,
+            StackProgram.PUSH, 4,
+            StackProgram.MUL,
+            StackProgram.ADD
+        }, program.toCode());
+    }
+
+    @Test
+    public void testErrorsMatchTreeWalker() {
+        Exception division = assertThrows(ArithmeticException.class,
+                () -> StackProgram.compile(parse("(1 / 0) + (1 % 0)")).execute());
+        assertEquals("Division by zero", division.getMessage());
+        assertThrows(ArithmeticException.class, () -> StackProgram.compile(parse("!13")).execute());
+        assertThrows(ArithmeticException.class, () -> StackProgram.compile(parse("2 ^ (0 - 3)")).execute());
+    }
+
+    @Test
+    public void testRoundTripsThroughBytes() {
+        StackProgram program = StackProgram.compile(parse("!3 + 4 * (5 - 1)"));
+        StackProgram restored = StackProgram.fromBytes(program.toBytes());
+        assertArrayEquals(program.toCode(), restored.toCode());
+        assertEquals(22, restored.execute());
+    }
+
+    @Test
+    public void testRejectsMalformedPrograms() {
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.fromCode(new int[]{StackProgram.ADD}));
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.fromCode(new int[]{StackProgram.PUSH}));
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.fromCode(new int[]{StackProgram.PUSH, 1, StackProgram.PUSH, 2}));
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.fromCode(new int[]{99}));
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.fromBytes(new byte[]{0, 0, 1}));
+    }
+
+    @Test
+    public void testLoadsAndStoresSlots() {
+        StackProgram program = StackProgram.compile(parse("(x = 3) * y"));
+        assertArrayEquals(new int[]{
+            StackProgram.PUSH, 3,
+            StackProgram.STORE, 0,
+            StackProgram.LOAD, 1,
+            StackProgram.MUL
+        }, program.toCode());
+        assertEquals(2, program.getFrameSize());
+        
+        int[] frame = {0, 5};
+        assertEquals(15, program.execute(frame, null));
+        assertEquals(3, frame[0]);
+        assertThrows(IllegalArgumentException.class, () -> program.execute(new int[1], null));
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.fromCode(new int[]{StackProgram.LOAD, -1}));
+    }
+
+    @Test
+    public void testCompileRenderThrows() {
+        assertThrows(IllegalArgumentException.class, () -> StackProgram.compile(parse("render 2 + 3")));
+    }
+
+    @Test
+    public void testInterpreterStackVmMode() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEvaluationMode(EvaluationMode.STACK_VM);
+        assertEquals("14", interpreter.interpret("2 + 3 * 4"));
+        assertEquals(-8, interpreter.interpretAsInt("-(3 + 5)"));
+        assertThrows(ArithmeticException.class, () -> interpreter.interpretAsInt("10 / 0"));
+        assertTrue(interpreter.interpret("render 2 + 3").contains("BinaryOp(+)"));
+    }
+}
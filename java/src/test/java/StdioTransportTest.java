@@ -0,0 +1,112 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StdioTransportTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final McpDispatcher dispatcher = new McpDispatcher(mapper, new Interpreter(),
+            ResponseTemplates.standard(mapper), new BatchExecutor(mapper, 10, 2));
+
+    private static String call(int id, String expression) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"" + expression + "\"}}}";
+    }
+
+    // Hands out at most chunk bytes per read, so messages straddle reads
+    private static ReadableByteChannel trickle(String input, int chunk) {
+        ByteBuffer source = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer target) {
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(chunk, Math.min(source.remaining(), target.remaining()));
+                ByteBuffer slice = source.slice();
+                slice.limit(count);
+                target.put(slice);
+                source.position(source.position() + count);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private String[] serve(ReadableByteChannel input, int maxMessage) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StdioTransport(input, Channels.newChannel(output), maxMessage).serve(dispatcher);
+        String text = output.toString(StandardCharsets.UTF_8);
+        assertTrue(text.isEmpty() || text.endsWith("\n"));
+        return text.isEmpty() ? new String[0] : text.split("\n");
+    }
+
+    private String text(String line) throws Exception {
+        return mapper.readTree(line).get("result").get("content").get(0).get("text").asText();
+    }
+
+    @Test
+    public void testOneResponseLinePerRequest() throws Exception {
+        String input = call(1, "2 + 3") + "\n"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}\n"
+                + "\r\n"
+                + call(2, "render 1 + 2") + "\r\n"
+                + call(3, "6 * 7");
+        String[] lines = serve(trickle(input, 7), StdioTransport.DEFAULT_MAX_MESSAGE);
+
+        assertEquals(3, lines.length);
+        assertEquals("5", text(lines[0]));
+        // Rendered trees are multi-line, but escaped inside the single response line
+        assertTrue(text(lines[1]).contains("BinaryOp(+)"));
+        assertEquals("42", text(lines[2]));
+    }
+
+    @Test
+    public void testMessagesLargerThanInitialBuffer() throws Exception {
+        StringBuilder sum = new StringBuilder("1");
+        for (int i = 0; i < 40000; i++) {
+            sum.append(" + 1");
+        }
+        String[] lines = serve(Channels.newChannel(new ByteArrayInputStream((call(1, sum.toString()) + "\n" + call(2, "1 + 1") + "\n")
+                .getBytes(StandardCharsets.UTF_8))), StdioTransport.DEFAULT_MAX_MESSAGE);
+
+        assertEquals(2, lines.length);
+        assertEquals("40001", text(lines[0]));
+        assertEquals("2", text(lines[1]));
+    }
+
+    @Test
+    public void testOversizedMessageIsSkipped() throws Exception {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            padding.append("1 + ");
+        }
+        String input = call(1, padding + "1") + "\n" + call(2, "3 * 3") + "\n";
+        String[] lines = serve(trickle(input, 100), 1024);
+
+        assertEquals(2, lines.length);
+        JsonNode error = mapper.readTree(lines[0]).get("error");
+        assertEquals(-32700, error.get("code").asInt());
+        assertEquals("Parse error: message exceeds 1024 bytes", error.get("message").asText());
+        assertEquals("9", text(lines[1]));
+    }
+
+    @Test
+    public void testChoosesTransportByName() {
+        assertTrue(JavaCalcMCP.transport("http") instanceof HttpTransport);
+        assertThrows(IllegalArgumentException.class, () -> JavaCalcMCP.transport("carrier-pigeon"));
+    }
+}
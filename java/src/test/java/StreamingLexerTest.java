@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingLexerTest {
+
+    @Test
+    public void testPullsTokensOneAtATime() {
+        StreamingLexer lexer = new StreamingLexer("render 12 * (3 - !4)");
+
+        assertEquals(TokenBuffer.RENDER, lexer.nextToken());
+        assertEquals(TokenBuffer.NUMBER, lexer.nextToken());
+        assertEquals(12, lexer.value());
+        assertEquals(TokenBuffer.OPERATOR, lexer.nextToken());
+        assertEquals('*', lexer.value());
+        assertEquals(TokenBuffer.LPAREN, lexer.nextToken());
+        assertEquals(TokenBuffer.NUMBER, lexer.nextToken());
+        assertEquals(TokenBuffer.OPERATOR, lexer.nextToken());
+        assertEquals(TokenBuffer.FACTORIAL, lexer.nextToken());
+        assertEquals(TokenBuffer.NUMBER, lexer.nextToken());
+        assertEquals(TokenBuffer.RPAREN, lexer.nextToken());
+        assertEquals(TokenBuffer.EOF, lexer.nextToken());
+        assertEquals(TokenBuffer.EOF, lexer.nextToken());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "2 + 3 * 4",
+        "(2 + 3) * 4",
+        "2 ^ 3 ^ 2",
+        "!5 - -3",
+        "  100 / 7 % 3  "
+    })
+    public void testMatchesStringLexer(String expression) {
+        Interpreter interpreter = new Interpreter();
+        assertEquals(interpreter.interpret(expression), interpreter.interpret(new StringReader(expression)));
+    }
+
+    @Test
+    public void testReadsFromByteBuffer() {
+        ByteBuffer bytes = ByteBuffer.wrap("6 * 7".getBytes(StandardCharsets.UTF_8));
+        ASTNode ast = new Parser(new StreamingLexer(bytes)).parse();
+        assertEquals(42, ast.evaluate());
+    }
+
+    @Test
+    public void testTokensSpanWindowBoundaries() {
+        // Pad so the number straddles the 8K read window
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8190; i++) {
+            sb.append(' ');
+        }
+        sb.append("12345 + 1");
+        ASTNode ast = new Parser(new StreamingLexer(sb)).parse();
+        assertEquals(12346, ast.evaluate());
+    }
+
+    @Test
+    public void testLongInputFromReader() {
+        int terms = 200000;
+        Reader input = new Reader() {
+            private int emitted;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (emitted >= terms) {
+                    return -1;
+                }
+                int count = 0;
+                while (count + 4 <= length && emitted < terms) {
+                    buffer[offset + count++] = emitted == 0 ? ' ' : '+';
+                    buffer[offset + count++] = ' ';
+                    buffer[offset + count++] = '1';
+                    buffer[offset + count++] = ' ';
+                    emitted++;
+                }
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals(String.valueOf(terms), new Interpreter().interpret(input));
+    }
+
+    @Test
+    public void testErrorsMatchStringLexer() {
+        Exception character = assertThrows(IllegalArgumentException.class,
+                () -> new Parser(new StreamingLexer("2 @ 3")).parse());
+        assertEquals("Unexpected character: @", character.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> new Parser(new StreamingLexer("rendering 2")).parse());
+        StreamingLexer big = new StreamingLexer("99999999999 + 1");
+        assertEquals(TokenBuffer.BIG_NUMBER, big.nextToken());
+        assertEquals("BIG_NUMBER(99999999999)", big.describe());
+        StreamingLexer decimal = new StreamingLexer("99999999999.25 + 0.5");
+        assertEquals(TokenBuffer.DECIMAL, decimal.nextToken());
+        assertEquals("DECIMAL(99999999999.25)", decimal.describe());
+        assertEquals(TokenBuffer.OPERATOR, decimal.nextToken());
+        assertEquals(TokenBuffer.DECIMAL, decimal.nextToken());
+        assertEquals("0.5", decimal.text());
+        // Arabic-Indic digits on both sides of the point, and a long integer part kept as text
+        assertEquals(4.5, new Parser(new StreamingLexer("\u0663.\u0665 + 1")).parse().evaluateDouble());
+        assertEquals(99999999999.5, new Parser(new StreamingLexer("\u0669\u0669\u0669\u0669\u0669\u0669\u0669\u0669\u0669\u0669\u0669.\u0665")).parse().evaluateDouble());
+        Exception point = assertThrows(IllegalArgumentException.class,
+                () -> new Parser(new StreamingLexer("3.)")).parse());
+        assertEquals("Unexpected character: .", point.getMessage());
+
+        Exception token = assertThrows(IllegalArgumentException.class,
+                () -> new Parser(new StreamingLexer("2 +")).parse());
+        assertEquals("Unexpected token: EOF()", token.getMessage());
+    }
+}
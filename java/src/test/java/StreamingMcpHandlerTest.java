@@ -0,0 +1,139 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingMcpHandlerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StreamingMcpHandler handler = new StreamingMcpHandler(mapper, new Interpreter(), ResponseTemplates.standard(mapper),
+            batch -> batch.size() == 1 && !batch.get(0).has("id") ? null : mapper.createArrayNode().add(batch.size()));
+
+    private String respond(String request, boolean sse) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(handler.handle(request.getBytes(StandardCharsets.UTF_8), out, sse));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private JsonNode respond(String request) throws Exception {
+        return mapper.readTree(respond(request, false));
+    }
+
+    @Test
+    public void testToolCall() throws Exception {
+        JsonNode response = respond("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\","
+                + "\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"2 + 3 * 4\"}}}");
+        assertEquals(1, response.get("id").asInt());
+        assertEquals("14", response.get("result").get("content").get(0).get("text").asText());
+        assertFalse(response.get("result").get("isError").asBoolean());
+    }
+
+    @Test
+    public void testFieldsInAnyOrderAndUnknownFieldsSkipped() throws Exception {
+        JsonNode response = respond("{\"params\":{\"extra\":[1,{\"a\":2}],\"arguments\":{\"note\":{},\"expression\":\"10 / 0\"},"
+                + "\"name\":\"calculate\"},\"meta\":{\"x\":[]},\"id\":\"abc\",\"method\":\"tools/call\",\"jsonrpc\":\"2.0\"}");
+        assertEquals("abc", response.get("id").asText());
+        assertEquals("Error evaluating expression: Division by zero", response.get("result").get("content").get(0).get("text").asText());
+        assertTrue(response.get("result").get("isError").asBoolean());
+    }
+
+    @Test
+    public void testIdIsEchoedVerbatim() throws Exception {
+        assertEquals("{\"jsonrpc\":\"2.0\",\"id\":12345678901234567890,\"error\":{\"code\":-32601,\"message\":\"Method not found: x\"}}",
+                respond("{\"id\":12345678901234567890,\"method\":\"x\"}", false));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32601,\"message\":\"Method not found: x\"}}",
+                respond("{\"id\":null,\"method\":\"x\"}", false));
+    }
+
+    @Test
+    public void testNotificationsAreNotAnswered() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(handler.handle("{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}".getBytes(StandardCharsets.UTF_8), out, true));
+        assertEquals(0, out.size());
+
+        // Without a method it is an invalid request rather than a notification, and that is reported
+        assertEquals(-32600, respond("{}").get("error").get("code").asInt());
+    }
+
+    @Test
+    public void testReadsFromSlice() throws Exception {
+        byte[] framed = "xx{\"id\":5,\"method\":\"x\"}yy".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(handler.handle(framed, 2, framed.length - 4, out, false));
+        assertEquals(5, mapper.readTree(out.toByteArray()).get("id").asInt());
+    }
+
+    @Test
+    public void testStaticResults() throws Exception {
+        JsonNode initialize = respond("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\"}");
+        assertEquals("2024-11-05", initialize.get("result").get("protocolVersion").asText());
+        assertEquals("JavaCalc", initialize.get("result").get("serverInfo").get("name").asText());
+
+        JsonNode tools = respond("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}");
+        assertEquals("calculate", tools.get("result").get("tools").get(0).get("name").asText());
+    }
+
+    @Test
+    public void testToolCallErrors() throws Exception {
+        JsonNode missingName = respond("{\"id\":1,\"method\":\"tools/call\",\"params\":{}}");
+        assertEquals(-32602, missingName.get("result").get("error").get("code").asInt());
+
+        JsonNode unknown = respond("{\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"other\"}}");
+        assertEquals("Unknown tool: other", unknown.get("result").get("error").get("message").asText());
+
+        JsonNode missingExpression = respond("{\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{}}}");
+        assertEquals("Error evaluating expression: Missing expression argument",
+                missingExpression.get("result").get("content").get(0).get("text").asText());
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        assertEquals(-32600, respond("{\"id\":1}").get("error").get("code").asInt());
+        assertEquals(-32600, respond("5").get("error").get("code").asInt());
+
+        JsonNode malformed = respond("{\"id\":1,\"method\":");
+        assertEquals(-32700, malformed.get("error").get("code").asInt());
+        assertTrue(malformed.get("error").get("message").asText().startsWith("Parse error: "));
+    }
+
+    @Test
+    public void testSseFraming() throws Exception {
+        String event = respond("{\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":{\"expression\":\"render 1 + 2\"}}}", true);
+        assertTrue(event.startsWith("data: {"));
+        assertTrue(event.endsWith("}\n\n"));
+        // Render output is multi-line, but escaped it must stay within the single data line
+        assertEquals(1, event.trim().split("\n").length);
+    }
+
+    @Test
+    public void testBatchesGoToTreeDispatcher() throws Exception {
+        assertEquals("[2]", respond("[{\"id\":1},{\"id\":2}]", false));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(handler.handle("[{\"method\":\"notify\"}]".getBytes(StandardCharsets.UTF_8), out, true));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testRequestBudgetTightensServerBudget() throws Exception {
+        Interpreter calculator = new Interpreter();
+        calculator.setOptimizing(false);
+        calculator.setBudget(EvaluationBudget.of(100, 0));
+        StreamingMcpHandler limited = new StreamingMcpHandler(mapper, calculator, ResponseTemplates.standard(mapper), batch -> null);
+
+        String call = "{\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"calculate\",\"arguments\":"
+                + "{\"expression\":\"1 + 1 + 1 + 1\",\"maxOperations\":%d}}}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        limited.handle(String.format(call, 3).getBytes(StandardCharsets.UTF_8), out, false);
+        JsonNode result = mapper.readTree(out.toByteArray()).get("result");
+        assertTrue(result.get("isError").asBoolean());
+        assertEquals("Error evaluating expression: Evaluation budget exceeded: more than 3 operations",
+                result.get("content").get(0).get("text").asText());
+
+        // Asking for more than the server allows still gets the server's limit, which this fits in
+        out.reset();
+        limited.handle(String.format(call, 1000000).getBytes(StandardCharsets.UTF_8), out, false);
+        assertEquals("4", mapper.readTree(out.toByteArray()).get("result").get("content").get(0).get("text").asText());
+    }
+}
@@ -0,0 +1,100 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ColumnKernels on the Vector API, a full hardware vector per step with the
+ * scalar loop for the tail. Built only on JDK 17 and later (the vector
+ * profile in pom.xml) and loaded by name, so the rest of the code still
+ * targets Java 11 and never links against the incubator module.
+ */
+final class VectorColumnKernels implements ColumnKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(int[] left, int[] right, int length) {
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, left, i).add(IntVector.fromArray(INTS, right, i)).intoArray(left, i);
+        }
+        for (; i < length; i++) {
+            left[i] += right[i];
+        }
+    }
+
+    @Override
+    public void subtract(int[] left, int[] right, int length) {
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, left, i).sub(IntVector.fromArray(INTS, right, i)).intoArray(left, i);
+        }
+        for (; i < length; i++) {
+            left[i] -= right[i];
+        }
+    }
+
+    @Override
+    public void multiply(int[] left, int[] right, int length) {
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, left, i).mul(IntVector.fromArray(INTS, right, i)).intoArray(left, i);
+        }
+        for (; i < length; i++) {
+            left[i] *= right[i];
+        }
+    }
+
+    @Override
+    public void negate(int[] values, int length) {
+        int i = 0;
+        for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, values, i).neg().intoArray(values, i);
+        }
+        for (; i < length; i++) {
+            values[i] = -values[i];
+        }
+    }
+
+    @Override
+    public boolean addExact(long[] left, long[] right, int length) {
+        // Overflow bits accumulate across lanes and are only tested once at the end
+        LongVector overflows = LongVector.zero(LONGS);
+        int i = 0;
+        for (int bound = LONGS.loopBound(length); i < bound; i += LONGS.length()) {
+            LongVector a = LongVector.fromArray(LONGS, left, i);
+            LongVector b = LongVector.fromArray(LONGS, right, i);
+            LongVector sum = a.add(b);
+            overflows = overflows.or(a.lanewise(VectorOperators.XOR, sum).and(b.lanewise(VectorOperators.XOR, sum)));
+            sum.intoArray(left, i);
+        }
+        long overflow = overflows.reduceLanes(VectorOperators.OR);
+        for (; i < length; i++) {
+            long sum = left[i] + right[i];
+            overflow |= (left[i] ^ sum) & (right[i] ^ sum);
+            left[i] = sum;
+        }
+        return overflow < 0;
+    }
+
+    @Override
+    public boolean subtractExact(long[] left, long[] right, int length) {
+        LongVector overflows = LongVector.zero(LONGS);
+        int i = 0;
+        for (int bound = LONGS.loopBound(length); i < bound; i += LONGS.length()) {
+            LongVector a = LongVector.fromArray(LONGS, left, i);
+            LongVector b = LongVector.fromArray(LONGS, right, i);
+            LongVector difference = a.sub(b);
+            overflows = overflows.or(a.lanewise(VectorOperators.XOR, b).and(a.lanewise(VectorOperators.XOR, difference)));
+            difference.intoArray(left, i);
+        }
+        long overflow = overflows.reduceLanes(VectorOperators.OR);
+        for (; i < length; i++) {
+            long difference = left[i] - right[i];
+            overflow |= (left[i] ^ right[i]) & (left[i] ^ difference);
+            left[i] = difference;
+        }
+        return overflow < 0;
+    }
+}